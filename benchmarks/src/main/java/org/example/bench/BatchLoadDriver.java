@@ -0,0 +1,123 @@
+package org.example.bench;
+
+import org.example.batch.BatchImporter;
+import org.example.batch.BatchReport;
+import org.example.emulator.ControllerEmulator;
+import org.example.emulator.EmulatorSettings;
+import org.example.persistence.InventoryJournal;
+import org.example.service.BoardRegistry;
+import org.example.service.InventoryService;
+
+import java.io.BufferedWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Compares applying a scan file through {@link BatchImporter} with feeding the same scans one at
+ * a time through {@link InventoryService#handleInput(String, String)}, both journaled and both
+ * driving emulated boards.
+ *
+ * The file imports {@code items} fresh tags into random products, then exports every fifth
+ * of them again; 1% of the lines are invalid. The interactive run scans product + tag per import
+ * and tag + 'confirm' per export, on its own service and journal, for the first
+ * {@code interactiveItems} lines.
+ *
+ * Usage: {@code java -cp benchmarks.jar org.example.bench.BatchLoadDriver [items] [interactiveItems] [boards]}
+ */
+public class BatchLoadDriver {
+
+    private static final int BASE_SERIAL = 900_000_000;
+    private static final int RELAYS_PER_BOARD = 40;
+
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int interactiveItems = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int boardCount = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        PrintStream out = System.out;
+        Path directory = Files.createTempDirectory("batch-load");
+        try (ControllerEmulator emulator = new ControllerEmulator(new EmulatorSettings(), 16)) {
+            for (int i = 0; i < boardCount; i++) {
+                emulator.addBoard(BASE_SERIAL + i);
+            }
+            Path layoutFile = directory.resolve("boards.properties");
+            emulator.writeLayout(layoutFile);
+            Path scanFile = directory.resolve("scans.csv");
+            List<String[]> interactive = writeScanFile(scanFile, items, interactiveItems, boardCount);
+            BoardRegistry registry = BoardRegistry.load(layoutFile);
+            System.setOut(new PrintStream(java.io.OutputStream.nullOutputStream()));
+
+            // 1. Batch mode
+            BatchReport report;
+            try (InventoryJournal journal = InventoryJournal.open(directory.resolve("batch-journal"));
+                 InventoryService service = new InventoryService(registry, journal)) {
+                report = new BatchImporter(service, registry::isKnownProduct, Runtime.getRuntime().availableProcessors())
+                        .run(scanFile, 10_000);
+            }
+
+            // 2. The same kind of scans, one line at a time
+            long elapsed;
+            try (InventoryJournal journal = InventoryJournal.open(directory.resolve("interactive-journal"));
+                 InventoryService service = new InventoryService(registry, journal)) {
+                long started = System.nanoTime();
+                for (String[] scans : interactive) {
+                    for (String scan : scans) {
+                        service.handleInput("pallet", scan);
+                    }
+                }
+                elapsed = System.nanoTime() - started;
+            }
+
+            System.setOut(out);
+            out.printf("batch:       %s (%.1f MB file)%n", report, Files.size(scanFile) / 1e6);
+            out.printf("interactive: %d items in %.1f ms (%.0f items/s)%n",
+                    interactive.size(), elapsed / 1e6, interactive.size() / (elapsed / 1e9));
+            emulator.printStats(out);
+        } finally {
+            System.setOut(out);
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Writes the scan file and returns the scans of its first lines as the interactive path would
+     * see them (with fresh tags, so both runs start from an empty inventory).
+     */
+    private static List<String[]> writeScanFile(Path file, int items, int interactiveItems, int boardCount) throws Exception {
+        SplittableRandom random = new SplittableRandom(42);
+        List<String[]> interactive = new java.util.ArrayList<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("# product,tag imports; tag exports\n");
+            for (int i = 0; i < items; i++) {
+                String line;
+                String[] scans;
+                if (random.nextInt(100) == 0) {
+                    line = "NOPE-" + i + ",TAG-" + i;
+                    scans = new String[]{"NOPE-" + i, "ITAG-" + i};
+                } else if (i % 5 == 4) {
+                    // Export of the import four lines up.
+                    line = "TAG-" + (i - 4);
+                    scans = new String[]{"ITAG-" + (i - 4), "confirm"};
+                } else {
+                    String product = "E" + random.nextInt(boardCount) + "-" + (1 + random.nextInt(RELAYS_PER_BOARD));
+                    line = product + ",TAG-" + i;
+                    scans = new String[]{product, "ITAG-" + i};
+                }
+                writer.write(line);
+                writer.write('\n');
+                if (i < interactiveItems) {
+                    interactive.add(scans);
+                }
+            }
+        }
+        return interactive;
+    }
+}
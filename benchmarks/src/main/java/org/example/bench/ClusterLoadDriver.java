@@ -0,0 +1,191 @@
+package org.example.bench;
+
+import org.example.cluster.ClusterNode;
+import org.example.cluster.HashRing;
+import org.example.emulator.ControllerEmulator;
+import org.example.emulator.EmulatorSettings;
+import org.example.network.ScanIngestionServer;
+import org.example.pipeline.ScanPipeline;
+import org.example.pipeline.WaitStrategy;
+import org.example.service.BoardRegistry;
+import org.example.service.InventoryService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the aggregate scan rate of a zone-sharded cluster of 1, 2, ... nodes, each in its own
+ * JVM on localhost, driving emulated boards.
+ *
+ * Scanner i owns board i (its zone). In {@code forward} mode it connects to node i % n, so with n
+ * nodes about (n - 1)/n of the scans are forwarded; in {@code direct} mode it connects to the node
+ * owning its zone, as zone-local scanners would. Each scanner runs import (product, tag), waits for its LED to be
+ * switched on at the emulated board, then exports the item again (tag, confirm): 4 scans per cycle.
+ *
+ * Usage: {@code java -cp benchmarks.jar org.example.bench.ClusterLoadDriver [scanners] [seconds] [nodeCounts, e.g. 1,2,4] [forward|direct|both]}
+ */
+public class ClusterLoadDriver {
+
+    private static final int BASE_SERIAL = 800_000_000;
+    private static final long FRAME_TIMEOUT_MS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int scanners = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String[] nodeCounts = (args.length > 2 ? args[2] : "1,2,4").split(",");
+        String mode = args.length > 3 ? args[3] : "both";
+
+        for (String nodeCount : nodeCounts) {
+            if (!"direct".equals(mode)) {
+                run(scanners, seconds, Integer.parseInt(nodeCount.trim()), false);
+            }
+            if (!"forward".equals(mode)) {
+                run(scanners, seconds, Integer.parseInt(nodeCount.trim()), true);
+            }
+        }
+    }
+
+    private static void run(int scanners, int seconds, int nodeCount, boolean direct) throws Exception {
+        try (ControllerEmulator emulator = new ControllerEmulator(new EmulatorSettings(), Math.min(scanners, 16))) {
+            for (int i = 0; i < scanners; i++) {
+                emulator.addBoard(BASE_SERIAL + i);
+            }
+            Path layoutFile = Files.createTempFile("cluster-boards", ".properties");
+            layoutFile.toFile().deleteOnExit();
+            emulator.writeLayout(layoutFile);
+
+            // 1. Start the nodes; the first one is the seed
+            List<Process> nodes = new ArrayList<>();
+            List<Integer> scanPorts = new ArrayList<>();
+            String seed = null;
+            try {
+                for (int n = 0; n < nodeCount; n++) {
+                    List<String> command = new ArrayList<>(List.of(ProcessHandle.current().info().command().orElse("java"),
+                            "-Xmx256m", "-cp", System.getProperty("java.class.path"), Node.class.getName(),
+                            "n" + n, layoutFile.toString()));
+                    if (seed != null) {
+                        command.add(seed);
+                    }
+                    Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                    nodes.add(process);
+                    String[] ready = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))
+                            .readLine().split(" ");
+                    if (seed == null) {
+                        seed = ready[1];
+                    }
+                    scanPorts.add(Integer.parseInt(ready[2]));
+                }
+
+                List<String> nodeIds = new ArrayList<>();
+                for (int n = 0; n < nodeCount; n++) {
+                    nodeIds.add("n" + n);
+                }
+                HashRing ring = new HashRing(nodeIds);
+
+                // 2. Scanner i imports into board e<i>, relay 1
+                AtomicLongArray waiting = new AtomicLongArray(scanners);
+                Semaphore[] switchedOn = new Semaphore[scanners];
+                for (int i = 0; i < scanners; i++) {
+                    switchedOn[i] = new Semaphore(0);
+                }
+                emulator.setCommandListener((board, relay, on, receivedNanos) -> {
+                    int scanner = board.getSerialNumber() - BASE_SERIAL;
+                    if (on && waiting.getAndSet(scanner, 0) != 0) {
+                        switchedOn[scanner].release();
+                    }
+                });
+                LongAdder cycles = new LongAdder();
+                LongAdder timeouts = new LongAdder();
+                CountDownLatch done = new CountDownLatch(scanners);
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+                for (int s = 0; s < scanners; s++) {
+                    int scanner = s;
+                    int ingress = direct ? Integer.parseInt(ring.owner(BASE_SERIAL + s).substring(1)) : s % nodeCount;
+                    InetSocketAddress node = new InetSocketAddress("127.0.0.1", scanPorts.get(ingress));
+                    Thread thread = new Thread(() -> {
+                        try (SocketChannel channel = SocketChannel.open(node)) {
+                            write(channel, "SCANNER s" + scanner + "\n");
+                            for (int k = 0; System.nanoTime() < deadline; k++) {
+                                String tag = "T" + scanner + "-" + k + "\n";
+                                waiting.set(scanner, 1);
+                                write(channel, "E" + scanner + "-1\n" + tag);
+                                if (switchedOn[scanner].tryAcquire(FRAME_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                                    cycles.increment();
+                                } else {
+                                    waiting.set(scanner, 0);
+                                    timeouts.increment();
+                                }
+                                write(channel, tag + "confirm\n");
+                            }
+                        } catch (IOException | InterruptedException e) {
+                            System.err.println("[ERROR] Scanner " + scanner + " failed: " + e.getMessage());
+                        } finally {
+                            done.countDown();
+                        }
+                    }, "scanner-" + s);
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+                done.await();
+                System.out.printf("%s, %d node(s), %d scanners: %.0f scans/s (%d import/export cycles in %d s), %d timeouts%n",
+                        direct ? "direct" : "forward", nodeCount, scanners, cycles.sum() * 4.0 / seconds, cycles.sum(), seconds, timeouts.sum());
+            } finally {
+                for (Process process : nodes) {
+                    process.destroy();
+                }
+                for (Process process : nodes) {
+                    process.waitFor(10, TimeUnit.SECONDS);
+                }
+            }
+        }
+    }
+
+    private static void write(SocketChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * One cluster node: args {@code <nodeId> <layoutFile> [seed host:port]}. Prints
+     * {@code READY <cluster address> <scan port>} once it accepts scanners.
+     */
+    public static class Node {
+        public static void main(String[] args) throws Exception {
+            PrintStream out = System.out;
+            System.setOut(new PrintStream(java.io.OutputStream.nullOutputStream()));
+            BoardRegistry registry = BoardRegistry.load(Path.of(args[1]));
+            InetSocketAddress loopback = new InetSocketAddress("127.0.0.1", 0);
+            // Runs until the driver kills it; closed in order if the sleep is interrupted.
+            try (InventoryService service = new InventoryService(registry, null);
+                 ClusterNode node = new ClusterNode(args[0], loopback, registry, service)) {
+                if (args.length > 2) {
+                    int colon = args[2].lastIndexOf(':');
+                    node.join(new InetSocketAddress(args[2].substring(0, colon), Integer.parseInt(args[2].substring(colon + 1))));
+                }
+                try (ScanPipeline pipeline = new ScanPipeline(4096, 4, WaitStrategy.BLOCK, node::onScan);
+                     ScanIngestionServer server = new ScanIngestionServer(loopback, null, pipeline::publish, 4)) {
+                    out.println("READY " + node.getAddress() + " " + server.getTcpAddress().getPort());
+                    out.flush();
+                    Thread.sleep(Long.MAX_VALUE);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.bench;
+
+import org.example.config.BoardConfig;
+import org.example.emulator.ControllerEmulator;
+import org.example.emulator.EmulatedBoard;
+import org.example.emulator.EmulatorSettings;
+import org.example.metrics.Metrics;
+import org.example.network.CommandTracker;
+import org.example.network.UdpTransport;
+import org.example.protocol.PacketBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks CommandTracker against a local fake controller (the {@link ControllerEmulator}) that loses
+ * commands and replies: every command must be acknowledged after retransmissions, the board's relays
+ * must end up in the commanded state, and nothing may stay in flight.
+ *
+ * Each round switches all relays of every board on, then all off; a round only starts once the
+ * previous one is acknowledged, so a late retransmission cannot switch a relay back. The emulated
+ * firmware drops a sequence ID it already accepted, so only the fresh ID of each retransmission
+ * gets a command through after a lost reply.
+ *
+ * Exits with status 1 on the first failure.
+ *
+ * Usage: {@code java -cp benchmarks.jar org.example.bench.CommandTrackerCheck [boards] [rounds] [lossRate]}
+ */
+public class CommandTrackerCheck {
+
+    private static final int BASE_SERIAL = 700_000_000;
+    private static final int RELAYS = PacketBuilder.MAX_MASK_RELAY;
+    // With 10% loss each way, an attempt fails 19% of the time; all 12 fail once in ~10^9 commands.
+    private static final int MAX_ATTEMPTS = 12;
+    private static final long SETTLE_TIMEOUT_MS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        int boardCount = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        double lossRate = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+
+        EmulatorSettings settings = new EmulatorSettings();
+        settings.commandLossRate = lossRate;
+        settings.replyLossRate = lossRate;
+        settings.jitterMillis = 2;
+        try (ControllerEmulator emulator = new ControllerEmulator(settings, 4);
+             UdpTransport transport = new UdpTransport();
+             CommandTracker tracker = new CommandTracker(transport, 4096, 20, 160, MAX_ATTEMPTS)) {
+            List<EmulatedBoard> emulated = new ArrayList<>();
+            List<BoardConfig> boards = new ArrayList<>();
+            for (int i = 0; i < boardCount; i++) {
+                EmulatedBoard board = emulator.addBoard(BASE_SERIAL + i);
+                emulated.add(board);
+                boards.add(board.toBoardConfig(false));
+            }
+
+            long sent = 0;
+            for (int round = 0; round < rounds * 2; round++) {
+                boolean on = round % 2 == 0;
+                // 1. Every relay of every board, all in flight at once
+                List<CompletableFuture<Void>> acknowledged = new ArrayList<>();
+                for (BoardConfig board : boards) {
+                    for (int relay = 1; relay <= RELAYS; relay++) {
+                        int floor = on ? relay : relay + PacketBuilder.NC_FLOOR_OFFSET;
+                        acknowledged.add(tracker.send(board, PacketBuilder.controlCommandFrame(board, 1, floor)));
+                    }
+                }
+                sent += acknowledged.size();
+                for (CompletableFuture<Void> future : acknowledged) {
+                    try {
+                        future.join();
+                    } catch (CompletionException e) {
+                        fail(round, "a command failed: " + e.getCause());
+                    }
+                }
+
+                // 2. The relays follow, and the tracker is idle again
+                long expected = on ? (1L << RELAYS) - 1 : 0;
+                for (EmulatedBoard board : emulated) {
+                    if (board.relayState() != expected) {
+                        fail(round, "board SN " + board.getSerialNumber() + " has relays " + Long.toHexString(board.relayState())
+                                + ", expected " + Long.toHexString(expected));
+                    }
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SETTLE_TIMEOUT_MS);
+                while (tracker.outstanding() > 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(5);
+                }
+                if (tracker.outstanding() > 0) {
+                    fail(round, tracker.outstanding() + " commands still in flight");
+                }
+            }
+
+            long retransmits = 0;
+            for (BoardConfig board : boards) {
+                retransmits += Metrics.board(board).retransmits.get();
+            }
+            if (lossRate > 0 && retransmits == 0) {
+                fail(rounds * 2, "nothing was retransmitted although datagrams were lost");
+            }
+            System.out.printf("OK: %d boards, %d commands acknowledged with %.0f%% loss each way, %d retransmits%n",
+                    boardCount, sent, lossRate * 100, retransmits);
+        }
+    }
+
+    private static void fail(int round, String reason) {
+        System.out.printf("FAILED in round %d: %s%n", round, reason);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.bench;
+
+import org.example.emulator.ControllerEmulator;
+import org.example.emulator.EmulatorSettings;
+import org.example.metrics.BoardMetrics;
+import org.example.metrics.Metrics;
+import org.example.pipeline.ScanPipeline;
+import org.example.pipeline.WaitStrategy;
+import org.example.service.BoardRegistry;
+import org.example.service.InventoryService;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the whole application (scan pipeline, InventoryService, send queues, retransmissions)
+ * against thousands of emulated controller boards and reports the scan-to-accept latency, i.e.
+ * from publishing the RFID tag of an import to the emulated board switching the relay on.
+ *
+ * Scans are published at a fixed rate regardless of how fast they are handled (open loop), so
+ * queueing under overload shows up in the latency. Every import goes to a relay that is still off,
+ * so each one causes exactly one command; the run stops when all relays have been used.
+ * Loss, latency and rejections of the emulated boards are set with the {@code emulator.*} system
+ * properties (see {@link EmulatorSettings}).
+ *
+ * Usage: {@code java -cp benchmarks.jar org.example.bench.EmulatorLoadDriver [boards] [importsPerSecond] [seconds] [scanners]}
+ */
+public class EmulatorLoadDriver {
+
+    private static final int BASE_SERIAL = 600_000_000;
+    private static final int RELAYS_PER_BOARD = 40;
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int boardCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int scanners = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        int imports = (int) Math.min((long) rate * seconds, (long) boardCount * RELAYS_PER_BOARD);
+
+        EmulatorSettings settings = EmulatorSettings.fromSystemProperties();
+        PrintStream out = System.out;
+        try (ControllerEmulator emulator = new ControllerEmulator(settings, Math.min(boardCount, 64))) {
+            // 1. Boards e0..eN with products E<board>-<relay>
+            for (int i = 0; i < boardCount; i++) {
+                emulator.addBoard(BASE_SERIAL + i);
+            }
+            Path layoutFile = Files.createTempFile("emulated-boards", ".properties");
+            layoutFile.toFile().deleteOnExit();
+            emulator.writeLayout(layoutFile);
+
+            // 2. Import k goes to board k % boards (as scans spread over the aisles); match every accepted ON to its publish time
+            AtomicLongArray publishedAt = new AtomicLongArray(imports);
+            long[] latencies = new long[imports];
+            AtomicInteger accepted = new AtomicInteger();
+            emulator.setCommandListener((board, relay, on, receivedNanos) -> {
+                int k = (relay - 1) * boardCount + board.getSerialNumber() - BASE_SERIAL;
+                if (!on || k < 0 || k >= imports) {
+                    return;
+                }
+                long start = publishedAt.getAndSet(k, 0);
+                if (start != 0) {
+                    latencies[accepted.getAndIncrement()] = receivedNanos - start;
+                }
+            });
+
+            System.setOut(new PrintStream(java.io.OutputStream.nullOutputStream()));
+            try (InventoryService service = new InventoryService(BoardRegistry.load(layoutFile), null);
+                 ScanPipeline pipeline = new ScanPipeline(4096, 4, WaitStrategy.BLOCK, service::handleInput)) {
+                // 3. Publish product + tag pairs at the target rate, spread over the scanners
+                long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+                long started = System.nanoTime();
+                for (int k = 0; k < imports; k++) {
+                    long due = started + k * intervalNanos;
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    String scanner = "s" + k % scanners;
+                    pipeline.publish(scanner, "E" + k % boardCount + "-" + (1 + k / boardCount));
+                    publishedAt.set(k, System.nanoTime());
+                    pipeline.publish(scanner, "T" + k);
+                }
+                long published = System.nanoTime() - started;
+
+                // 4. Wait for the stragglers (retransmissions), then report
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_TIMEOUT_MS);
+                while (accepted.get() < imports && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                int total = accepted.get();
+                long[] sorted = Arrays.copyOf(latencies, total);
+                Arrays.sort(sorted);
+                long retransmits = 0;
+                for (BoardMetrics metrics : Metrics.boards()) {
+                    retransmits += metrics.retransmits.get();
+                }
+                System.setOut(out);
+                out.printf("%d emulated boards, %d scanners, %s%n", boardCount, scanners, settings);
+                out.printf("target %d imports/s, published %.0f imports/s, %d of %d accepted%n",
+                        rate, imports / (published / 1e9), total, imports);
+                out.printf("LED commands %d, failures %d, retransmits %d%n",
+                        Metrics.LED_COMMANDS.get(), Metrics.LED_COMMAND_FAILURES.get(), retransmits);
+                emulator.printStats(out);
+                if (total > 0) {
+                    out.printf("scan-to-accept latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                            percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99), sorted[total - 1] / 1e6);
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
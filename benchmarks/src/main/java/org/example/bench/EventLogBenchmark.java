@@ -0,0 +1,141 @@
+package org.example.bench;
+
+import org.example.logging.EventLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caller-side cost of one diagnostic line from the send path: the asynchronous EventLog
+ * (writing to a rolling file in the background) against the synchronous println of a
+ * concatenated string to a file-backed PrintStream that it replaced.
+ * A benchmark loop logs far faster than any scanner, so the ring soon fills up: the eventLog
+ * variants use the BLOCK policy and therefore measure the writer's sustained throughput, the
+ * eventLogDropping variant uses DROP and measures what a caller pays when the writer is behind.
+ * The burst variants log a burst of {@value #BURST} lines that fits in the ring, starting with
+ * an empty ring, which is the situation of a scan burst on the hot path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventLogBenchmark {
+
+    private static final int BURST = 1000;
+
+    @State(Scope.Benchmark)
+    public static class Sinks {
+        Path directory;
+        PrintStream printStream;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("event-log-bench");
+            EventLog.openFile(directory.resolve("events.log"), 64L * 1024 * 1024, 1);
+            printStream = new PrintStream(new FileOutputStream(directory.resolve("println.log").toFile()), true);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            EventLog.flush();
+            printStream.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Blocking {
+        @Setup(Level.Iteration)
+        public void setup() {
+            EventLog.setOverflowPolicy(EventLog.OverflowPolicy.BLOCK);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Dropping {
+        @Setup(Level.Iteration)
+        public void setup() {
+            EventLog.setOverflowPolicy(EventLog.OverflowPolicy.DROP);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Drained {
+        @Setup(Level.Invocation)
+        public void setup() {
+            EventLog.setOverflowPolicy(EventLog.OverflowPolicy.BLOCK);
+            EventLog.flush();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Command {
+        int relay;
+    }
+
+    @Benchmark
+    public void eventLog(Sinks sinks, Blocking policy, Command command) {
+        EventLog.info("... Sending UDP command to turn ON floor/device {} on board SN {}", command.relay++ & 0xFF, 175111864);
+    }
+
+    @Benchmark
+    public void eventLogDropping(Sinks sinks, Dropping policy, Command command) {
+        EventLog.info("... Sending UDP command to turn ON floor/device {} on board SN {}", command.relay++ & 0xFF, 175111864);
+    }
+
+    @Benchmark
+    public void println(Sinks sinks, Command command) {
+        sinks.printStream.println("... Sending UDP command to turn ON floor/device " + (command.relay++ & 0xFF) + " on board SN " + 175111864);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void eventLogThreads04(Sinks sinks, Blocking policy, Command command) {
+        EventLog.info("... Sending UDP command to turn ON floor/device {} on board SN {}", command.relay++ & 0xFF, 175111864);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void printlnThreads04(Sinks sinks, Command command) {
+        sinks.printStream.println("... Sending UDP command to turn ON floor/device " + (command.relay++ & 0xFF) + " on board SN " + 175111864);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 50)
+    @Measurement(iterations = 200)
+    public void eventLogBurst(Sinks sinks, Drained drained, Command command) {
+        for (int i = 0; i < BURST; i++) {
+            EventLog.info("... Sending UDP command to turn ON floor/device {} on board SN {}", command.relay++ & 0xFF, 175111864);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 50)
+    @Measurement(iterations = 200)
+    public void printlnBurst(Sinks sinks, Command command) {
+        for (int i = 0; i < BURST; i++) {
+            sinks.printStream.println("... Sending UDP command to turn ON floor/device " + (command.relay++ & 0xFF) + " on board SN " + 175111864);
+        }
+    }
+}
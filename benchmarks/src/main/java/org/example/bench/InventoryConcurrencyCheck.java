@@ -0,0 +1,193 @@
+package org.example.bench;
+
+import org.example.metrics.Metrics;
+import org.example.service.InventoryService;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * Checks InventoryService with many stations scanning the same tags at the same time: no import
+ * may be lost, no tag may be associated (or exported) twice, and the stock index must agree with
+ * the associations.
+ *
+ * <ol>
+ *   <li>Every station imports every tag, each with its own product: each tag must end up
+ *       associated exactly once.</li>
+ *   <li>Every station exports every tag (scan, 'confirm'): each tag must be exported exactly once.</li>
+ *   <li>The stations import and export random tags while another thread evicts every session
+ *       it can, so scans regularly race with the eviction of their session.</li>
+ * </ol>
+ * After each phase the import and export counters, the associations and the stock index must
+ * match, and no export may be left pending. Finally every session must be evictable.
+ *
+ * Exits with status 1 on the first mismatch.
+ *
+ * Usage: {@code java -cp benchmarks.jar org.example.bench.InventoryConcurrencyCheck [stations] [tags] [mixedOpsPerStation]}
+ */
+public class InventoryConcurrencyCheck {
+
+    private static final String[] PRODUCTS = {"PRD1", "PRD2", "PRD3", "PRD4", "PRD5"};
+
+    public static void main(String[] args) throws Exception {
+        int stations = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int tagCount = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        int mixedOps = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+
+        PrintStream out = LoopbackSink.muteStdout();
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+            tags.add("TAG-" + i);
+        }
+        try (LoopbackSink sink = new LoopbackSink();
+             InventoryService service = new InventoryService(sink.board(175111864))) {
+
+            // 1. Contended imports
+            long imports = Metrics.IMPORTS.get();
+            long exports = Metrics.EXPORTS.get();
+            runStations(stations, station -> {
+                List<String> order = shuffled(tags, station);
+                for (String tag : order) {
+                    service.handleInput(stationId(station), PRODUCTS[station % PRODUCTS.length]);
+                    service.handleInput(stationId(station), tag);
+                }
+            });
+            check(out, "contended imports", service, tags, stations, imports, exports, tagCount);
+
+            // 2. Contended exports
+            imports = Metrics.IMPORTS.get();
+            exports = Metrics.EXPORTS.get();
+            runStations(stations, station -> {
+                for (String tag : shuffled(tags, station)) {
+                    service.handleInput(stationId(station), tag);
+                    service.handleInput(stationId(station), "confirm");
+                }
+            });
+            check(out, "contended exports", service, tags, stations, imports, exports, 0);
+
+            // 3. Mixed imports and exports racing with session eviction
+            imports = Metrics.IMPORTS.get();
+            exports = Metrics.EXPORTS.get();
+            AtomicBoolean mixing = new AtomicBoolean(true);
+            long[] evicted = {0};
+            Thread evictor = new Thread(() -> {
+                while (mixing.get()) {
+                    evicted[0] += service.evictIdleSessions(0);
+                    Thread.yield();
+                }
+            }, "session-evictor");
+            evictor.start();
+            runStations(stations, station -> {
+                SplittableRandom random = new SplittableRandom(station);
+                for (int i = 0; i < mixedOps; i++) {
+                    String tag = tags.get(random.nextInt(tags.size()));
+                    if (random.nextBoolean()) {
+                        service.handleInput(stationId(station), PRODUCTS[random.nextInt(PRODUCTS.length)]);
+                        service.handleInput(stationId(station), tag);
+                    } else {
+                        service.handleInput(stationId(station), tag);
+                        service.handleInput(stationId(station), "confirm");
+                    }
+                }
+            });
+            mixing.set(false);
+            evictor.join();
+            long associated = Metrics.IMPORTS.get() - imports - (Metrics.EXPORTS.get() - exports);
+            check(out, "mixed with eviction", service, tags, stations, imports, exports, associated);
+
+            // 4. Every station is idle now, so every session can go
+            int left = service.evictIdleSessions(0);
+            if (service.sessionCount() != 0) {
+                fail(out, "eviction", service.sessionCount() + " sessions left after evicting " + left);
+            }
+            out.printf("OK: %d stations, %d tags, %d mixed operations per station, %d sessions evicted during the mix%n",
+                    stations, tagCount, mixedOps, evicted[0]);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void runStations(int stations, IntConsumer work) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[stations];
+        for (int s = 0; s < stations; s++) {
+            int station = s;
+            threads[s] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                work.accept(station);
+            }, stationId(s));
+            threads[s].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Checks the counters, the associations and the stock index against each other.
+     *
+     * @param associated The number of tags that must be associated now.
+     */
+    private static void check(PrintStream out, String phase, InventoryService service, List<String> tags, int stations,
+                              long importsBefore, long exportsBefore, long associated) {
+        long imported = Metrics.IMPORTS.get() - importsBefore;
+        long exported = Metrics.EXPORTS.get() - exportsBefore;
+        if (phase.equals("contended imports") && (imported != tags.size() || exported != 0)) {
+            fail(out, phase, imported + " imports and " + exported + " exports counted for " + tags.size() + " tags");
+        }
+        if (phase.equals("contended exports") && (exported != tags.size() || imported != 0)) {
+            fail(out, phase, exported + " exports and " + imported + " imports counted for " + tags.size() + " tags");
+        }
+        long actual = tags.stream().filter(tag -> service.productOf(tag) != null).count();
+        if (actual != associated) {
+            fail(out, phase, actual + " tags associated, expected " + associated);
+        }
+        long indexed = 0;
+        for (String product : PRODUCTS) {
+            List<String> held = service.tagsOf(product);
+            if (held.size() != service.stockCount(product)) {
+                fail(out, phase, product + " lists " + held.size() + " tags but counts " + service.stockCount(product));
+            }
+            for (String tag : held) {
+                if (!product.equals(service.productOf(tag))) {
+                    fail(out, phase, "stock index has " + tag + " under " + product + ", association says " + service.productOf(tag));
+                }
+            }
+            indexed += held.size();
+        }
+        if (indexed != actual) {
+            fail(out, phase, "stock index holds " + indexed + " tags, " + actual + " are associated");
+        }
+        for (int s = 0; s < stations; s++) {
+            if (service.getSession(stationId(s)) != null && service.getSession(stationId(s)).hasPendingExport()) {
+                fail(out, phase, stationId(s) + " still has an export pending");
+            }
+        }
+    }
+
+    private static List<String> shuffled(List<String> tags, int seed) {
+        List<String> order = new ArrayList<>(tags);
+        Collections.shuffle(order, new java.util.Random(seed));
+        return order;
+    }
+
+    private static String stationId(int station) {
+        return "station-" + station;
+    }
+
+    private static void fail(PrintStream out, String phase, String message) {
+        out.printf("FAILED in phase '%s': %s%n", phase, message);
+        System.exit(1);
+    }
+}
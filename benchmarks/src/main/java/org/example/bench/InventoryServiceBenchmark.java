@@ -0,0 +1,97 @@
+package org.example.bench;
+
+import org.example.service.InventoryService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi-station stress test of InventoryService.handleInput.
+ * Every JMH thread is one scanner station running full import/export cycles
+ * (QR, RFID, RFID, confirm) with its own tags. Compare the scores of the
+ * 1/4/16-station variants to see how throughput scales with station count.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Warehouse {
+        LoopbackSink sink;
+        InventoryService service;
+        PrintStream stdout;
+        final AtomicInteger stationIds = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            stdout = LoopbackSink.muteStdout();
+            sink = new LoopbackSink();
+            service = new InventoryService(sink.board(175111864));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            service.close();
+            sink.close();
+            System.setOut(stdout);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Station {
+        String scannerId;
+        String product;
+        long tagCounter;
+
+        @Setup(Level.Trial)
+        public void setup(Warehouse warehouse) {
+            int id = warehouse.stationIds.incrementAndGet();
+            scannerId = "station-" + id;
+            product = "PRD" + (1 + id % 5);
+        }
+    }
+
+    private static void importExportCycle(Warehouse warehouse, Station station) {
+        String tag = station.scannerId + "-tag-" + (station.tagCounter++);
+        InventoryService service = warehouse.service;
+        service.handleInput(station.scannerId, station.product);
+        service.handleInput(station.scannerId, tag);
+        service.handleInput(station.scannerId, tag);
+        service.handleInput(station.scannerId, "confirm");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void stations01(Warehouse warehouse, Station station) {
+        importExportCycle(warehouse, station);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void stations04(Warehouse warehouse, Station station) {
+        importExportCycle(warehouse, station);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void stations16(Warehouse warehouse, Station station) {
+        importExportCycle(warehouse, station);
+    }
+}
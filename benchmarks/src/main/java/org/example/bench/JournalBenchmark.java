@@ -0,0 +1,148 @@
+package org.example.bench;
+
+import org.example.persistence.InventoryJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Journal throughput and recovery time.
+ * The append benchmarks report events per second: without waiting, and with every
+ * event made durable (where concurrent threads share one group commit).
+ * The recovery benchmark replays a journal of {@code events} import/export events.
+ */
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class JournalBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class OpenJournal {
+        Path directory;
+        InventoryJournal journal;
+        final AtomicLong tags = new AtomicLong();
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("journal-bench");
+            journal = InventoryJournal.open(directory);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            journal.close();
+            deleteRecursively(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class History {
+        @Param({"10000000"})
+        int events;
+
+        @Param({"false", "true"})
+        boolean withSnapshot;
+
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            directory = Files.createTempDirectory("journal-recovery");
+            Map<String, String> state = new HashMap<>();
+            try (InventoryJournal journal = InventoryJournal.open(directory)) {
+                // Half imports, half exports of earlier tags: 1/4 of the tags stay associated.
+                for (int i = 0; i < events; i++) {
+                    if (i % 4 == 3) {
+                        String tag = "TAG-" + (i - 2);
+                        journal.recordExport(tag);
+                        state.remove(tag);
+                    } else {
+                        String tag = "TAG-" + i;
+                        String product = "PRD" + (i % 5 + 1);
+                        journal.recordImport(tag, product);
+                        state.put(tag, product);
+                    }
+                }
+                if (withSnapshot) {
+                    journal.snapshot(() -> state);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public long appendOnly(OpenJournal state) throws IOException {
+        long tag = state.tags.incrementAndGet();
+        return state.journal.recordImport("TAG-" + tag, "PRD1");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public long appendDurable(OpenJournal state) throws IOException {
+        long tag = state.tags.incrementAndGet();
+        long sequence = state.journal.recordImport("TAG-" + tag, "PRD1");
+        state.journal.awaitDurable(sequence);
+        return sequence;
+    }
+
+    @Benchmark
+    @Threads(16)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public long appendDurableGroupCommit(OpenJournal state) throws IOException {
+        long tag = state.tags.incrementAndGet();
+        long sequence = state.journal.recordImport("TAG-" + tag, "PRD1");
+        state.journal.awaitDurable(sequence);
+        return sequence;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public int recover(History history) throws IOException {
+        try (InventoryJournal journal = InventoryJournal.open(history.directory)) {
+            return journal.recoveredState().size();
+        }
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
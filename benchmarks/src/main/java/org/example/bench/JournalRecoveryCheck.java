@@ -0,0 +1,150 @@
+package org.example.bench;
+
+import org.example.persistence.InventoryJournal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Checks that every acknowledged import and export survives a reopen of the journal while
+ * snapshots are taken concurrently with the writes.
+ *
+ * Writer threads import and export random tags the way {@link org.example.service.InventoryService}
+ * does (journal append inside the map's {@code compute()}, within {@link InventoryJournal#beginChange()}),
+ * each change acknowledged once {@link InventoryJournal#awaitDurable(long)} returns. A snapshot
+ * thread compacts the journal as fast as it can until 90% of the changes are done, so the
+ * snapshot that recovery starts from was itself taken during writes. After every round the journal is closed and
+ * reopened, and the recovered associations must equal the map. Small segments make the writers
+ * roll segments of their own too, and every eighth change stalls for 2 ms between the append and
+ * the map update so a snapshot regularly lands in that gap.
+ *
+ * Exits with status 1 on the first mismatch.
+ *
+ * Usage: {@code java -cp benchmarks.jar org.example.bench.JournalRecoveryCheck [rounds] [writers] [opsPerWriter]}
+ */
+public class JournalRecoveryCheck {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    private static final int TAGS_PER_WRITER = 2_000;
+    private static final int STALL_ONE_IN = 8;
+    private static final long STALL_NANOS = 2_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int writers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int opsPerWriter = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+
+        Path directory = Files.createTempDirectory("journal-recovery-check");
+        try {
+            Map<String, String> expected = new HashMap<>();
+            long snapshots = 0;
+            for (int round = 0; round < rounds; round++) {
+                Map<String, String> state = new ConcurrentHashMap<>();
+                try (InventoryJournal journal = new InventoryJournal(directory, SEGMENT_SIZE, 1)) {
+                    // 1. The previous round must have been recovered exactly
+                    if (!journal.recoveredState().equals(expected)) {
+                        fail(round, expected, journal.recoveredState());
+                    }
+                    state.putAll(journal.recoveredState());
+
+                    // 2. Concurrent writes and snapshots; the last snapshot races with writes too
+                    AtomicLong done = new AtomicLong();
+                    long snapshotUntil = (long) writers * opsPerWriter * 9 / 10;
+                    AtomicLong taken = new AtomicLong();
+                    Thread snapshotter = new Thread(() -> {
+                        while (done.get() < snapshotUntil) {
+                            try {
+                                journal.snapshot(() -> state);
+                                taken.incrementAndGet();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    }, "check-snapshotter");
+                    snapshotter.start();
+                    Thread[] threads = new Thread[writers];
+                    for (int w = 0; w < writers; w++) {
+                        long seed = round * 1_000L + w;
+                        String prefix = "W" + w + "-";
+                        threads[w] = new Thread(() -> write(journal, state, prefix, seed, opsPerWriter, done), "check-writer-" + w);
+                        threads[w].start();
+                    }
+                    for (Thread thread : threads) {
+                        thread.join();
+                    }
+                    snapshotter.join();
+                    snapshots += taken.get();
+                }
+                // 3. Everything acknowledged is what the next open must recover
+                expected = new HashMap<>(state);
+            }
+            try (InventoryJournal journal = new InventoryJournal(directory, SEGMENT_SIZE, 1)) {
+                if (!journal.recoveredState().equals(expected)) {
+                    fail(rounds, expected, journal.recoveredState());
+                }
+            }
+            System.out.printf("OK: %d rounds, %d writers x %d changes, %d snapshots, %d associations recovered%n",
+                    rounds, writers, opsPerWriter, snapshots, expected.size());
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void write(InventoryJournal journal, Map<String, String> state, String prefix, long seed, int ops, AtomicLong done) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < ops; i++) {
+            String tag = prefix + random.nextInt(TAGS_PER_WRITER);
+            String product = "PRD" + (1 + random.nextInt(5));
+            boolean stall = random.nextInt(STALL_ONE_IN) == 0;
+            long[] sequence = {0};
+            journal.beginChange();
+            try {
+                // Imports a free tag, exports an associated one.
+                state.compute(tag, (t, current) -> {
+                    try {
+                        sequence[0] = current == null ? journal.recordImport(t, product) : journal.recordExport(t);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    if (stall) {
+                        // Stands in for a writer preempted between its append and the map update.
+                        LockSupport.parkNanos(STALL_NANOS);
+                    }
+                    return current == null ? product : null;
+                });
+            } finally {
+                journal.endChange();
+            }
+            try {
+                journal.awaitDurable(sequence[0]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            done.incrementAndGet();
+        }
+    }
+
+    private static void fail(int round, Map<String, String> expected, Map<String, String> recovered) {
+        long missing = expected.keySet().stream().filter(tag -> !recovered.containsKey(tag)).count();
+        long extra = recovered.keySet().stream().filter(tag -> !expected.containsKey(tag)).count();
+        long changed = expected.entrySet().stream()
+                .filter(e -> recovered.containsKey(e.getKey()) && !Objects.equals(recovered.get(e.getKey()), e.getValue()))
+                .count();
+        System.out.printf("FAILED after round %d: %d associations missing, %d not expected, %d with another product%n",
+                round, missing, extra, changed);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.bench;
+
+import org.example.config.BoardConfig;
+import org.example.service.LedService;
+import org.example.service.LocateResult;
+import org.example.service.OffHeapWarehouseDB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to light a 1,000-item pick wave spread over several boards:
+ * the old one-by-one locateProduct loop against the batched locateProducts call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocateWaveBenchmark {
+
+    @Param({"1000"})
+    int waveSize;
+
+    @Param({"8"})
+    int boardCount;
+
+    LoopbackSink sink;
+    LedService ledService;
+    List<String> wave;
+    PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        stdout = LoopbackSink.muteStdout();
+        sink = new LoopbackSink();
+        OffHeapWarehouseDB db = new OffHeapWarehouseDB(waveSize);
+        for (int i = 0; i < boardCount; i++) {
+            db.addBoard(sink.board(1000 + i));
+        }
+        wave = new ArrayList<>(waveSize);
+        for (int i = 0; i < waveSize; i++) {
+            String qrCode = "QR-" + i;
+            db.put(qrCode, i % boardCount, 1 + i % 40);
+            wave.add(qrCode);
+        }
+        // The sink never replies, so measure the send path without acknowledgement tracking.
+        ledService = new LedService(db, Executors.newFixedThreadPool(2), null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        sink.close();
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public int sequentialLoop() throws Exception {
+        for (String qrCode : wave) {
+            ledService.locateProduct(qrCode);
+        }
+        return wave.size();
+    }
+
+    @Benchmark
+    public int batchedWave() {
+        List<CompletableFuture<LocateResult>> results = ledService.locateProducts(wave);
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+        return results.size();
+    }
+}
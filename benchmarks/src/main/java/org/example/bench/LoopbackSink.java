@@ -0,0 +1,96 @@
+package org.example.bench;
+
+import org.example.config.BoardConfig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A UDP endpoint on 127.0.0.1 that stands in for a controller board during benchmarks.
+ * A daemon thread drains and counts every datagram so the socket buffer never fills up,
+ * and acknowledges each 64-byte controller frame by echoing it with byte 8 set to 1.
+ */
+public class LoopbackSink implements AutoCloseable {
+
+    private final DatagramChannel channel;
+    private final LongAdder received = new LongAdder();
+    private final Thread drainer;
+    private volatile FrameListener frameListener;
+
+    /**
+     * Notified on the drain thread of every controller frame, before it is acknowledged.
+     */
+    public interface FrameListener {
+        void onFrame(ByteBuffer frame, long receivedNanos);
+    }
+
+    public LoopbackSink() throws IOException {
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress("127.0.0.1", 0));
+        drainer = new Thread(this::drain, "loopback-sink");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * @return A board config that sends to this sink.
+     */
+    public BoardConfig board(int serialNumber) throws IOException {
+        return new BoardConfig("127.0.0.1", ((InetSocketAddress) channel.getLocalAddress()).getPort(), serialNumber);
+    }
+
+    public void setFrameListener(FrameListener listener) {
+        this.frameListener = listener;
+    }
+
+    public long received() {
+        return received.sum();
+    }
+
+    private void drain() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(2048);
+        try {
+            while (true) {
+                buffer.clear();
+                SocketAddress sender = channel.receive(buffer);
+                received.increment();
+                if (buffer.position() == 64 && buffer.get(0) == 0x17) {
+                    FrameListener listener = frameListener;
+                    if (listener != null) {
+                        listener.onFrame(buffer, System.nanoTime());
+                    }
+                    buffer.put(8, (byte) 1);
+                    buffer.flip();
+                    channel.send(buffer, sender);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Closed by close().
+        } catch (IOException e) {
+            System.err.println("[ERROR] Loopback sink failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Silences System.out so console output of the services does not dominate the measurement.
+     *
+     * @return The original stream, to be restored after the benchmark.
+     */
+    public static PrintStream muteStdout() {
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return original;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
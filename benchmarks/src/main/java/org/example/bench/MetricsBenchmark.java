@@ -0,0 +1,70 @@
+package org.example.bench;
+
+import org.example.config.BoardConfig;
+import org.example.metrics.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording cost of the metrics on the send path; each event should stay well under 50 ns
+ * and allocate nothing. The 4-thread variants record into the same counter and histogram.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final BoardConfig board = new BoardConfig("127.0.0.1", 60000, 175111864);
+    }
+
+    @State(Scope.Thread)
+    public static class Latency {
+        long nanos = 12_345;
+
+        long next() {
+            nanos = nanos * 6364136223846793005L + 1442695040888963407L;
+            return (nanos >>> 44) + 1_000; // 1 µs .. ~1 s
+        }
+    }
+
+    @Benchmark
+    public void counter() {
+        Metrics.SCANS.increment();
+    }
+
+    @Benchmark
+    public void histogram(Latency latency) {
+        Metrics.SCAN_TO_SEND.record(latency.next());
+    }
+
+    @Benchmark
+    public void boardCounter(Shared shared) {
+        Metrics.board(shared.board).framesSent.increment();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void counterThreads04() {
+        Metrics.SCANS.increment();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void histogramThreads04(Latency latency) {
+        Metrics.SCAN_TO_SEND.record(latency.next());
+    }
+}
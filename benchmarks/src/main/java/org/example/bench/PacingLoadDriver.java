@@ -0,0 +1,131 @@
+package org.example.bench;
+
+import org.example.emulator.ControllerEmulator;
+import org.example.emulator.EmulatorSettings;
+import org.example.metrics.BoardMetrics;
+import org.example.metrics.Metrics;
+import org.example.network.BoardSendQueues;
+import org.example.network.CommandTracker;
+import org.example.network.SendPacer;
+import org.example.network.UDPClient;
+import org.example.service.BoardRegistry;
+import org.example.service.LedService;
+import org.example.service.LocateResult;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+/**
+ * Sends locate waves through {@link LedService} to emulated boards that can only take in a limited
+ * number of frames per second, once unpaced (every board's burst goes out back to back) and once
+ * through paced send queues, and compares failures, retransmissions and overruns.
+ *
+ * Every wave locates each product {@code repeats} times, i.e. 40 x repeats frames per board.
+ *
+ * Usage: {@code java -cp benchmarks.jar org.example.bench.PacingLoadDriver [boards] [waves] [repeats] [ingressRate]}
+ */
+public class PacingLoadDriver {
+
+    private static final int RELAYS_PER_BOARD = 40;
+
+    public static void main(String[] args) throws Exception {
+        int boardCount = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int waves = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int repeats = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        double ingressRate = args.length > 3 ? Double.parseDouble(args[3]) : 500;
+
+        EmulatorSettings settings = EmulatorSettings.fromSystemProperties();
+        settings.ingressRate = ingressRate;
+        PrintStream out = System.out;
+        try {
+            System.setOut(new PrintStream(java.io.OutputStream.nullOutputStream()));
+            CommandTracker tracker = UDPClient.tracker();
+            run("unpaced", out, settings, 700_000_000, boardCount, waves, repeats,
+                    registry -> new LedService(registry, Executors.newFixedThreadPool(4, r -> {
+                        Thread thread = new Thread(r, "locate-sender");
+                        thread.setDaemon(true);
+                        return thread;
+                    }), tracker));
+            SendPacer pacer = new SendPacer();
+            tracker.addDeliveryListener(pacer);
+            run("paced", out, settings, 710_000_000, boardCount, waves, repeats,
+                    registry -> new LedService(registry, new BoardSendQueues(UDPClient.transport(), tracker, 1024, 4, 0, pacer)));
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private interface ServiceFactory {
+        LedService create(BoardRegistry registry) throws Exception;
+    }
+
+    private static void run(String mode, PrintStream out, EmulatorSettings settings, int baseSerial, int boardCount,
+                            int waves, int repeats, ServiceFactory factory) throws Exception {
+        try (ControllerEmulator emulator = new ControllerEmulator(settings, Math.min(boardCount, 64))) {
+            for (int i = 0; i < boardCount; i++) {
+                emulator.addBoard(baseSerial + i);
+            }
+            Path layoutFile = Files.createTempFile("paced-boards", ".properties");
+            layoutFile.toFile().deleteOnExit();
+            emulator.writeLayout(layoutFile);
+            LedService service = factory.create(BoardRegistry.load(layoutFile));
+
+            List<String> wave = new ArrayList<>();
+            for (int r = 0; r < repeats; r++) {
+                for (int relay = 1; relay <= RELAYS_PER_BOARD; relay++) {
+                    for (int board = 0; board < boardCount; board++) {
+                        wave.add("E" + board + "-" + relay);
+                    }
+                }
+            }
+            long[] before = boardTotals();
+            long failuresBefore = Metrics.LED_COMMAND_FAILURES.get();
+            long[] latencies = new long[waves * wave.size()];
+            int measured = 0;
+            long started = System.nanoTime();
+            for (int w = 0; w < waves; w++) {
+                long waveStart = System.nanoTime();
+                long[] done = new long[wave.size()];
+                List<CompletableFuture<LocateResult>> results = service.locateProducts(wave);
+                for (int i = 0; i < results.size(); i++) {
+                    int index = i;
+                    results.get(i).thenRun(() -> done[index] = System.nanoTime());
+                }
+                CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+                for (long end : done) {
+                    latencies[measured++] = end - waveStart;
+                }
+            }
+            long elapsed = System.nanoTime() - started;
+            long[] after = boardTotals();
+            Arrays.sort(latencies);
+
+            out.printf("%s: %d boards, %d waves of %d locates, ingress %.0f frames/s per board%n",
+                    mode, boardCount, waves, wave.size(), settings.ingressRate);
+            out.printf("  %.0f locates/s, %d failed, %d retransmits, %d timeouts, %d rejections%n",
+                    waves * wave.size() / (elapsed / 1e9), Metrics.LED_COMMAND_FAILURES.get() - failuresBefore,
+                    after[0] - before[0], after[1] - before[1], after[2] - before[2]);
+            out.printf("  locate latency within a wave: p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.99)] / 1e6,
+                    latencies[latencies.length - 1] / 1e6);
+            out.print("  ");
+            emulator.printStats(out);
+        }
+    }
+
+    private static long[] boardTotals() {
+        long[] totals = new long[3];
+        for (BoardMetrics metrics : Metrics.boards()) {
+            totals[0] += metrics.retransmits.get();
+            totals[1] += metrics.timeouts.get();
+            totals[2] += metrics.rejections.get();
+        }
+        return totals;
+    }
+}
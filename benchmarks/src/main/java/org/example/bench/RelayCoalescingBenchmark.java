@@ -0,0 +1,132 @@
+package org.example.bench;
+
+import org.example.config.BoardConfig;
+import org.example.metrics.Metrics;
+import org.example.network.UDPClient;
+import org.example.protocol.PacketBuilder;
+import org.example.service.LedService;
+import org.example.service.LocateResult;
+import org.example.service.Location;
+import org.example.service.OffHeapWarehouseDB;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Datagrams per pick when lighting a wave of picks spread over several boards.
+ * {@code perPick} sends one frame per pick (the behaviour before coalescing); {@code coalescedWave}
+ * goes through LedService.locateProducts, which merges picks behind the same relay. Bitmap frames
+ * are not measured here: they need acknowledged sends (see EmulatorLoadDriver with
+ * {@code -Demulator.multiRelay=true}).
+ * Divide the {@code packets} secondary result by {@code picks} for datagrams per pick.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RelayCoalescingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Wave {
+        @Param({"200"})
+        int waveSize;
+
+        @Param({"8"})
+        int boardCount;
+
+        LoopbackSink sink;
+        List<BoardConfig> boards = new ArrayList<>();
+        OffHeapWarehouseDB db;
+        LedService ledService;
+        List<String> picks;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            sink = new LoopbackSink();
+            db = new OffHeapWarehouseDB(boardCount * PacketBuilder.MAX_MASK_RELAY);
+            for (int i = 0; i < boardCount; i++) {
+                BoardConfig board = sink.board(2000 + i);
+                boards.add(board);
+                int boardIndex = db.addBoard(board);
+                for (int relay = 1; relay <= PacketBuilder.MAX_MASK_RELAY; relay++) {
+                    db.put("SLOT-" + i + "-" + relay, boardIndex, relay);
+                }
+            }
+            // Random slots: a realistic wave has several picks behind some LEDs.
+            Random random = new Random(42);
+            picks = new ArrayList<>(waveSize);
+            for (int i = 0; i < waveSize; i++) {
+                picks.add("SLOT-" + random.nextInt(boardCount) + "-" + (1 + random.nextInt(PacketBuilder.MAX_MASK_RELAY)));
+            }
+            ledService = new LedService(db, Executors.newFixedThreadPool(2), null);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            sink.close();
+        }
+
+        long framesSent() {
+            long total = 0;
+            for (BoardConfig board : boards) {
+                total += Metrics.board(board).framesSent.get();
+            }
+            return total;
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Packets {
+        public long packets;
+        public long picks;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            packets = 0;
+            picks = 0;
+        }
+    }
+
+    @Benchmark
+    public int perPick(Wave wave, Packets packets) throws IOException {
+        long before = wave.framesSent();
+        for (String pick : wave.picks) {
+            Location location = wave.db.findLocationByQrCode(pick).orElseThrow();
+            UDPClient.send(location.getBoard(), PacketBuilder.controlCommandFrame(location.getBoard(), 1, location.getRelayNumber()));
+        }
+        packets.packets += wave.framesSent() - before;
+        packets.picks += wave.picks.size();
+        return wave.picks.size();
+    }
+
+    @Benchmark
+    public int coalescedWave(Wave wave, Packets packets) {
+        long before = wave.framesSent();
+        List<CompletableFuture<LocateResult>> results = wave.ledService.locateProducts(wave.picks);
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+        packets.packets += wave.framesSent() - before;
+        packets.picks += wave.picks.size();
+        return results.size();
+    }
+}
@@ -0,0 +1,176 @@
+package org.example.bench;
+
+import org.example.network.ScanIngestionServer;
+import org.example.service.BoardRegistry;
+import org.example.service.InventoryService;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays synthetic scan streams from many network scanners against a {@link ScanIngestionServer}
+ * and reports the scan-to-LED-command latency, i.e. from sending the RFID tag of an import to the
+ * ON frame for its relay arriving at the (loopback) controller.
+ *
+ * Every scanner imports into its own board/relay, so each frame can be matched to the scan that caused it.
+ * Each scanner waits for its frame before scanning the next item (closed loop), then exports the
+ * item again so that its LED is off and the next import has a state change to send.
+ *
+ * Usage: {@code java -cp benchmarks.jar org.example.bench.ScanLoadGenerator [scanners] [scansPerScanner] [tcp|udp]}
+ */
+public class ScanLoadGenerator {
+
+    private static final int BASE_SERIAL = 500_000;
+    // Only relays 1-40 can be switched off again.
+    private static final int RELAYS_PER_BOARD = 40;
+    private static final long FRAME_TIMEOUT_MS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int scanners = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int scansPerScanner = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        boolean udp = args.length > 2 && "udp".equalsIgnoreCase(args[2]);
+        int warmupScans = Math.max(1, scansPerScanner / 10);
+
+        PrintStream out = System.out;
+        try (LoopbackSink sink = new LoopbackSink()) {
+            // 1. One board per RELAYS_PER_BOARD scanners, one product per scanner
+            Path layoutFile = Files.createTempFile("scan-load", ".properties");
+            layoutFile.toFile().deleteOnExit();
+            int sinkPort = sink.board(0).port;
+            StringBuilder layout = new StringBuilder();
+            for (int board = 0; board * RELAYS_PER_BOARD < scanners; board++) {
+                layout.append("board.b").append(board).append(".serial=").append(BASE_SERIAL + board).append('\n');
+                layout.append("board.b").append(board).append(".ip=127.0.0.1\n");
+                layout.append("board.b").append(board).append(".port=").append(sinkPort).append('\n');
+            }
+            for (int i = 0; i < scanners; i++) {
+                layout.append("product.P").append(i).append("=b").append(i / RELAYS_PER_BOARD)
+                        .append(':').append(1 + i % RELAYS_PER_BOARD).append('\n');
+            }
+            Files.writeString(layoutFile, layout);
+
+            // 2. Match every ON frame to the scanner waiting for it
+            AtomicLongArray sentAt = new AtomicLongArray(scanners);
+            Semaphore[] frameArrived = new Semaphore[scanners];
+            long[][] latencies = new long[scanners][scansPerScanner];
+            for (int i = 0; i < scanners; i++) {
+                frameArrived[i] = new Semaphore(0);
+            }
+            int[] measured = new int[scanners];
+            sink.setFrameListener((frame, receivedNanos) -> {
+                int serial = frame.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(4);
+                int relay = frame.get(9) & 0xFF;
+                if (relay > RELAYS_PER_BOARD) {
+                    return; // OFF frame of an export
+                }
+                int scanner = (serial - BASE_SERIAL) * RELAYS_PER_BOARD + relay - 1;
+                if (scanner < 0 || scanner >= scanners) {
+                    return;
+                }
+                long start = sentAt.getAndSet(scanner, 0);
+                if (start != 0) { // 0 means a retransmission of an already counted frame
+                    latencies[scanner][measured[scanner]] = receivedNanos - start;
+                    frameArrived[scanner].release();
+                }
+            });
+
+            System.setOut(new PrintStream(java.io.OutputStream.nullOutputStream()));
+            InetSocketAddress loopback = new InetSocketAddress("127.0.0.1", 0);
+            try (InventoryService service = new InventoryService(BoardRegistry.load(layoutFile), null);
+                 ScanIngestionServer server = new ScanIngestionServer(loopback, loopback, service::handleInput, 8)) {
+                InetSocketAddress target = udp ? server.getUdpAddress() : server.getTcpAddress();
+
+                // 3. One thread per scanner: scan the product, then a fresh RFID tag, then wait for the LED
+                LongAdder timeouts = new LongAdder();
+                CountDownLatch ready = new CountDownLatch(scanners);
+                CountDownLatch go = new CountDownLatch(1);
+                Thread[] threads = new Thread[scanners];
+                for (int s = 0; s < scanners; s++) {
+                    int scanner = s;
+                    threads[s] = new Thread(() -> {
+                        try (ByteChannel channel = udp ? DatagramChannel.open().connect(target) : SocketChannel.open(target)) {
+                            String prefix = udp ? "s" + scanner + "|" : "";
+                            if (!udp) {
+                                write(channel, "SCANNER s" + scanner + "\n");
+                            }
+                            ready.countDown();
+                            go.await();
+                            for (int k = 0; k < warmupScans + scansPerScanner; k++) {
+                                write(channel, prefix + "P" + scanner + "\n");
+                                sentAt.set(scanner, System.nanoTime());
+                                String tag = prefix + "T" + scanner + "-" + k + "\n";
+                                write(channel, tag);
+                                boolean arrived = frameArrived[scanner].tryAcquire(FRAME_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                                if (!arrived) {
+                                    sentAt.set(scanner, 0);
+                                    timeouts.increment();
+                                } else if (k >= warmupScans) {
+                                    measured[scanner]++;
+                                }
+                                write(channel, tag);
+                                write(channel, prefix + "confirm\n");
+                            }
+                        } catch (IOException | InterruptedException e) {
+                            System.err.println("[ERROR] Scanner " + scanner + " failed: " + e.getMessage());
+                        }
+                    }, "scanner-" + s);
+                    threads[s].start();
+                }
+                ready.await();
+                long started = System.nanoTime();
+                go.countDown();
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                long elapsed = System.nanoTime() - started;
+
+                // 4. Report
+                int total = Arrays.stream(measured).sum();
+                long[] all = new long[total];
+                int position = 0;
+                for (int s = 0; s < scanners; s++) {
+                    System.arraycopy(latencies[s], 0, all, position, measured[s]);
+                    position += measured[s];
+                }
+                Arrays.sort(all);
+                System.setOut(out);
+                out.printf("%d %s scanners, %d scans each (+%d warm-up), %d timeouts%n",
+                        scanners, udp ? "UDP" : "TCP", scansPerScanner, warmupScans, timeouts.sum());
+                out.printf("throughput: %.0f imports/s%n", (warmupScans + scansPerScanner) * (double) scanners / (elapsed / 1e9));
+                if (total > 0) {
+                    out.printf("scan-to-LED latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                            percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), all[total - 1] / 1e6);
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static void write(ByteChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
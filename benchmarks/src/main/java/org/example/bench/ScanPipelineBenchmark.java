@@ -0,0 +1,96 @@
+package org.example.bench;
+
+import org.example.pipeline.ScanPipeline;
+import org.example.pipeline.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cost for the reading thread of a burst of {@value #BURST} scans from {@value #SCANNERS} scanners:
+ * publishing them to the {@link ScanPipeline} against handling them inline, as Main used to.
+ * Each scan costs the handler {@value #WORK} tokens of {@link Blackhole#consumeCPU(long)}.
+ * The burst fits in the ring, which starts empty; {@code publishAndDrain} also waits until the
+ * consumers have handled the burst, i.e. measures the pipeline's throughput per wait strategy.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 50)
+@Measurement(iterations = 200)
+@Fork(1)
+public class ScanPipelineBenchmark {
+
+    private static final int BURST = 1000;
+    private static final int SCANNERS = 16;
+    private static final long WORK = 500;
+
+    @State(Scope.Benchmark)
+    public static class Pipeline {
+        @Param({"BUSY_SPIN", "YIELD", "PARK", "BLOCK"})
+        WaitStrategy waitStrategy;
+
+        @Param({"2"})
+        int consumers;
+
+        final String[] scannerIds = new String[SCANNERS];
+        ScanPipeline pipeline;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            for (int i = 0; i < SCANNERS; i++) {
+                scannerIds[i] = "scanner-" + i;
+            }
+            pipeline = new ScanPipeline(4096, consumers, waitStrategy, (scannerId, line, receivedNanos) -> Blackhole.consumeCPU(WORK));
+        }
+
+        @Setup(Level.Invocation)
+        public void drain() {
+            while (pipeline.backlog() > 0) {
+                LockSupport.parkNanos(10_000);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pipeline.close();
+        }
+    }
+
+    @Benchmark
+    public void publish(Pipeline state) {
+        for (int i = 0; i < BURST; i++) {
+            state.pipeline.publish(state.scannerIds[i % SCANNERS], "PRD1");
+        }
+    }
+
+    @Benchmark
+    public void publishAndDrain(Pipeline state) {
+        for (int i = 0; i < BURST; i++) {
+            state.pipeline.publish(state.scannerIds[i % SCANNERS], "PRD1");
+        }
+        while (state.pipeline.backlog() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Benchmark
+    public void inline() {
+        for (int i = 0; i < BURST; i++) {
+            Blackhole.consumeCPU(WORK);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.example.bench;
+
+import org.example.service.StockIndex;
+import org.example.service.StockLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Stock queries over {@value #ASSOCIATIONS} RFID associations: the StockIndex against a full
+ * scan of the RFID-to-product map, which is what answering them took before. The import/export
+ * variants measure what maintaining the index adds to every association change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StockIndexBenchmark {
+
+    private static final int ASSOCIATIONS = 1_000_000;
+    private static final int TOP = 10;
+    private static final int KEY_MASK = 4095;
+
+    @State(Scope.Benchmark)
+    public static class Stock {
+        @Param({"10000"})
+        int products;
+
+        final Map<String, String> rfidToProduct = new ConcurrentHashMap<>();
+        final StockIndex index = new StockIndex();
+        String[] productSample;
+
+        @Setup
+        public void setup() {
+            // Skewed stock levels, so the top-N report has a clear answer.
+            Random random = new Random(42);
+            for (int i = 0; i < ASSOCIATIONS; i++) {
+                int product = (int) (products * Math.pow(random.nextDouble(), 2));
+                rfidToProduct.put("TAG-" + i, "SKU-" + product);
+            }
+            index.addAll(rfidToProduct);
+            productSample = new String[KEY_MASK + 1];
+            for (int i = 0; i < productSample.length; i++) {
+                productSample[i] = "SKU-" + random.nextInt(products);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String product(Stock stock) {
+            return stock.productSample[next++ & KEY_MASK];
+        }
+    }
+
+    @Benchmark
+    public int countIndexed(Stock stock, Cursor cursor) {
+        return stock.index.count(cursor.product(stock));
+    }
+
+    @Benchmark
+    public long countScan(Stock stock, Cursor cursor) {
+        String product = cursor.product(stock);
+        return stock.rfidToProduct.values().stream().filter(product::equals).count();
+    }
+
+    @Benchmark
+    public List<String> tagsIndexed(Stock stock, Cursor cursor) {
+        return stock.index.tags(cursor.product(stock));
+    }
+
+    @Benchmark
+    public List<String> tagsScan(Stock stock, Cursor cursor) {
+        String product = cursor.product(stock);
+        List<String> tags = new ArrayList<>();
+        stock.rfidToProduct.forEach((tag, p) -> {
+            if (p.equals(product)) {
+                tags.add(tag);
+            }
+        });
+        return tags;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<StockLevel> topIndexed(Stock stock) {
+        return stock.index.topProducts(TOP);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Map.Entry<String, Long>> topScan(Stock stock) {
+        Map<String, Long> counts = stock.rfidToProduct.values().stream()
+                .collect(Collectors.groupingBy(p -> p, HashMap::new, Collectors.counting()));
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(TOP)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void importExportIndexed(Stock stock, Cursor cursor) {
+        String tag = "NEW-" + (cursor.next & KEY_MASK);
+        String product = cursor.product(stock);
+        stock.rfidToProduct.compute(tag, (t, current) -> {
+            stock.index.added(t, product);
+            return product;
+        });
+        stock.rfidToProduct.computeIfPresent(tag, (t, current) -> {
+            stock.index.removed(t, current);
+            return null;
+        });
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void importExportMapOnly(Stock stock, Cursor cursor) {
+        String tag = "NEW-" + (cursor.next & KEY_MASK);
+        String product = cursor.product(stock);
+        stock.rfidToProduct.compute(tag, (t, current) -> product);
+        stock.rfidToProduct.computeIfPresent(tag, (t, current) -> null);
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.bench;
+
+import org.example.config.BoardConfig;
+import org.example.network.CommandTracker;
+import org.example.network.UDPClient;
+import org.example.protocol.PacketBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of handing one control frame to the OS through UDPClient.send, against a loopback sink.
+ * The byte[] variant encodes with the legacy PacketBuilder.sendControlCommand, the buffer variant
+ * with the pooled direct frame. The acknowledged variant measures a full round trip through the
+ * CommandTracker (send, loopback ACK, future completed).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UdpSendBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Controller {
+        LoopbackSink sink;
+        BoardConfig board;
+        CommandTracker tracker;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            sink = new LoopbackSink();
+            board = sink.board(175111864);
+            tracker = UDPClient.tracker();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            sink.close();
+        }
+    }
+
+    @Benchmark
+    public void sendArray(Controller controller) throws IOException {
+        UDPClient.send(controller.board, PacketBuilder.sendControlCommand(controller.board, 1, 3));
+    }
+
+    @Benchmark
+    public void sendBuffer(Controller controller) throws IOException {
+        UDPClient.send(controller.board, PacketBuilder.controlCommandFrame(controller.board, 1, 3));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void sendBufferThreads04(Controller controller) throws IOException {
+        UDPClient.send(controller.board, PacketBuilder.controlCommandFrame(controller.board, 1, 3));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void sendAcknowledged(Controller controller) throws IOException {
+        controller.tracker.send(controller.board, PacketBuilder.controlCommandFrame(controller.board, 1, 3)).join();
+    }
+}
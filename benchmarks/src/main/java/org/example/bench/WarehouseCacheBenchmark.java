@@ -0,0 +1,133 @@
+package org.example.bench;
+
+import org.example.config.BoardConfig;
+import org.example.persistence.JdbcWarehouseDB;
+import org.example.service.CachingWarehouseDB;
+import org.example.service.Location;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * findLocationByQrCode on an in-memory H2 JdbcWarehouseDB of {@value #PRODUCTS} products, directly
+ * and through a CachingWarehouseDB, for three request mixes:
+ * <ul>
+ *   <li>cold: uniform over all products with a cache of 1% of them (almost every lookup misses);</li>
+ *   <li>warm: a working set that fits in the cache and was warmed up (every lookup hits);</li>
+ *   <li>mixed: Zipf-distributed over all products with a cache of 10% of them.</li>
+ * </ul>
+ * The cache's hit rate is printed at the end of each trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WarehouseCacheBenchmark {
+
+    private static final int PRODUCTS = 100_000;
+    private static final int RELAYS_PER_BOARD = 40;
+    private static final int KEY_MASK = 65535;
+
+    @State(Scope.Benchmark)
+    public static class Database {
+        @Param({"cold", "warm", "mixed"})
+        String workload;
+
+        JdbcWarehouseDB jdbc;
+        CachingWarehouseDB cache;
+        String[] keys;
+
+        @Setup
+        public void setup() throws SQLException {
+            BoardConfig board = new BoardConfig("127.0.0.1", 60000, 175111864);
+            jdbc = new JdbcWarehouseDB("jdbc:h2:mem:warehouse-" + workload + ";DB_CLOSE_DELAY=-1", List.of(board), 4);
+            Map<String, Location> locations = new HashMap<>();
+            for (int i = 0; i < PRODUCTS; i++) {
+                locations.put("SKU-" + i, new Location(board, 1 + i % RELAYS_PER_BOARD));
+            }
+            jdbc.putAll(locations);
+
+            Random random = new Random(42);
+            keys = new String[KEY_MASK + 1];
+            switch (workload) {
+                case "cold":
+                    cache = new CachingWarehouseDB(jdbc, PRODUCTS / 100);
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = "SKU-" + random.nextInt(PRODUCTS);
+                    }
+                    break;
+                case "warm":
+                    cache = new CachingWarehouseDB(jdbc, PRODUCTS / 10);
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = "SKU-" + random.nextInt(PRODUCTS / 20);
+                    }
+                    cache.warmUp(List.of(keys));
+                    break;
+                default:
+                    cache = new CachingWarehouseDB(jdbc, PRODUCTS / 10);
+                    double[] cumulative = zipf(PRODUCTS);
+                    for (int i = 0; i < keys.length; i++) {
+                        int rank = java.util.Arrays.binarySearch(cumulative, random.nextDouble());
+                        keys[i] = "SKU-" + Math.min(PRODUCTS - 1, rank < 0 ? -rank - 1 : rank);
+                    }
+                    break;
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            System.out.printf("%n%s: cache hit rate %.3f, %d evictions%n", workload, cache.hitRate(), cache.evictionCount());
+            jdbc.close();
+        }
+
+        private static double[] zipf(int n) {
+            double[] cumulative = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / (i + 1);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= sum;
+            }
+            return cumulative;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String key(Database database) {
+            return database.keys[next++ & KEY_MASK];
+        }
+    }
+
+    @Benchmark
+    public Optional<Location> jdbc(Database database, Cursor cursor) {
+        return database.jdbc.findLocationByQrCode(cursor.key(database));
+    }
+
+    @Benchmark
+    public Optional<Location> cached(Database database, Cursor cursor) {
+        return database.cache.findLocationByQrCode(cursor.key(database));
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.bench;
+
+import org.example.config.BoardConfig;
+import org.example.protocol.PacketBuilder;
+import org.example.service.BoardRegistry;
+import org.example.service.Location;
+import org.example.service.OffHeapWarehouseDB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WarehouseDB.findLocationByQrCode for the heap-backed BoardRegistry and the OffHeapWarehouseDB,
+ * looking up random known product codes. The allocation-free findPackedLocation path is measured
+ * next to the Optional-returning interface method.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WarehouseLookupBenchmark {
+
+    private static final int KEY_MASK = 4095;
+
+    @State(Scope.Benchmark)
+    public static class Layout {
+        @Param({"1000", "1000000"})
+        int products;
+
+        BoardRegistry registry;
+        OffHeapWarehouseDB offHeap;
+        String[] keys;
+
+        @Setup
+        public void setup() {
+            BoardConfig board = new BoardConfig("127.0.0.1", 60000, 175111864);
+            Map<String, Integer> relays = new HashMap<>();
+            offHeap = new OffHeapWarehouseDB(products);
+            int boardIndex = offHeap.addBoard(board);
+            for (int i = 0; i < products; i++) {
+                String code = "SKU-" + i;
+                int relay = 1 + i % PacketBuilder.MAX_MASK_RELAY;
+                relays.put(code, relay);
+                offHeap.put(code, boardIndex, relay);
+            }
+            registry = BoardRegistry.of(board, relays);
+
+            // A fixed pseudo-random sample, so every variant looks up the same keys.
+            keys = new String[KEY_MASK + 1];
+            java.util.Random random = new java.util.Random(42);
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = "SKU-" + random.nextInt(products);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String key(Layout layout) {
+            return layout.keys[next++ & KEY_MASK];
+        }
+    }
+
+    @Benchmark
+    public Optional<Location> registry(Layout layout, Cursor cursor) {
+        return layout.registry.findLocationByQrCode(cursor.key(layout));
+    }
+
+    @Benchmark
+    public Optional<Location> offHeap(Layout layout, Cursor cursor) {
+        return layout.offHeap.findLocationByQrCode(cursor.key(layout));
+    }
+
+    @Benchmark
+    public int offHeapPacked(Layout layout, Cursor cursor) {
+        return layout.offHeap.findPackedLocation(cursor.key(layout));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Optional<Location> registryThreads04(Layout layout, Cursor cursor) {
+        return layout.registry.findLocationByQrCode(cursor.key(layout));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int offHeapPackedThreads04(Layout layout, Cursor cursor) {
+        return layout.offHeap.findPackedLocation(cursor.key(layout));
+    }
+}
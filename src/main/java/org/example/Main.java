@@ -1,10 +1,27 @@
 package org.example;
 
+import org.example.batch.BatchImporter;
+import org.example.batch.BatchReport;
+import org.example.cluster.ClusterNode;
+import org.example.logging.EventLog;
+import org.example.metrics.Metrics;
+import org.example.metrics.MetricsHttpServer;
+import org.example.network.ScanIngestionServer;
+import org.example.persistence.InventoryJournal;
+import org.example.pipeline.ScanPipeline;
+import org.example.pipeline.WaitStrategy;
+import org.example.service.BoardRegistry;
 import org.example.service.InventoryService;
+import org.example.service.Location;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
 
 /**
  * Main application entry point.
@@ -12,11 +29,153 @@ import java.io.InputStreamReader;
  * listening for input from hardware scanners (acting as keyboard wedges).
  */
 public class Main {
+    // Directory of the RFID association journal, relative to the working directory.
+    private static final String DATA_DIRECTORY = "data";
+
+    // Event log of every scan and LED command; operator prompts also go to the console.
+    private static final String LOG_FILE = "logs/inventory.log";
+    private static final long LOG_FILE_MAX_BYTES = 16 * 1024 * 1024;
+    private static final int LOG_FILES_KEPT = 5;
+
+    // Board layout file, unless another path is given as the first argument.
+    private static final String REGISTRY_FILE = "boards.properties";
+    private static final long REGISTRY_POLL_MS = 2000;
+
+    // Port for network-attached scanners (TCP lines and UDP datagrams), e.g. -Dscan.port=7000; off when unset.
+    private static final String SCAN_PORT_PROPERTY = "scan.port";
+    private static final int SCAN_WORKERS = 8;
+
+    // Ring between the scan readers and the threads handling scans; each scanner's scans stay on one consumer.
+    private static final int SCAN_RING_SIZE = 4096;
+    private static final int SCAN_CONSUMERS = 4;
+    // How idle consumers wait, e.g. -Dscan.waitStrategy=park; see WaitStrategy.
+    private static final String WAIT_STRATEGY_PROPERTY = "scan.waitStrategy";
+
+    // Batch mode: apply a scan file (lines "<product>,<tag>" import, "<tag>" export) and exit, e.g.
+    // -Dbatch.file=pallet.csv; failed items go to -Dbatch.report (default <file>.errors.csv).
+    private static final String BATCH_FILE_PROPERTY = "batch.file";
+    private static final String BATCH_REPORT_PROPERTY = "batch.report";
+    private static final long BATCH_LED_TIMEOUT_MS = 10_000;
+
+    // Zone sharding across several nodes, e.g. -Dcluster.node=n2 -Dcluster.port=7100 -Dcluster.seed=10.0.0.5:7100;
+    // off when cluster.node is unset. Each node keeps its journal in data/<node>.
+    private static final String CLUSTER_NODE_PROPERTY = "cluster.node";
+    private static final String CLUSTER_HOST_PROPERTY = "cluster.host";
+    private static final String CLUSTER_PORT_PROPERTY = "cluster.port";
+    private static final String CLUSTER_SEED_PROPERTY = "cluster.seed";
+    private static final int DEFAULT_CLUSTER_PORT = 7100;
+
+    // Local port of the Prometheus scrape endpoint, e.g. -Dmetrics.port=9400; off when unset.
+    private static final String METRICS_PORT_PROPERTY = "metrics.port";
+
     public static void main(String[] args) {
-        // 1. Initialize the inventory service which holds all the logic
-        InventoryService inventoryService = new InventoryService();
+        try {
+            EventLog.openFile(Path.of(LOG_FILE), LOG_FILE_MAX_BYTES, LOG_FILES_KEPT);
+        } catch (IOException e) {
+            System.err.println("[WARN] Cannot write the event log " + LOG_FILE + ", only the console is used: " + e.getMessage());
+        }
+
+        // 1. Load the board layout; a layout file is watched and reloaded when it changes
+        BoardRegistry registry;
+        Path registryFile = Path.of(args.length > 0 ? args[0] : REGISTRY_FILE);
+        try {
+            if (Files.exists(registryFile)) {
+                registry = BoardRegistry.load(registryFile);
+                registry.startWatching(REGISTRY_POLL_MS);
+                System.out.println("Board layout loaded from " + registryFile.toAbsolutePath());
+            } else {
+                registry = BoardRegistry.loadDefault();
+                System.out.println("No " + registryFile + " found, using the bundled board layout.");
+            }
+        } catch (IOException e) {
+            System.err.println("[ERROR] Failed to load the board layout: " + e.getMessage());
+            return;
+        }
+
+        // 2. Open the journal so associations survive a restart
+        String clusterNodeId = System.getProperty(CLUSTER_NODE_PROPERTY);
+        InventoryJournal journal;
+        try {
+            Path dataDirectory = clusterNodeId == null ? Path.of(DATA_DIRECTORY) : Path.of(DATA_DIRECTORY, clusterNodeId);
+            journal = InventoryJournal.open(dataDirectory);
+        } catch (IOException e) {
+            System.err.println("[ERROR] Failed to open the inventory journal: " + e.getMessage());
+            return;
+        }
+
+        // 3. Initialize the inventory service which holds all the logic
+        InventoryService inventoryService = new InventoryService(registry, journal);
+        WaitStrategy waitStrategy;
+        try {
+            waitStrategy = WaitStrategy.valueOf(System.getProperty(WAIT_STRATEGY_PROPERTY, "block").trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("[WARN] Unknown " + WAIT_STRATEGY_PROPERTY + " '" + System.getProperty(WAIT_STRATEGY_PROPERTY) + "', using BLOCK.");
+            waitStrategy = WaitStrategy.BLOCK;
+        }
+        // 3a. Batch mode: apply the scan file instead of reading scanners
+        String batchFile = System.getProperty(BATCH_FILE_PROPERTY);
+        if (batchFile != null) {
+            runBatch(inventoryService, registry, Path.of(batchFile));
+            inventoryService.close();
+            try {
+                EventLog.flush();
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("[ERROR] Failed to shut down cleanly: " + e.getMessage());
+            }
+            return;
+        }
 
-        // 2. Print instructions for the user
+        // 3b. In a cluster, scans go to the node owning their zone
+        ClusterNode clusterNode = null;
+        if (clusterNodeId != null) {
+            String host = System.getProperty(CLUSTER_HOST_PROPERTY, InetAddress.getLoopbackAddress().getHostAddress());
+            int port = Integer.getInteger(CLUSTER_PORT_PROPERTY, DEFAULT_CLUSTER_PORT);
+            try {
+                clusterNode = new ClusterNode(clusterNodeId, new InetSocketAddress(host, port), registry, inventoryService);
+                String seed = System.getProperty(CLUSTER_SEED_PROPERTY);
+                if (seed != null) {
+                    int colon = seed.lastIndexOf(':');
+                    clusterNode.join(new InetSocketAddress(seed.substring(0, colon), Integer.parseInt(seed.substring(colon + 1))));
+                }
+                System.out.println("Cluster node " + clusterNodeId + " at " + clusterNode.getAddress() + ", nodes: " + clusterNode.ring().nodes());
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[ERROR] Failed to start cluster node " + clusterNodeId + ": " + e.getMessage());
+                return;
+            }
+        }
+
+        // Readers only publish scans; the pipeline's consumers run the service (or the cluster routing).
+        ScanPipeline.Handler scanHandler = clusterNode != null ? clusterNode::onScan : inventoryService::handleInput;
+        ScanPipeline scanPipeline = new ScanPipeline(SCAN_RING_SIZE, SCAN_CONSUMERS, waitStrategy, scanHandler);
+
+        // 4. Accept scans from network-attached scanners, if a port is configured
+        ScanIngestionServer scanServer = null;
+        Integer scanPort = Integer.getInteger(SCAN_PORT_PROPERTY);
+        if (scanPort != null) {
+            try {
+                InetSocketAddress address = new InetSocketAddress(scanPort);
+                scanServer = new ScanIngestionServer(address, address, scanPipeline::publish, SCAN_WORKERS);
+                System.out.println("Accepting network scanners on TCP/UDP port " + scanPort + ".");
+            } catch (IOException e) {
+                System.err.println("[ERROR] Failed to start the scan ingestion server, only the console is read: " + e.getMessage());
+            }
+        }
+
+        // 5. Expose metrics through JMX and, if a port is configured, over HTTP
+        Metrics.registerMBean();
+        MetricsHttpServer metricsServer = null;
+        Integer metricsPort = Integer.getInteger(METRICS_PORT_PROPERTY);
+        if (metricsPort != null) {
+            try {
+                metricsServer = new MetricsHttpServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), metricsPort));
+                System.out.println("Metrics at http://localhost:" + metricsPort + MetricsHttpServer.PATH);
+            } catch (IOException e) {
+                System.err.println("[ERROR] Failed to start the metrics endpoint: " + e.getMessage());
+            }
+        }
+
+        // 6. Print instructions for the user
         System.out.println("========================================================");
         System.out.println("Inventory Management System Started");
         System.out.println("========================================================");
@@ -29,7 +188,7 @@ public class Main {
         System.out.println("--------------------------------------------------------");
 
 
-        // 3. Keep the main thread alive to read scanner data from the console
+        // 7. Keep the main thread alive to read scanner data from the console
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
             String line;
             while ((line = reader.readLine()) != null) {
@@ -38,13 +197,53 @@ public class Main {
                     break;
                 }
 
-                // Pass the scanned data to the service to handle
-                inventoryService.handleInput(line);
+                // Pass the scanned data on; the service handles it on a pipeline consumer
+                scanPipeline.publish(InventoryService.CONSOLE_SCANNER_ID, line);
 
             }
         } catch (IOException e) {
             System.err.println("[ERROR] Failed to read from console: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            try {
+                if (scanServer != null) {
+                    scanServer.close();
+                }
+                // Handles the scans still in the ring before the journal is closed.
+                scanPipeline.close();
+                if (clusterNode != null) {
+                    // Hands this node's zones to the others before the journal is closed.
+                    clusterNode.leave();
+                    clusterNode.close();
+                }
+                inventoryService.close();
+                EventLog.flush();
+                if (metricsServer != null) {
+                    metricsServer.close();
+                }
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("[ERROR] Failed to shut down cleanly: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void runBatch(InventoryService inventoryService, BoardRegistry registry, Path file) {
+        Path reportFile = Path.of(System.getProperty(BATCH_REPORT_PROPERTY, file + ".errors.csv"));
+        try {
+            BatchImporter importer = new BatchImporter(inventoryService, registry::isKnownProduct, Runtime.getRuntime().availableProcessors());
+            BatchReport report = importer.run(file, BATCH_LED_TIMEOUT_MS);
+            System.out.println("Batch " + report);
+            for (Location led : report.getUnconfirmedLeds()) {
+                EventLog.warn("Relay {} on board SN {} did not confirm its LED state.", led.getRelayNumber(), led.getBoard().serialNumber);
+            }
+            if (!report.isClean()) {
+                report.writeFailures(reportFile);
+                System.out.println(report.getFailures().size() + " failed items written to " + reportFile.toAbsolutePath()
+                        + (report.getAbortError() == null ? "" : "; the run stopped at line " + report.getAbortedAtLine()));
+            }
+        } catch (IOException e) {
+            System.err.println("[ERROR] Batch " + file + " failed: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+package org.example.batch;
+
+import org.example.service.InventoryService;
+import org.example.service.Location;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Applies a scan file of imports and exports, e.g. a received pallet, without going through the
+ * interactive scan workflow.
+ *
+ * The file is memory-mapped chunk by chunk; a few chunks ahead of the one being applied are parsed
+ * and validated in parallel. Each chunk is applied by {@link InventoryService#applyBatch} in file
+ * order, with one durable journal wait and one LED change per relay for the whole chunk; the LED
+ * commands are coalesced per board by the send queues. Nothing is printed per item; the outcome is
+ * a {@link BatchReport}. A file that cannot be read or a failing journal stops the run; the report
+ * then covers the lines up to that point.
+ */
+public class BatchImporter {
+
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final InventoryService service;
+    private final Predicate<String> knownProduct;
+    private final int parallelism;
+
+    /**
+     * @param service      Where the associations go.
+     * @param knownProduct True for the product QR codes of the board registry.
+     * @param parallelism  The number of chunks parsed at the same time.
+     */
+    public BatchImporter(InventoryService service, Predicate<String> knownProduct, int parallelism) {
+        this.service = service;
+        this.knownProduct = knownProduct;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Applies a scan file.
+     *
+     * @param ledTimeoutMillis How long to wait for the controllers to acknowledge the LED changes; 0 does not wait.
+     * @throws IOException If the file cannot be opened; later I/O errors abort the run and are reported.
+     */
+    public BatchReport run(Path file, long ledTimeoutMillis) throws IOException {
+        long started = System.nanoTime();
+        BatchReport report = new BatchReport(file);
+        // One entry per board and relay, however many products share it.
+        Set<Location> switched = new HashSet<>();
+        ExecutorService parsers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "batch-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // 1. Keep a few chunks parsing ahead while the oldest one is applied
+            Deque<CompletableFuture<ScanFileParser.Chunk>> parsing = new ArrayDeque<>();
+            long next = 0;
+            long linesBefore = 0;
+            while (next < size || !parsing.isEmpty()) {
+                while (next < size && parsing.size() < parallelism * 2) {
+                    long start = next;
+                    long end = Math.min(size, start + CHUNK_SIZE);
+                    parsing.add(CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return ScanFileParser.parse(channel, start, end, knownProduct);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, parsers));
+                    next = end;
+                }
+                ScanFileParser.Chunk chunk;
+                try {
+                    chunk = parsing.poll().join();
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                    report.abort(linesBefore + 1, "Reading failed: " + cause.getMessage());
+                    break;
+                }
+                // 2. Apply it in file order
+                chunk.shiftLineNumbers(linesBefore);
+                linesBefore += chunk.lines;
+                try {
+                    service.applyBatch(chunk.items, switched);
+                } catch (IOException e) {
+                    // The chunk's remaining items are failed already; the later chunks are not read.
+                    report.add(chunk.items);
+                    report.abort(linesBefore + 1, "Journal failed: " + e.getMessage());
+                    break;
+                }
+                report.add(chunk.items);
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+        // 3. Wait for the controllers, so that the LEDs are right when the run is reported done
+        if (ledTimeoutMillis > 0) {
+            awaitLeds(switched, ledTimeoutMillis, report);
+        }
+        report.finish(System.nanoTime() - started);
+        return report;
+    }
+
+    /**
+     * Waits until the controllers confirmed the LEDs or the timeout passed; the report gets the
+     * LEDs still unconfirmed then.
+     */
+    private void awaitLeds(Collection<Location> leds, long timeoutMillis, BatchReport report) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Location led : leds) {
+            while (!service.isLedConfirmed(led) && System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (!service.isLedConfirmed(led)) {
+                report.unconfirmed(led);
+            }
+        }
+    }
+}
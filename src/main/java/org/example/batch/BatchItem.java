@@ -0,0 +1,70 @@
+package org.example.batch;
+
+/**
+ * One line of a batch scan file: an import ({@code <product QR>,<RFID tag>}) or an export
+ * ({@code <RFID tag>}), and its outcome. A malformed line has no operation and is failed from the start.
+ */
+public final class BatchItem {
+
+    public enum Operation {IMPORT, EXPORT}
+
+    private final Operation operation;
+    private final String productId; // null for exports
+    private final String rfidTag;   // the raw line for malformed items
+    long lineNumber;                // set by the parser once the lines before its chunk are counted
+    private String error;           // null while the item is fine
+
+    BatchItem(Operation operation, String productId, String rfidTag) {
+        this.operation = operation;
+        this.productId = productId;
+        this.rfidTag = rfidTag;
+    }
+
+    static BatchItem malformed(String line, String reason) {
+        BatchItem item = new BatchItem(null, null, line);
+        item.error = reason;
+        return item;
+    }
+
+    /**
+     * @return IMPORT, EXPORT, or null for a malformed line.
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public String getRfidTag() {
+        return rfidTag;
+    }
+
+    /**
+     * @return The 1-based line number in the scan file.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public boolean isOk() {
+        return error == null;
+    }
+
+    /**
+     * @return Why the item was not applied, or null if it was.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Marks the item as not applied.
+     */
+    public void fail(String reason) {
+        if (error == null) {
+            error = reason;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.example.batch;
+
+import org.example.service.Location;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a batch run: totals, every item that was not applied, the LEDs the controllers
+ * did not confirm and, if the run stopped early, why and from which line on.
+ */
+public class BatchReport {
+
+    private final Path file;
+    private long items;
+    private long imported;
+    private long exported;
+    private final List<BatchItem> failures = new ArrayList<>();
+    private final List<Location> unconfirmedLeds = new ArrayList<>();
+    private long abortedAtLine;
+    private String abortError;
+    private long elapsedNanos;
+
+    BatchReport(Path file) {
+        this.file = file;
+    }
+
+    void add(List<BatchItem> applied) {
+        for (BatchItem item : applied) {
+            items++;
+            if (!item.isOk()) {
+                failures.add(item);
+            } else if (item.getOperation() == BatchItem.Operation.IMPORT) {
+                imported++;
+            } else {
+                exported++;
+            }
+        }
+    }
+
+    /**
+     * Records that the run stopped before {@code line}; that line and all after it were not read.
+     */
+    void abort(long line, String error) {
+        this.abortedAtLine = line;
+        this.abortError = error;
+    }
+
+    void unconfirmed(Location led) {
+        unconfirmedLeds.add(led);
+    }
+
+    void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /** Non-blank, non-comment lines. */
+    public long getItems() {
+        return items;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getExported() {
+        return exported;
+    }
+
+    /**
+     * @return The items that were not applied, in file order.
+     */
+    public List<BatchItem> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * @return The LEDs whose state the controllers had not acknowledged when the run ended.
+     */
+    public List<Location> getUnconfirmedLeds() {
+        return Collections.unmodifiableList(unconfirmedLeds);
+    }
+
+    /**
+     * @return Why the run stopped before the end of the file, or null if it read the whole file.
+     */
+    public String getAbortError() {
+        return abortError;
+    }
+
+    /**
+     * @return The first line that was not read if the run was aborted, else 0.
+     */
+    public long getAbortedAtLine() {
+        return abortedAtLine;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double itemsPerSecond() {
+        return elapsedNanos == 0 ? 0 : items / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Writes the failures as CSV: {@code line,operation,product,tag,error}. An aborted run ends
+     * with a row for the first line that was not read.
+     */
+    public void writeFailures(Path reportFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            writer.write("line,operation,product,tag,error\n");
+            for (BatchItem item : failures) {
+                writer.write(item.getLineNumber() + "," + (item.getOperation() == null ? "" : item.getOperation())
+                        + "," + csv(item.getProductId()) + "," + csv(item.getRfidTag()) + "," + csv(item.getError()) + "\n");
+            }
+            if (abortError != null) {
+                writer.write(abortedAtLine + ",,,," + csv("Aborted, this and all later lines were not read: " + abortError) + "\n");
+            }
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * @return False if the report has anything to write with {@link #writeFailures(Path)}.
+     */
+    public boolean isClean() {
+        return failures.isEmpty() && abortError == null;
+    }
+
+    @Override
+    public String toString() {
+        return file + ": " + items + " items, " + imported + " imported, " + exported + " exported, "
+                + failures.size() + " failed in " + String.format("%.1f ms (%.0f items/s)", elapsedNanos / 1e6, itemsPerSecond())
+                + (unconfirmedLeds.isEmpty() ? "" : ", " + unconfirmedLeds.size() + " LEDs unconfirmed")
+                + (abortError == null ? "" : "; aborted at line " + abortedAtLine + ": " + abortError);
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.batch;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Parses and validates one chunk of a memory-mapped scan file.
+ *
+ * The file is cut into fixed-size chunks; a chunk owns every line that starts inside it, so a line
+ * crossing a chunk boundary is read by the chunk it starts in. Chunks are mapped one at a time and
+ * can be parsed in parallel; the file is never loaded as a whole. Lines are {@code
+ * <product QR>,<RFID tag>} (import) or {@code <RFID tag>} (export); blank lines and lines starting
+ * with '#' are skipped. Validation here only needs the line itself; whether a tag is free is
+ * checked when the items are applied in file order.
+ */
+final class ScanFileParser {
+
+    // A line may extend this far past the end of its chunk.
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private ScanFileParser() {
+    }
+
+    /**
+     * The items of one chunk; their line numbers count from the chunk's first line until
+     * {@link #shiftLineNumbers(long)} is called.
+     */
+    static final class Chunk {
+        final List<BatchItem> items = new ArrayList<>();
+        long lines; // lines starting in the chunk, including blank and comment lines
+
+        void shiftLineNumbers(long linesBefore) {
+            for (BatchItem item : items) {
+                item.lineNumber += linesBefore;
+            }
+        }
+    }
+
+    /**
+     * @param channel      The open scan file.
+     * @param start        The chunk's first byte.
+     * @param end          The byte after the chunk; lines starting before it are parsed in full.
+     * @param knownProduct True for product QR codes in the board registry.
+     */
+    static Chunk parse(FileChannel channel, long start, long end, Predicate<String> knownProduct) throws IOException {
+        long size = channel.size();
+        // Map one byte before the chunk, to see whether it starts at a line start.
+        long mapStart = Math.max(0, start - 1);
+        long mapEnd = Math.min(size, end + MAX_LINE_LENGTH);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int position = (int) (start - mapStart);
+        int limit = (int) (end - mapStart);
+
+        Chunk chunk = new Chunk();
+        // 1. A chunk not starting right after a newline begins inside the previous chunk's last line.
+        if (start > 0 && buffer.get(0) != '\n') {
+            while (position < buffer.limit() && buffer.get(position) != '\n') {
+                position++;
+            }
+            position++;
+        }
+        // 2. Every line starting inside the chunk
+        while (position < limit) {
+            int lineEnd = position;
+            while (lineEnd < buffer.limit() && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            chunk.lines++;
+            if (lineEnd == buffer.limit() && mapEnd < size) {
+                chunk.items.add(numbered(BatchItem.malformed("", "Line longer than " + MAX_LINE_LENGTH + " bytes"), chunk.lines));
+                break;
+            }
+            BatchItem item = parseLine(buffer, position, lineEnd, knownProduct);
+            if (item != null) {
+                chunk.items.add(numbered(item, chunk.lines));
+            }
+            position = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    private static BatchItem numbered(BatchItem item, long lineNumber) {
+        item.lineNumber = lineNumber;
+        return item;
+    }
+
+    private static BatchItem parseLine(MappedByteBuffer buffer, int from, int to, Predicate<String> knownProduct) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        String line = new String(bytes, StandardCharsets.UTF_8).trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+            return null;
+        }
+        int comma = line.indexOf(',');
+        if (comma < 0) {
+            return new BatchItem(BatchItem.Operation.EXPORT, null, line);
+        }
+        if (line.indexOf(',', comma + 1) >= 0) {
+            return BatchItem.malformed(line, "Expected <product>,<tag> or <tag>");
+        }
+        String productId = line.substring(0, comma).trim();
+        String rfidTag = line.substring(comma + 1).trim();
+        if (productId.isEmpty() || rfidTag.isEmpty()) {
+            return BatchItem.malformed(line, "Empty product or tag");
+        }
+        BatchItem item = new BatchItem(BatchItem.Operation.IMPORT, productId, rfidTag);
+        if (!knownProduct.test(productId)) {
+            item.fail("Unknown product");
+        }
+        return item;
+    }
+}
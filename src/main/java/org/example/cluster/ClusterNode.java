@@ -0,0 +1,599 @@
+package org.example.cluster;
+
+import org.example.config.BoardConfig;
+import org.example.logging.EventLog;
+import org.example.metrics.Metrics;
+import org.example.service.BoardRegistry;
+import org.example.service.InventoryService;
+import org.example.service.Location;
+import org.example.service.ScannerSession;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * One node of a cluster of inventory services that share a site by zone.
+ *
+ * A zone is one controller board (by serial number); a {@link HashRing} assigns every zone to one
+ * node, which owns the associations of the products on that board and drives its LEDs. Scans may
+ * reach any node; {@link #onScan} forwards each to the node that should handle it:
+ * <ul>
+ *   <li>a product QR code goes to the owner of the product's zone, and the station's session
+ *       follows it there (a half-finished import on the previous node is dropped);</li>
+ *   <li>the RFID tag of an import, 'confirm', and anything scanned during an export go to the
+ *       node holding the station's session;</li>
+ *   <li>any other tag (the start of an export) goes to the node that holds its association: the
+ *       session's node is offered it first, then this node and the others are asked.</li>
+ * </ul>
+ * Nodes talk over TCP, one tab-separated request line and one response line at a time:
+ * <pre>
+ * SCAN  scanner line       -> OK awaitingTag(0|1) exporting(0|1)
+ * SCAN_HELD scanner tag    -> as SCAN if the tag is associated here, else NONE
+ * LOOKUP tag               -> FOUND product | NONE
+ * RELEASE scanner          -> OK | BUSY
+ * JOIN node host:port      -> MEMBERS node=host:port ...
+ * MEMBERS node=host:port ..-> OK
+ * LEAVE node               -> OK
+ * ADOPT n, then n lines "tag product" -> OK | ERROR message
+ * </pre>
+ * When the membership changes every node hands the associations of the zones it no longer owns
+ * to their new owner; a periodic sweep catches imports that raced with a change and retries
+ * hand-overs that failed. The sender keeps an association (and cannot export it meanwhile) until
+ * the new owner has journaled it and replied OK; adopting is idempotent, so a retry after a
+ * partial failure is harmless. A node that cannot be reached, or does not answer within
+ * {@value #READ_TIMEOUT_MS} ms, is skipped: its scans are handled locally until it is back or has left.
+ * Leaving is graceful only ({@link #leave()}); a crashed node keeps its zones until it is restarted.
+ */
+public class ClusterNode implements Closeable {
+
+    private static final long REBALANCE_SWEEP_SECONDS = 30;
+    private static final int CONNECTIONS_PER_PEER = 8;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    // A peer that does not answer within this long is treated as unreachable; covers journaling an ADOPT.
+    private static final int READ_TIMEOUT_MS = 10_000;
+    private static final String OK = "OK";
+
+    private final String nodeId;
+    private final String advertisedAddress;
+    private final BoardRegistry registry;
+    private final InventoryService service;
+    private final Map<String, String> members = new ConcurrentHashMap<>();
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    // Scanner ID -> where its session lives, for scans arriving at this node.
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final ServerSocket server;
+    private final ExecutorService connectionThreads;
+    private final ScheduledExecutorService sweeper;
+    private volatile HashRing ring;
+    private volatile boolean running = true;
+
+    /**
+     * Starts a single-node cluster; see {@link #join(InetSocketAddress)} to join others.
+     *
+     * @param nodeId        A name unique in the cluster; it places the node on the ring.
+     * @param listenAddress Where other nodes connect to; also advertised to them.
+     * @param registry      The board layout, the same on every node.
+     * @param service       The node's inventory service.
+     */
+    public ClusterNode(String nodeId, InetSocketAddress listenAddress, BoardRegistry registry, InventoryService service) throws IOException {
+        this.nodeId = nodeId;
+        this.registry = registry;
+        this.service = service;
+        this.server = new ServerSocket();
+        server.bind(listenAddress, 128);
+        this.advertisedAddress = listenAddress.getHostString() + ":" + server.getLocalPort();
+        members.put(nodeId, advertisedAddress);
+        this.ring = new HashRing(members.keySet());
+
+        this.connectionThreads = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "cluster-peer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        connectionThreads.execute(this::acceptLoop);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-rebalance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> rebalance(ring), REBALANCE_SWEEP_SECONDS, REBALANCE_SWEEP_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return The host:port other nodes reach this node at.
+     */
+    public String getAddress() {
+        return advertisedAddress;
+    }
+
+    public HashRing ring() {
+        return ring;
+    }
+
+    /**
+     * @return True if this node owns the zone (board) the product is on.
+     */
+    public boolean ownsProduct(String productId) {
+        Location location = registry.route(productId);
+        return location != null && nodeId.equals(ring.owner(location.getBoard().serialNumber));
+    }
+
+    /**
+     * Joins the cluster a seed node belongs to. The other nodes then hand over the zones this
+     * node owns from now on.
+     */
+    public void join(InetSocketAddress seed) throws IOException {
+        String reply;
+        try (Connection connection = new Connection(seed)) {
+            reply = connection.request("JOIN\t" + nodeId + "\t" + advertisedAddress);
+        }
+        if (!reply.startsWith("MEMBERS")) {
+            throw new IOException("Seed " + seed + " refused the join: " + reply);
+        }
+        applyMembers(reply);
+        EventLog.info("Node {} joined the cluster: {}", nodeId, String.join(", ", ring.nodes()));
+    }
+
+    /**
+     * Hands all associations of this node to the remaining nodes and tells them it is gone.
+     * Stations with an export waiting for 'confirm' should finish it first.
+     */
+    public synchronized void leave() {
+        HashRing remaining = ring.without(nodeId);
+        if (remaining.nodes().isEmpty()) {
+            return;
+        }
+        ring = remaining;
+        handOver(remaining, board -> true);
+        for (String member : remaining.nodes()) {
+            try {
+                peer(member).request("LEAVE\t" + nodeId);
+            } catch (IOException e) {
+                EventLog.warn("Could not tell node {} that {} leaves: {}", member, nodeId, e.getMessage());
+            }
+        }
+        members.keySet().retainAll(List.of(nodeId));
+        EventLog.info("Node {} left the cluster.", nodeId);
+    }
+
+    /**
+     * Handles or forwards a scan; usable as a {@link org.example.pipeline.ScanPipeline.Handler}.
+     * Scans of one station must not be handled concurrently.
+     */
+    public void onScan(String scannerId, String line, long receivedNanos) {
+        String command = line.trim();
+        if (command.isEmpty()) {
+            return;
+        }
+        Route route = routes.computeIfAbsent(scannerId, id -> new Route());
+        synchronized (route) {
+            String target = target(route, command);
+            if (target == null) {
+                // Start of an export: the station usually stays in its zone, so offer the tag to
+                // its node first, in one round trip; otherwise ask the others who holds it.
+                if (route.node != null && !route.node.equals(nodeId)
+                        && deliverRemote(route, route.node, scannerId, command, true)) {
+                    return;
+                }
+                target = tagHolder(route, command);
+            }
+            if (route.node != null && !route.node.equals(target) && route.awaitingTag) {
+                // The station moved on to another zone before scanning the tag.
+                release(route.node, scannerId);
+            }
+            if (!nodeId.equals(target) && deliverRemote(route, target, scannerId, command, false)) {
+                return;
+            }
+            service.handleInput(scannerId, command, receivedNanos);
+            ScannerSession session = service.getSession(scannerId);
+            route.node = nodeId;
+            route.awaitingTag = session != null && session.isAwaitingTag();
+            route.exporting = session != null && session.hasPendingExport();
+        }
+    }
+
+    private String target(Route route, String command) {
+        if (route.node != null && (route.exporting || "confirm".equalsIgnoreCase(command))) {
+            return route.node;
+        }
+        Location location = registry.route(command);
+        if (location != null) {
+            String owner = ring.owner(location.getBoard().serialNumber);
+            return owner != null ? owner : nodeId;
+        }
+        return route.awaitingTag ? route.node : null;
+    }
+
+    private String tagHolder(Route route, String rfidTag) {
+        List<String> candidates = new ArrayList<>();
+        candidates.add(nodeId);
+        candidates.addAll(ring.nodes());
+        for (String candidate : candidates.stream().distinct().toList()) {
+            // The station's remote node was already offered the tag.
+            boolean asked = candidate.equals(route.node) && !candidate.equals(nodeId);
+            if (!asked && holdsTag(candidate, rfidTag)) {
+                return candidate;
+            }
+        }
+        // A free tag: any node can say so.
+        return nodeId;
+    }
+
+    private boolean holdsTag(String node, String rfidTag) {
+        if (nodeId.equals(node)) {
+            return service.productOf(rfidTag) != null;
+        }
+        try {
+            return peer(node).request("LOOKUP\t" + rfidTag).startsWith("FOUND");
+        } catch (IOException e) {
+            EventLog.warn("Looking up RFID '{}' on node {} failed: {}", rfidTag, node, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param heldOnly True to have the scan handled only if the target holds the tag.
+     * @return False if the scan was not handled by the target.
+     */
+    private boolean deliverRemote(Route route, String target, String scannerId, String command, boolean heldOnly) {
+        String[] reply;
+        try {
+            reply = peer(target).request((heldOnly ? "SCAN_HELD\t" : "SCAN\t") + scannerId + "\t" + command).split("\t");
+        } catch (IOException e) {
+            EventLog.error("Forwarding a scan of '{}' to node {} failed, handling it here: {}", scannerId, target, e.getMessage());
+            return false;
+        }
+        if (heldOnly && "NONE".equals(reply[0])) {
+            return false;
+        }
+        if (reply.length < 3 || !OK.equals(reply[0])) {
+            EventLog.error("Node {} could not handle a scan of '{}': {}", target, scannerId, String.join(" ", reply));
+            return true;
+        }
+        Metrics.SCANS_FORWARDED.increment();
+        route.node = target;
+        route.awaitingTag = "1".equals(reply[1]);
+        route.exporting = "1".equals(reply[2]);
+        return true;
+    }
+
+    private void release(String node, String scannerId) {
+        if (nodeId.equals(node)) {
+            service.releaseSession(scannerId);
+            return;
+        }
+        try {
+            peer(node).request("RELEASE\t" + scannerId);
+        } catch (IOException e) {
+            EventLog.warn("Releasing the session of '{}' on node {} failed: {}", scannerId, node, e.getMessage());
+        }
+    }
+
+    // --- Membership and rebalancing ---
+
+    private synchronized void applyMembers(String membersLine) {
+        String[] fields = membersLine.split("\t");
+        for (int i = 1; i < fields.length; i++) {
+            int separator = fields[i].indexOf('=');
+            if (separator > 0) {
+                members.put(fields[i].substring(0, separator), fields[i].substring(separator + 1));
+            }
+        }
+        rebalance(new HashRing(members.keySet()));
+    }
+
+    private synchronized void removeMember(String node) {
+        members.remove(node);
+        Peer gone = peers.remove(node);
+        if (gone != null) {
+            gone.close();
+        }
+        rebalance(ring.without(node));
+    }
+
+    private String membersLine() {
+        StringBuilder line = new StringBuilder("MEMBERS");
+        members.forEach((node, address) -> line.append('\t').append(node).append('=').append(address));
+        return line.toString();
+    }
+
+    /**
+     * Switches to a ring and hands over the associations of the zones this node no longer owns.
+     */
+    private synchronized void rebalance(HashRing updated) {
+        if (!running || !updated.contains(nodeId)) {
+            return;
+        }
+        ring = updated;
+        handOver(updated, board -> !nodeId.equals(updated.owner(board.serialNumber)));
+    }
+
+    private void handOver(HashRing target, Predicate<BoardConfig> leaving) {
+        // 1. Claim the associations; they stay here until their new owner confirms
+        Map<String, String> claimed = service.beginHandOver(leaving);
+        Map<String, Map<String, String>> byOwner = new HashMap<>();
+        Map<String, String> unrouted = new HashMap<>();
+        claimed.forEach((tag, product) -> {
+            Location location = registry.route(product);
+            if (location == null) {
+                // The product was removed by a registry reload since the claim; it has no zone to go to.
+                unrouted.put(tag, product);
+                return;
+            }
+            byOwner.computeIfAbsent(target.owner(location.getBoard().serialNumber), owner -> new HashMap<>()).put(tag, product);
+        });
+        service.abortHandOver(unrouted);
+
+        // 2. Per owner: adopt there, then remove here
+        boolean[] complete = {true};
+        byOwner.forEach((owner, associations) -> {
+            String reply;
+            try {
+                StringBuilder request = new StringBuilder("ADOPT\t").append(associations.size());
+                associations.forEach((tag, product) -> request.append('\n').append(tag).append('\t').append(product));
+                reply = peer(owner).request(request.toString());
+            } catch (IOException e) {
+                reply = "ERROR\t" + e.getMessage();
+            }
+            if (!OK.equals(reply)) {
+                complete[0] = false;
+                service.abortHandOver(associations);
+                EventLog.error("Handing {} associations to node {} failed, keeping them until the next sweep: {}",
+                        associations.size(), owner, reply);
+                return;
+            }
+            try {
+                service.completeHandOver(associations);
+                EventLog.info("Handed {} associations over to node {}.", associations.size(), owner);
+            } catch (IOException e) {
+                complete[0] = false;
+                EventLog.error("Node {} adopted {} associations, but removing them here failed: {}", owner, associations.size(), e.getMessage());
+            }
+        });
+
+        // 3. The boards' relays are driven by their owners from now on
+        if (complete[0]) {
+            service.releaseBoards(leaving);
+        }
+    }
+
+    // --- Server side ---
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connectionThreads.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (running) {
+                    EventLog.error("Accepting a cluster connection failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String request;
+            while ((request = in.readLine()) != null) {
+                String reply;
+                try {
+                    reply = handle(request, in);
+                } catch (RuntimeException e) {
+                    reply = "ERROR\t" + e.getMessage();
+                }
+                out.write(reply);
+                out.write('\n');
+                out.flush();
+            }
+        } catch (SocketException e) {
+            // Peer closed the connection.
+        } catch (IOException e) {
+            if (running) {
+                EventLog.warn("Cluster connection failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private String handle(String request, BufferedReader in) throws IOException {
+        String[] fields = request.split("\t", 3);
+        switch (fields[0]) {
+            case "SCAN_HELD":
+                return service.productOf(fields[2]) == null ? "NONE" : handleScan(fields[1], fields[2]);
+            case "SCAN":
+                return handleScan(fields[1], fields[2]);
+            case "LOOKUP": {
+                String product = service.productOf(fields[1]);
+                return product == null ? "NONE" : "FOUND\t" + product;
+            }
+            case "RELEASE":
+                return service.releaseSession(fields[1]) ? OK : "BUSY";
+            case "JOIN": {
+                String reply;
+                synchronized (this) {
+                    members.put(fields[1], fields[2]);
+                    reply = membersLine();
+                }
+                // Tell the others, then hand over what the new node owns.
+                connectionThreads.execute(() -> {
+                    for (String member : members.keySet()) {
+                        if (!member.equals(nodeId) && !member.equals(fields[1])) {
+                            try {
+                                peer(member).request(reply);
+                            } catch (IOException e) {
+                                EventLog.warn("Could not tell node {} about {}: {}", member, fields[1], e.getMessage());
+                            }
+                        }
+                    }
+                    rebalance(new HashRing(members.keySet()));
+                });
+                return reply;
+            }
+            case "MEMBERS":
+                applyMembers(request);
+                return OK;
+            case "LEAVE":
+                removeMember(fields[1]);
+                return OK;
+            case "ADOPT": {
+                int count = Integer.parseInt(fields[1]);
+                Map<String, String> associations = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    String[] association = in.readLine().split("\t", 2);
+                    associations.put(association[0], association[1]);
+                }
+                try {
+                    service.adoptAssociations(associations);
+                } catch (IOException e) {
+                    // The sender keeps all of them and retries; adopting again is harmless.
+                    EventLog.error("Adopting {} associations failed: {}", count, e.getMessage());
+                    return "ERROR\tAdopting failed: " + e.getMessage();
+                }
+                return OK;
+            }
+            default:
+                return "ERROR\tUnknown request " + fields[0];
+        }
+    }
+
+    private String handleScan(String scannerId, String line) {
+        service.handleInput(scannerId, line);
+        ScannerSession session = service.getSession(scannerId);
+        boolean awaitingTag = session != null && session.isAwaitingTag();
+        boolean exporting = session != null && session.hasPendingExport();
+        return OK + "\t" + (awaitingTag ? 1 : 0) + "\t" + (exporting ? 1 : 0);
+    }
+
+    // --- Client side ---
+
+    private Peer peer(String node) throws IOException {
+        String address = members.get(node);
+        if (address == null) {
+            throw new IOException("Unknown node " + node);
+        }
+        Peer peer = peers.get(node);
+        if (peer == null || !peer.address.equals(address)) {
+            peer = peers.compute(node, (id, current) -> current != null && current.address.equals(address) ? current : new Peer(address));
+        }
+        return peer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        sweeper.shutdownNow();
+        server.close();
+        peers.values().forEach(Peer::close);
+        connectionThreads.shutdownNow();
+    }
+
+    /**
+     * Where a station's session lives, as seen from the node its scans arrive at.
+     */
+    private static final class Route {
+        String node;
+        boolean awaitingTag;
+        boolean exporting;
+    }
+
+    /**
+     * Idle connections to one node; a request takes one (or opens a new one) and puts it back.
+     */
+    private static final class Peer {
+        final String address;
+        final BlockingQueue<Connection> idle = new ArrayBlockingQueue<>(CONNECTIONS_PER_PEER);
+
+        Peer(String address) {
+            this.address = address;
+        }
+
+        String request(String request) throws IOException {
+            Connection connection = idle.poll();
+            if (connection == null) {
+                int colon = address.lastIndexOf(':');
+                connection = new Connection(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+            }
+            String reply;
+            try {
+                reply = connection.request(request);
+            } catch (IOException e) {
+                connection.close();
+                throw e;
+            }
+            if (!idle.offer(connection)) {
+                connection.close();
+            }
+            return reply;
+        }
+
+        void close() {
+            Connection connection;
+            while ((connection = idle.poll()) != null) {
+                connection.close();
+            }
+        }
+    }
+
+    private static final class Connection implements Closeable {
+        final Socket socket;
+        final BufferedReader in;
+        final BufferedWriter out;
+
+        Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address, CONNECT_TIMEOUT_MS);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        String request(String request) throws IOException {
+            out.write(request);
+            out.write('\n');
+            out.flush();
+            String reply = in.readLine();
+            if (reply == null) {
+                throw new IOException("Connection closed by " + socket.getRemoteSocketAddress());
+            }
+            return reply;
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed.
+            }
+        }
+    }
+}
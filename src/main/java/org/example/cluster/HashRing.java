@@ -0,0 +1,113 @@
+package org.example.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring mapping zones (board serial numbers) to node IDs.
+ *
+ * Every node gets {@code virtualNodes} points on a 64-bit ring; a zone belongs to the node of the
+ * first point at or after the zone's hash, wrapping around. When a node joins or leaves, only
+ * the zones between its points and their predecessors change owner (about 1/n of them).
+ * Instances are immutable; {@link #with(String)} and {@link #without(String)} return new rings.
+ */
+public final class HashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int virtualNodes;
+    private final Set<String> nodes;
+    // Sorted ring points and the node owning each.
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(Collection<String> nodes) {
+        this(nodes, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+        int size = this.nodes.size() * virtualNodes;
+        long[][] entries = new long[size][];
+        String[] names = this.nodes.toArray(new String[0]);
+        int i = 0;
+        for (int n = 0; n < names.length; n++) {
+            long base = hash(names[n]);
+            for (int v = 0; v < virtualNodes; v++) {
+                entries[i++] = new long[]{mix(base + v * 0x9E3779B97F4A7C15L), n};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+        this.points = new long[size];
+        this.owners = new String[size];
+        for (int p = 0; p < size; p++) {
+            points[p] = entries[p][0];
+            owners[p] = names[(int) entries[p][1]];
+        }
+    }
+
+    /**
+     * @return The node owning a zone, or null if the ring is empty.
+     */
+    public String owner(int zone) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, mix(zone));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public Set<String> nodes() {
+        return nodes;
+    }
+
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    public HashRing with(String node) {
+        if (nodes.contains(node)) {
+            return this;
+        }
+        Set<String> grown = new TreeSet<>(nodes);
+        grown.add(node);
+        return new HashRing(grown, virtualNodes);
+    }
+
+    public HashRing without(String node) {
+        if (!nodes.contains(node)) {
+            return this;
+        }
+        Set<String> shrunk = new TreeSet<>(nodes);
+        shrunk.remove(node);
+        return new HashRing(shrunk, virtualNodes);
+    }
+
+    private static long hash(String node) {
+        // 64-bit FNV-1a, so node IDs differing in one character land far apart after mixing.
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : node.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long x) {
+        // Finalizer of MurmurHash3: spreads consecutive serial numbers over the ring.
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB9FE1A85EC53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
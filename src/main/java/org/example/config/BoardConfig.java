@@ -1,13 +1,65 @@
 package org.example.config;
 
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class BoardConfig {
+    // How long a failed DNS lookup is reused before the resolver is asked again.
+    private static final long RESOLVE_RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    // One sequence counter per controller serial number, shared by every BoardConfig of that board.
+    private static final ConcurrentHashMap<Integer, AtomicLong> SEQUENCES = new ConcurrentHashMap<>();
+
     public String ip;
     public int port;
     public int serialNumber;
 
+    // True to try multi-relay 0x40 frames (relay bitmap at bytes 12-16) on this board. The bitmap is an
+    // unconfirmed extension, so it is off by default; see RelayCoalescer for how replies are checked.
+    public boolean multiRelayFrames;
+
+    // Resolved once and reused for every send; re-resolved if ip/port are changed, or after
+    // RESOLVE_RETRY_NANOS if the lookup failed.
+    private volatile InetSocketAddress socketAddress;
+    private volatile long resolvedNanos;
+    private final AtomicLong sequence;
+
     public BoardConfig(String ip, int port, int serialNumber) {
         this.ip = ip;
         this.port = port;
         this.serialNumber = serialNumber;
+        this.sequence = SEQUENCES.computeIfAbsent(serialNumber, sn -> new AtomicLong());
+    }
+
+    /**
+     * Returns the next command sequence ID for this board.
+     * The controller drops a command whose sequence ID it has already seen, so the
+     * counter is shared by all threads (and all BoardConfig instances) targeting the board.
+     *
+     * @return A sequence ID not handed out before for this board.
+     */
+    public long nextSequenceId() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Returns the resolved UDP endpoint of this board.
+     * The DNS lookup only happens on first use (or after ip/port were changed),
+     * so the send path does not hit the resolver for every packet. A failed lookup is
+     * retried every few seconds, so a board whose name resolves later is reached then.
+     *
+     * @return The cached socket address of the board; unresolved if the last lookup failed.
+     */
+    public InetSocketAddress socketAddress() {
+        InetSocketAddress cached = socketAddress;
+        if (cached == null || cached.getPort() != port || !ip.equals(cached.getHostString())
+                || (cached.isUnresolved() && System.nanoTime() - resolvedNanos >= RESOLVE_RETRY_NANOS)) {
+            cached = new InetSocketAddress(ip, port);
+            resolvedNanos = System.nanoTime();
+            socketAddress = cached;
+        }
+        return cached;
     }
 }
@@ -0,0 +1,346 @@
+package org.example.emulator;
+
+import org.example.logging.EventLog;
+import org.example.protocol.PacketBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Emulates many access-controller boards on 127.0.0.1 UDP ports, so the application can be tested
+ * end to end without hardware.
+ *
+ * The boards share a few sockets (each socket serves the boards whose serial numbers were assigned
+ * to it) and one receive thread. Every 64-byte 0x17 frame is checked like the firmware does:
+ * <ul>
+ *   <li>a frame for a serial number the socket does not serve is ignored;</li>
+ *   <li>a sequence ID that was already accepted is never applied again; it is dropped silently
+ *       unless {@link EmulatorSettings#ackDuplicates} is set (the firmware's behaviour is not
+ *       documented); one too far behind the highest accepted ID is rejected;</li>
+ *   <li>only function 0x40 with door 1 and floor 1-80 (or a relay bitmap, if enabled) is accepted.</li>
+ * </ul>
+ * An accepted command switches the board's relays (1-40 on, 41-80 off) and is answered with the
+ * frame echoed back with byte 8 = 1; anything else with byte 8 = 0. Loss, latency, rejections
+ * and a limited ingress rate are simulated according to the {@link EmulatorSettings}.
+ *
+ * Usage: {@code java -cp Test_UDP.jar org.example.emulator.ControllerEmulator [boards] [firstSerial] [layoutFile] [sockets]}
+ * writes a board registry for the emulated boards (40 products each) and runs until killed.
+ */
+public class ControllerEmulator implements Closeable {
+
+    /**
+     * Notified on the receive thread of every relay switched by a newly accepted command.
+     */
+    public interface CommandListener {
+        void onCommand(EmulatedBoard board, int relayNumber, boolean on, long receivedNanos);
+    }
+
+    private static final int FUNCTION_REMOTE_CONTROL = 0x40;
+    private static final long STATS_INTERVAL_SECONDS = 10;
+
+    private final EmulatorSettings settings;
+    private final Selector selector;
+    private final List<DatagramChannel> channels = new ArrayList<>();
+    // Serial number -> board, per socket.
+    private final List<Map<Integer, EmulatedBoard>> boardsByChannel = new ArrayList<>();
+    private final Map<Integer, EmulatedBoard> boards = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService replyScheduler;
+    private final Thread receiver;
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder unknownSerial = new LongAdder();
+    private volatile CommandListener listener;
+    private volatile boolean running = true;
+    private int nextChannel;
+
+    /**
+     * Binds the sockets and starts receiving.
+     *
+     * @param settings    The simulated network and firmware behaviour.
+     * @param socketCount The number of UDP ports the boards are spread over.
+     */
+    public ControllerEmulator(EmulatorSettings settings, int socketCount) throws IOException {
+        this.settings = settings;
+        this.selector = Selector.open();
+        for (int i = 0; i < socketCount; i++) {
+            DatagramChannel channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress("127.0.0.1", 0));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, i);
+            channels.add(channel);
+            boardsByChannel.add(new ConcurrentHashMap<>());
+        }
+        this.replyScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "emulator-replies");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.receiver = new Thread(this::receiveLoop, "emulator-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Adds a board on the next socket (round robin).
+     *
+     * @return The new board; see {@link EmulatedBoard#toBoardConfig(boolean)}.
+     */
+    public synchronized EmulatedBoard addBoard(int serialNumber) throws IOException {
+        if (boards.containsKey(serialNumber)) {
+            throw new IllegalArgumentException("Board SN " + serialNumber + " is already emulated");
+        }
+        int index = nextChannel++ % channels.size();
+        int port = ((InetSocketAddress) channels.get(index).getLocalAddress()).getPort();
+        EmulatedBoard board = new EmulatedBoard(serialNumber, port);
+        boardsByChannel.get(index).put(serialNumber, board);
+        boards.put(serialNumber, board);
+        return board;
+    }
+
+    public EmulatedBoard board(int serialNumber) {
+        return boards.get(serialNumber);
+    }
+
+    public Collection<EmulatedBoard> boards() {
+        return Collections.unmodifiableCollection(boards.values());
+    }
+
+    public void setCommandListener(CommandListener listener) {
+        this.listener = listener;
+    }
+
+    /** Datagrams that were not 64-byte 0x17 frames. */
+    public long malformed() {
+        return malformed.sum();
+    }
+
+    /** Frames for a serial number the receiving socket does not serve. */
+    public long unknownSerial() {
+        return unknownSerial.sum();
+    }
+
+    private void receiveLoop() {
+        ByteBuffer frame = ByteBuffer.allocate(1024);
+        while (running) {
+            try {
+                selector.select(100);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    DatagramChannel channel = (DatagramChannel) key.channel();
+                    Map<Integer, EmulatedBoard> served = boardsByChannel.get((Integer) key.attachment());
+                    SocketAddress sender;
+                    while (true) {
+                        frame.clear();
+                        sender = channel.receive(frame);
+                        if (sender == null) {
+                            break;
+                        }
+                        frame.flip();
+                        handle(channel, served, frame, sender);
+                    }
+                }
+                selector.selectedKeys().clear();
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    EventLog.error("Controller emulator receive failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handle(DatagramChannel channel, Map<Integer, EmulatedBoard> served, ByteBuffer frame, SocketAddress sender) {
+        long receivedNanos = System.nanoTime();
+        if (frame.remaining() != PacketBuilder.PACKET_SIZE || frame.get(0) != 0x17) {
+            malformed.increment();
+            return;
+        }
+        EmulatedBoard board = served.get(getIntLE(frame, 4));
+        if (board == null) {
+            unknownSerial.increment();
+            return;
+        }
+        board.received.increment();
+        if (settings.ingressRate > 0 && !board.admit(receivedNanos, settings.ingressRate, settings.ingressBurst)) {
+            board.overruns.increment();
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < settings.commandLossRate) {
+            board.dropped.increment();
+            return;
+        }
+
+        // 1. Sequence ID: a repeated one is not applied again
+        long sequenceId = PacketBuilder.readSequenceId(frame, 0);
+        EmulatedBoard.SequenceCheck check = board.checkSequence(sequenceId);
+        if (check == EmulatedBoard.SequenceCheck.DUPLICATE) {
+            board.duplicates.increment();
+            if (settings.ackDuplicates) {
+                reply(channel, board, frame, sender, true);
+            }
+            return;
+        }
+
+        // 2. Validate and apply
+        boolean valid = check == EmulatedBoard.SequenceCheck.NEW
+                && (frame.get(1) & 0xFF) == FUNCTION_REMOTE_CONTROL
+                && frame.get(8) == 1
+                && random.nextDouble() >= settings.rejectRate;
+        long switched = valid ? board.apply(frame, settings.multiRelayFrames) : 0;
+        if (switched == 0) {
+            board.rejected.increment();
+            reply(channel, board, frame, sender, false);
+            return;
+        }
+        board.markSeen(sequenceId);
+        board.accepted.increment();
+        notifyListener(board, switched, receivedNanos);
+        reply(channel, board, frame, sender, true);
+    }
+
+    private void notifyListener(EmulatedBoard board, long switched, long receivedNanos) {
+        CommandListener current = listener;
+        if (current == null) {
+            return;
+        }
+        boolean on = switched > 0;
+        long relays = on ? switched : ~switched;
+        while (relays != 0) {
+            int relay = Long.numberOfTrailingZeros(relays) + 1;
+            relays &= relays - 1;
+            current.onCommand(board, relay, on, receivedNanos);
+        }
+    }
+
+    private void reply(DatagramChannel channel, EmulatedBoard board, ByteBuffer frame, SocketAddress sender, boolean accepted) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < settings.replyLossRate) {
+            board.repliesLost.increment();
+            return;
+        }
+        byte[] copy = new byte[PacketBuilder.PACKET_SIZE];
+        frame.get(0, copy);
+        copy[8] = (byte) (accepted ? 1 : 0);
+        if (!settings.multiRelayFrames) {
+            // A board without the bitmap extension does not echo bytes it does not know.
+            Arrays.fill(copy, PacketBuilder.RELAY_MASK_OFFSET, PacketBuilder.RELAY_MASK_OFFSET + 5, (byte) 0);
+        }
+        long delayMillis = settings.latencyMillis + (settings.jitterMillis > 0 ? random.nextLong(settings.jitterMillis + 1) : 0);
+        if (delayMillis == 0) {
+            send(channel, copy, sender);
+        } else {
+            replyScheduler.schedule(() -> send(channel, copy, sender), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void send(DatagramChannel channel, byte[] reply, SocketAddress target) {
+        try {
+            channel.send(ByteBuffer.wrap(reply), target);
+        } catch (IOException e) {
+            if (running) {
+                EventLog.error("Controller emulator reply failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static int getIntLE(ByteBuffer src, int index) {
+        return (src.get(index) & 0xFF)
+                | (src.get(index + 1) & 0xFF) << 8
+                | (src.get(index + 2) & 0xFF) << 16
+                | (src.get(index + 3) & 0xFF) << 24;
+    }
+
+    /**
+     * Writes a board registry (see {@link org.example.service.BoardRegistry}) for the emulated
+     * boards: board {@code e<i>} per board and products {@code E<i>-<relay>} on relays 1-40.
+     */
+    public void writeLayout(Path file) throws IOException {
+        StringBuilder layout = new StringBuilder("# Emulated boards\n");
+        List<EmulatedBoard> sorted = new ArrayList<>(boards.values());
+        sorted.sort((a, b) -> Integer.compare(a.getSerialNumber(), b.getSerialNumber()));
+        for (int i = 0; i < sorted.size(); i++) {
+            EmulatedBoard board = sorted.get(i);
+            layout.append("board.e").append(i).append(".serial=").append(board.getSerialNumber()).append('\n');
+            layout.append("board.e").append(i).append(".ip=127.0.0.1\n");
+            layout.append("board.e").append(i).append(".port=").append(board.getPort()).append('\n');
+            if (settings.multiRelayFrames) {
+                layout.append("board.e").append(i).append(".multiRelay=true\n");
+            }
+            for (int relay = 1; relay <= PacketBuilder.MAX_MASK_RELAY; relay++) {
+                layout.append("product.E").append(i).append('-').append(relay).append("=e").append(i).append(':').append(relay).append('\n');
+            }
+        }
+        Files.writeString(file, layout, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Prints the totals over all boards.
+     */
+    public void printStats(PrintStream out) {
+        long received = 0, overruns = 0, dropped = 0, accepted = 0, rejected = 0, duplicates = 0, repliesLost = 0;
+        for (EmulatedBoard board : boards.values()) {
+            received += board.received();
+            overruns += board.overruns();
+            dropped += board.dropped();
+            accepted += board.accepted();
+            rejected += board.rejected();
+            duplicates += board.duplicates();
+            repliesLost += board.repliesLost();
+        }
+        out.printf("%d boards: %d frames received, %d overruns, %d lost, %d accepted, %d rejected, %d duplicates, %d replies lost, %d malformed, %d unknown serial%n",
+                boards.size(), received, overruns, dropped, accepted, rejected, duplicates, repliesLost, malformed(), unknownSerial());
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        replyScheduler.shutdownNow();
+        selector.close();
+        for (DatagramChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int boardCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int firstSerial = args.length > 1 ? Integer.parseInt(args[1]) : 300_000_000;
+        Path layoutFile = Path.of(args.length > 2 ? args[2] : "emulated-boards.properties");
+        int sockets = args.length > 3 ? Integer.parseInt(args[3]) : Math.min(boardCount, 64);
+
+        EmulatorSettings settings = EmulatorSettings.fromSystemProperties();
+        ControllerEmulator emulator = new ControllerEmulator(settings, sockets);
+        for (int i = 0; i < boardCount; i++) {
+            emulator.addBoard(firstSerial + i);
+        }
+        emulator.writeLayout(layoutFile);
+        System.out.println("Emulating " + boardCount + " boards on " + sockets + " ports (" + settings + ").");
+        System.out.println("Board registry written to " + layoutFile.toAbsolutePath() + "; start the application with it.");
+        while (true) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(STATS_INTERVAL_SECONDS));
+            emulator.printStats(System.out);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.example.emulator;
+
+import org.example.config.BoardConfig;
+import org.example.protocol.PacketBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One virtual access-controller board of a {@link ControllerEmulator}: its serial number, the
+ * state of relays 1-40 and the sequence IDs it has accepted. Frames are only handled on the
+ * emulator's receive thread; the state and counters can be read from any thread.
+ */
+public class EmulatedBoard {
+
+    // Sequence IDs up to this far below the highest accepted one are remembered as seen.
+    private static final int SEQUENCE_WINDOW = 64;
+
+    enum SequenceCheck {NEW, DUPLICATE, STALE}
+
+    private final int serialNumber;
+    private final int port;
+
+    // Bit n - 1 set while relay n is on.
+    private volatile long relayState;
+    // Only touched by the receive thread.
+    private long highestSequence;
+    private long seenWindow; // Bit i: highestSequence - i was accepted.
+    private double ingressTokens = Double.NaN; // NaN until the first frame fills the bucket
+    private long ingressRefilledNanos;
+
+    final LongAdder received = new LongAdder();
+    final LongAdder dropped = new LongAdder();
+    final LongAdder overruns = new LongAdder();
+    final LongAdder accepted = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder duplicates = new LongAdder();
+    final LongAdder repliesLost = new LongAdder();
+
+    EmulatedBoard(int serialNumber, int port) {
+        this.serialNumber = serialNumber;
+        this.port = port;
+    }
+
+    /**
+     * @return A configuration that sends to this board.
+     */
+    public BoardConfig toBoardConfig(boolean multiRelayFrames) {
+        BoardConfig board = new BoardConfig("127.0.0.1", port, serialNumber);
+        board.multiRelayFrames = multiRelayFrames;
+        return board;
+    }
+
+    public int getSerialNumber() {
+        return serialNumber;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @param relayNumber 1-40.
+     */
+    public boolean isRelayOn(int relayNumber) {
+        return (relayState & (1L << (relayNumber - 1))) != 0;
+    }
+
+    /**
+     * @return Bit {@code n - 1} set for every relay {@code n} that is on.
+     */
+    public long relayState() {
+        return relayState;
+    }
+
+    /** Datagrams addressed to this board, including the ones lost on the way. */
+    public long received() {
+        return received.sum();
+    }
+
+    /** Commands lost on the way (see {@link EmulatorSettings#commandLossRate}). */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /** Frames dropped because they arrived faster than {@link EmulatorSettings#ingressRate}. */
+    public long overruns() {
+        return overruns.sum();
+    }
+
+    /** Commands applied. */
+    public long accepted() {
+        return accepted.sum();
+    }
+
+    /** Commands answered with byte 8 = 0: invalid, stale sequence ID, or a simulated rejection. */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /** Retransmissions of commands that were already applied. */
+    public long duplicates() {
+        return duplicates.sum();
+    }
+
+    /** Replies lost on the way back (see {@link EmulatorSettings#replyLossRate}). */
+    public long repliesLost() {
+        return repliesLost.sum();
+    }
+
+    /**
+     * Takes an ingress token for a frame.
+     *
+     * @return False if the board's ingress is overrun and the frame must be dropped.
+     */
+    boolean admit(long nowNanos, double rate, int burst) {
+        if (Double.isNaN(ingressTokens)) {
+            ingressTokens = burst;
+        } else {
+            ingressTokens = Math.min(burst, ingressTokens + (nowNanos - ingressRefilledNanos) * rate / 1e9);
+        }
+        ingressRefilledNanos = nowNanos;
+        if (ingressTokens < 1) {
+            return false;
+        }
+        ingressTokens--;
+        return true;
+    }
+
+    SequenceCheck checkSequence(long sequenceId) {
+        if (sequenceId > highestSequence) {
+            return SequenceCheck.NEW;
+        }
+        long distance = highestSequence - sequenceId;
+        if (distance >= SEQUENCE_WINDOW) {
+            return SequenceCheck.STALE;
+        }
+        return (seenWindow & (1L << distance)) != 0 ? SequenceCheck.DUPLICATE : SequenceCheck.NEW;
+    }
+
+    void markSeen(long sequenceId) {
+        if (sequenceId > highestSequence) {
+            long shift = sequenceId - highestSequence;
+            seenWindow = shift >= SEQUENCE_WINDOW ? 0 : seenWindow << shift;
+            highestSequence = sequenceId;
+            seenWindow |= 1;
+        } else {
+            seenWindow |= 1L << (highestSequence - sequenceId);
+        }
+    }
+
+    /**
+     * Applies a 0x40 frame to the relays.
+     *
+     * @return The relays switched on (bit n - 1 for relay n), or the bitwise complement of the
+     *         relay switched off (a negative value); 0 if the floor number is invalid.
+     */
+    long apply(ByteBuffer frame, boolean multiRelayFrames) {
+        long mask = 0;
+        if (multiRelayFrames) {
+            for (int i = 0; i < 5; i++) {
+                mask |= (frame.get(PacketBuilder.RELAY_MASK_OFFSET + i) & 0xFFL) << (8 * i);
+            }
+        }
+        int floor = frame.get(9) & 0xFF;
+        if (mask != 0) {
+            relayState |= mask;
+            return mask;
+        }
+        if (floor >= 1 && floor <= PacketBuilder.MAX_MASK_RELAY) {
+            long bit = 1L << (floor - 1);
+            relayState |= bit;
+            return bit;
+        }
+        if (floor > PacketBuilder.NC_FLOOR_OFFSET && floor <= PacketBuilder.NC_FLOOR_OFFSET + PacketBuilder.MAX_MASK_RELAY) {
+            long bit = 1L << (floor - PacketBuilder.NC_FLOOR_OFFSET - 1);
+            relayState &= ~bit;
+            return ~bit;
+        }
+        return 0;
+    }
+}
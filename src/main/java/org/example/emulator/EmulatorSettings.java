@@ -0,0 +1,63 @@
+package org.example.emulator;
+
+/**
+ * Network and firmware behaviour of the boards of a {@link ControllerEmulator}.
+ * Set the fields before the emulator is created; they are read by its threads without locking.
+ */
+public class EmulatorSettings {
+
+    // Probability that a command datagram is lost on its way to the board.
+    public double commandLossRate;
+
+    // Probability that the board's reply is lost on its way back.
+    public double replyLossRate;
+
+    // Probability that a valid command is rejected (reply byte 8 = 0), e.g. a busy controller.
+    public double rejectRate;
+
+    // Reply delay: uniformly distributed between latencyMillis and latencyMillis + jitterMillis.
+    public long latencyMillis;
+    public long jitterMillis;
+
+    // Frames per second each board can take in, with bursts of up to ingressBurst frames;
+    // frames beyond that are dropped as overruns. 0 means unlimited.
+    public double ingressRate;
+    public int ingressBurst = 16;
+
+    // True if the boards read the relay bitmap of multi-relay 0x40 frames (bytes 12-16) and echo it
+    // in the reply. Otherwise they only switch the relay in byte 9 and reply with bytes 12-16 zeroed;
+    // how real firmware replies is not known yet.
+    public boolean multiRelayFrames;
+
+    // What the firmware does with a sequence ID it already accepted is not documented. By default
+    // the frame is dropped silently (the conservative case, so a client that resends the same ID
+    // after a lost reply times out); true acknowledges it again without re-applying it.
+    public boolean ackDuplicates;
+
+    /**
+     * Reads the settings from system properties: {@code emulator.loss}, {@code emulator.replyLoss},
+     * {@code emulator.rejectRate}, {@code emulator.latencyMs}, {@code emulator.jitterMs},
+     * {@code emulator.ingressRate}, {@code emulator.ingressBurst}, {@code emulator.multiRelay} and {@code emulator.ackDuplicates}.
+     */
+    public static EmulatorSettings fromSystemProperties() {
+        EmulatorSettings settings = new EmulatorSettings();
+        settings.commandLossRate = Double.parseDouble(System.getProperty("emulator.loss", "0"));
+        settings.replyLossRate = Double.parseDouble(System.getProperty("emulator.replyLoss", "0"));
+        settings.rejectRate = Double.parseDouble(System.getProperty("emulator.rejectRate", "0"));
+        settings.latencyMillis = Long.getLong("emulator.latencyMs", 0);
+        settings.jitterMillis = Long.getLong("emulator.jitterMs", 0);
+        settings.ingressRate = Double.parseDouble(System.getProperty("emulator.ingressRate", "0"));
+        settings.ingressBurst = Integer.getInteger("emulator.ingressBurst", 16);
+        settings.multiRelayFrames = Boolean.parseBoolean(System.getProperty("emulator.multiRelay", "false"));
+        settings.ackDuplicates = Boolean.parseBoolean(System.getProperty("emulator.ackDuplicates", "false"));
+        return settings;
+    }
+
+    @Override
+    public String toString() {
+        return "loss " + commandLossRate + ", reply loss " + replyLossRate + ", reject " + rejectRate
+                + ", latency " + latencyMillis + "+" + jitterMillis + " ms, ingress " + (ingressRate > 0 ? ingressRate + "/s burst " + ingressBurst : "unlimited")
+                + ", multi-relay " + multiRelayFrames
+                + ", ack duplicates " + ackDuplicates;
+    }
+}
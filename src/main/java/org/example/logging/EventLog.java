@@ -0,0 +1,377 @@
+package org.example.logging;
+
+import org.example.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous event log. Callers only copy a message template and its arguments into a
+ * preallocated slot of a bounded ring buffer; a background thread formats the events
+ * ({@code {}} placeholders are replaced by the arguments in order) and writes them in batches.
+ *
+ * <ul>
+ *   <li>{@link Level#INFO}: diagnostics; written to the log file only.</li>
+ *   <li>{@link Level#PROMPT}: operator messages; printed on the console and written to the file.</li>
+ *   <li>{@link Level#WARN}, {@link Level#ERROR}: printed on the console with a [WARN]/[ERROR] prefix
+ *       and written to the file.</li>
+ * </ul>
+ * When the ring is full, INFO events are dropped or wait for room according to the
+ * {@link OverflowPolicy}; operator-visible events always wait. Until {@link #openFile} is called
+ * there is no log file and INFO events are discarded.
+ * Arguments are formatted later on the writer thread, so they must not be mutated after the call.
+ */
+public final class EventLog {
+
+    public enum Level {INFO, PROMPT, WARN, ERROR}
+
+    public enum OverflowPolicy {
+        /** Drop the event and count it in {@link Metrics#LOG_EVENTS_DROPPED}. */
+        DROP,
+        /** Wait until the writer has made room. */
+        BLOCK
+    }
+
+    private static final int CAPACITY = 8192; // Must be a power of two.
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+    private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final Slot[] SLOTS = new Slot[CAPACITY];
+    private static final AtomicLong TAIL = new AtomicLong();
+    private static volatile long consumed; // Number of events the writer has finished with.
+    private static volatile boolean writerSleeping;
+    private static volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+    private static volatile RollingLogFile file; // Replaced under the class lock; only the writer writes and closes files.
+    private static final Thread WRITER;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            SLOTS[i] = new Slot(i);
+        }
+        WRITER = new Thread(EventLog::writeLoop, "event-log-writer");
+        WRITER.setDaemon(true);
+        WRITER.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(EventLog::flush, "event-log-flush"));
+    }
+
+    private EventLog() {
+    }
+
+    /**
+     * Starts writing all events to a rolling log file.
+     *
+     * @param path      The log file; missing directories are created.
+     * @param maxBytes  The size at which the file is rolled over.
+     * @param keepFiles How many rolled-over files to keep.
+     */
+    public static synchronized void openFile(Path path, long maxBytes, int keepFiles) throws IOException {
+        file = new RollingLogFile(path, maxBytes, keepFiles);
+        LockSupport.unpark(WRITER);
+    }
+
+    public static void setOverflowPolicy(OverflowPolicy policy) {
+        overflowPolicy = policy;
+    }
+
+    public static void info(String message) {
+        publish(Level.INFO, message, null, null, null, 0);
+    }
+
+    public static void info(String template, Object arg0) {
+        publish(Level.INFO, template, arg0, null, null, 1);
+    }
+
+    public static void info(String template, Object arg0, Object arg1) {
+        publish(Level.INFO, template, arg0, arg1, null, 2);
+    }
+
+    public static void info(String template, Object arg0, Object arg1, Object arg2) {
+        publish(Level.INFO, template, arg0, arg1, arg2, 3);
+    }
+
+    public static void prompt(String message) {
+        publish(Level.PROMPT, message, null, null, null, 0);
+    }
+
+    public static void prompt(String template, Object arg0) {
+        publish(Level.PROMPT, template, arg0, null, null, 1);
+    }
+
+    public static void prompt(String template, Object arg0, Object arg1) {
+        publish(Level.PROMPT, template, arg0, arg1, null, 2);
+    }
+
+    public static void prompt(String template, Object arg0, Object arg1, Object arg2) {
+        publish(Level.PROMPT, template, arg0, arg1, arg2, 3);
+    }
+
+    public static void warn(String message) {
+        publish(Level.WARN, message, null, null, null, 0);
+    }
+
+    public static void warn(String template, Object arg0) {
+        publish(Level.WARN, template, arg0, null, null, 1);
+    }
+
+    public static void warn(String template, Object arg0, Object arg1) {
+        publish(Level.WARN, template, arg0, arg1, null, 2);
+    }
+
+    public static void warn(String template, Object arg0, Object arg1, Object arg2) {
+        publish(Level.WARN, template, arg0, arg1, arg2, 3);
+    }
+
+    public static void error(String message) {
+        publish(Level.ERROR, message, null, null, null, 0);
+    }
+
+    public static void error(String template, Object arg0) {
+        publish(Level.ERROR, template, arg0, null, null, 1);
+    }
+
+    public static void error(String template, Object arg0, Object arg1) {
+        publish(Level.ERROR, template, arg0, arg1, null, 2);
+    }
+
+    public static void error(String template, Object arg0, Object arg1, Object arg2) {
+        publish(Level.ERROR, template, arg0, arg1, arg2, 3);
+    }
+
+    /**
+     * Waits (up to two seconds) until every event published so far is written out.
+     */
+    public static void flush() {
+        long target = TAIL.get();
+        long deadline = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+        LockSupport.unpark(WRITER);
+        while (consumed < target && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            LockSupport.unpark(WRITER);
+        }
+    }
+
+    private static void publish(Level level, String template, Object arg0, Object arg1, Object arg2, int argCount) {
+        // 1. Claim a slot (bounded multi-producer queue: a slot is free when its sequence equals the claim)
+        long position = TAIL.get();
+        Slot slot;
+        while (true) {
+            slot = SLOTS[(int) position & MASK];
+            long difference = slot.sequence - position;
+            if (difference == 0) {
+                if (TAIL.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = TAIL.get();
+            } else if (difference < 0) {
+                // The ring is full.
+                if (level == Level.INFO && overflowPolicy == OverflowPolicy.DROP) {
+                    Metrics.LOG_EVENTS_DROPPED.increment();
+                    return;
+                }
+                LockSupport.unpark(WRITER);
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+                position = TAIL.get();
+            } else {
+                position = TAIL.get();
+            }
+        }
+
+        // 2. Fill it in and publish it to the writer
+        slot.level = level;
+        slot.timeMillis = System.currentTimeMillis();
+        slot.thread = Thread.currentThread().getName();
+        slot.template = template;
+        slot.argCount = argCount;
+        slot.arg0 = arg0;
+        slot.arg1 = arg1;
+        slot.arg2 = arg2;
+        slot.sequence = position + 1;
+        if (writerSleeping) {
+            LockSupport.unpark(WRITER);
+        }
+    }
+
+    private static void writeLoop() {
+        StringBuilder message = new StringBuilder(256);
+        LineEncoder line = new LineEncoder();
+        long next = 0;
+        RollingLogFile current = null;
+        while (true) {
+            RollingLogFile configured = file;
+            if (configured != current) {
+                closeFile(current);
+                current = configured;
+            }
+            Slot slot = SLOTS[(int) next & MASK];
+            if (slot.sequence != next + 1) {
+                // Nothing to write: flush the batch, then sleep until a producer wakes us.
+                flushFile(current);
+                writerSleeping = true;
+                if (slot.sequence != next + 1) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                writerSleeping = false;
+                continue;
+            }
+
+            message.setLength(0);
+            format(message, slot);
+            Level level = slot.level;
+            long timeMillis = slot.timeMillis;
+            String thread = slot.thread;
+            slot.template = null;
+            slot.arg0 = null;
+            slot.arg1 = null;
+            slot.arg2 = null;
+            slot.sequence = next + CAPACITY; // Free for the producer one lap ahead.
+            next++;
+
+            writeConsole(level, message);
+            writeFile(current, line, level, timeMillis, thread, message);
+            consumed = next;
+        }
+    }
+
+    private static void format(StringBuilder out, Slot slot) {
+        String template = slot.template;
+        int argIndex = 0;
+        int start = 0;
+        int placeholder;
+        while (argIndex < slot.argCount && (placeholder = template.indexOf("{}", start)) >= 0) {
+            out.append(template, start, placeholder);
+            out.append(argIndex == 0 ? slot.arg0 : argIndex == 1 ? slot.arg1 : slot.arg2);
+            argIndex++;
+            start = placeholder + 2;
+        }
+        out.append(template, start, template.length());
+    }
+
+    private static void writeConsole(Level level, CharSequence message) {
+        switch (level) {
+            case PROMPT:
+                System.out.println(message);
+                break;
+            case WARN:
+                System.out.println("[WARN] " + message);
+                break;
+            case ERROR:
+                System.err.println("[ERROR] " + message);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void writeFile(RollingLogFile target, LineEncoder line, Level level, long timeMillis,
+                                  String thread, CharSequence message) {
+        if (target == null) {
+            return;
+        }
+        StringBuilder text = line.text;
+        text.setLength(0);
+        text.append(line.timestamp(timeMillis)).append(' ').append(level.name());
+        for (int i = level.name().length(); i < 7; i++) {
+            text.append(' ');
+        }
+        text.append('[').append(thread).append("] ").append(message).append('\n');
+        try {
+            ByteBuffer bytes = line.encode();
+            target.write(bytes.array(), 0, bytes.limit());
+        } catch (IOException e) {
+            System.err.println("[ERROR] Writing the event log failed: " + e.getMessage());
+        }
+    }
+
+    private static void flushFile(RollingLogFile target) {
+        if (target == null) {
+            return;
+        }
+        try {
+            target.flush();
+        } catch (IOException e) {
+            System.err.println("[ERROR] Flushing the event log failed: " + e.getMessage());
+        }
+    }
+
+    private static void closeFile(RollingLogFile target) {
+        if (target == null) {
+            return;
+        }
+        try {
+            target.close();
+        } catch (IOException e) {
+            System.err.println("[ERROR] Closing the event log failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The writer's reusable line buffer: the timestamp is formatted once per millisecond and
+     * the line is encoded into a buffer that is kept between lines.
+     */
+    private static final class LineEncoder {
+        final StringBuilder text = new StringBuilder(320);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private ByteBuffer bytes = ByteBuffer.allocate(1024);
+        private long cachedMillis = Long.MIN_VALUE;
+        private String cachedTimestamp;
+
+        String timestamp(long timeMillis) {
+            if (timeMillis != cachedMillis) {
+                cachedMillis = timeMillis;
+                cachedTimestamp = TIMESTAMP.format(Instant.ofEpochMilli(timeMillis));
+            }
+            return cachedTimestamp;
+        }
+
+        ByteBuffer encode() {
+            int needed = (int) (text.length() * encoder.maxBytesPerChar());
+            if (needed > bytes.capacity()) {
+                bytes = ByteBuffer.allocate(needed);
+            }
+            bytes.clear();
+            encoder.reset();
+            encoder.encode(CharBuffer.wrap(text), bytes, true);
+            encoder.flush(bytes);
+            bytes.flip();
+            return bytes;
+        }
+    }
+
+    /**
+     * One ring-buffer entry, reused for every lap of the ring.
+     * {@code sequence} says whose turn it is: {@code n} means free for the producer claiming
+     * position {@code n}, {@code n + 1} means holding the event at position {@code n}.
+     */
+    private static final class Slot {
+        volatile long sequence;
+        Level level;
+        long timeMillis;
+        String thread;
+        String template;
+        int argCount;
+        Object arg0;
+        Object arg1;
+        Object arg2;
+
+        Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+}
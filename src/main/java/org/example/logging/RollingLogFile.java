@@ -0,0 +1,78 @@
+package org.example.logging;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only log file that is rolled over when it reaches a size limit:
+ * {@code name} becomes {@code name.1}, {@code name.1} becomes {@code name.2}, and so on,
+ * keeping a fixed number of old files. Only used by the event log's writer thread.
+ */
+class RollingLogFile implements Closeable {
+
+    private final Path file;
+    private final long maxBytes;
+    private final int keepFiles;
+    private OutputStream out;
+    private long size;
+
+    RollingLogFile(Path file, long maxBytes, int keepFiles) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.keepFiles = keepFiles;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        open();
+    }
+
+    void write(byte[] line, int offset, int length) throws IOException {
+        if (size > 0 && size + length > maxBytes) {
+            roll();
+        }
+        out.write(line, offset, length);
+        size += length;
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    private void open() throws IOException {
+        out = new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        size = Files.size(file);
+    }
+
+    private void roll() throws IOException {
+        out.close();
+        for (int i = keepFiles - 1; i >= 1; i--) {
+            Path older = sibling(i);
+            if (Files.exists(older)) {
+                Files.move(older, sibling(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (keepFiles > 0) {
+            Files.move(file, sibling(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        open();
+    }
+
+    private Path sibling(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
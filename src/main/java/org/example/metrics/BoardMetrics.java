@@ -0,0 +1,33 @@
+package org.example.metrics;
+
+/**
+ * Counters and the acknowledgement latency of one controller board (labelled by serial number).
+ */
+public class BoardMetrics {
+
+    private final int serialNumber;
+
+    public final Counter framesSent = new Counter("board_frames_sent_total", "UDP frames handed to the socket, including retransmissions");
+    public final Counter sendFailures = new Counter("board_send_failures_total", "Frames that could not be handed to the socket");
+    public final Counter retransmits = new Counter("board_retransmits_total", "Frames resent because no reply arrived in time");
+    public final Counter acks = new Counter("board_acks_total", "Commands accepted by the controller");
+    public final Counter rejections = new Counter("board_rejections_total", "Commands rejected by the controller");
+    public final Counter timeouts = new Counter("board_timeouts_total", "Commands given up after the last retransmission");
+    public final Counter queueRejections = new Counter("board_queue_rejections_total", "Commands refused because the board's send queue was full");
+    public final Counter pacingDelays = new Counter("board_pacing_delays_total", "Send queue drains postponed because the board's send rate was used up");
+    public final Counter rateDecreases = new Counter("board_rate_decreases_total", "Times the board's send rate was halved after replies went missing");
+    public final Counter bitmapFallbacks = new Counter("board_bitmap_fallbacks_total", "Multi-relay frames whose reply did not echo the bitmap, so their relays were sent again one by one");
+    public final LatencyHistogram ackLatency = new LatencyHistogram("board_ack_latency_seconds", "Time from the first send of a command to its acknowledgement");
+
+    BoardMetrics(int serialNumber) {
+        this.serialNumber = serialNumber;
+    }
+
+    public int getSerialNumber() {
+        return serialNumber;
+    }
+
+    Counter[] counters() {
+        return new Counter[]{framesSent, sendFailures, retransmits, acks, rejections, timeouts, queueRejections, pacingDelays, rateDecreases, bitmapFallbacks};
+    }
+}
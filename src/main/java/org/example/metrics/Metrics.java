@@ -0,0 +1,208 @@
+package org.example.metrics;
+
+import org.example.config.BoardConfig;
+import org.example.logging.EventLog;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The application's metrics: process-wide counters and latency histograms of the
+ * scan → encode → send path, plus per-board counters.
+ *
+ * Everything is recorded through static fields so the hot path pays for a LongAdder increment
+ * or a histogram bucket increment and nothing else. The values are read through JMX
+ * ({@link #registerMBean()}) or scraped over HTTP ({@link MetricsHttpServer}).
+ */
+public final class Metrics {
+
+    public static final String OBJECT_NAME = "org.example:type=Metrics";
+
+    public static final Counter SCANS = new Counter("scans_total", "Scanner lines handled");
+    public static final Counter IMPORTS = new Counter("imports_total", "RFID tags associated with a product");
+    public static final Counter EXPORTS = new Counter("exports_total", "Exports confirmed");
+    public static final Counter LED_COMMANDS = new Counter("led_commands_total", "LED commands queued for a board");
+    public static final Counter LED_COMMANDS_SUPPRESSED = new Counter("led_commands_suppressed_total", "LED commands not sent because the relay already had the requested state");
+    public static final Counter LED_RECONCILE_SENDS = new Counter("led_reconcile_sends_total", "LED commands re-sent by the relay state reconciliation");
+    public static final Counter LED_COMMAND_FAILURES = new Counter("led_command_failures_total", "LED commands that were rejected, timed out or could not be sent");
+    public static final Counter LOCATES = new Counter("locates_total", "Products located through LedService");
+    public static final Counter LOCATES_NOT_FOUND = new Counter("locates_not_found_total", "Locate requests for unknown QR codes");
+    public static final Counter SCAN_PIPELINE_FULL = new Counter("scan_pipeline_full_total", "Scans whose reader had to wait because the scan pipeline was full");
+    public static final Counter SCANS_FORWARDED = new Counter("scans_forwarded_total", "Scans handed to the cluster node owning their zone");
+    public static final Counter SCANS_SHED = new Counter("scans_shed_total", "Network scans dropped because their scanner's queue or the scanner table was full");
+    public static final Counter LOG_EVENTS_DROPPED = new Counter("log_events_dropped_total", "Diagnostic log events dropped because the event log buffer was full");
+
+    public static final LatencyHistogram SCAN_QUEUEING = new LatencyHistogram("scan_queueing_seconds", "Time a scan waits in the scan pipeline before it is handled");
+    public static final LatencyHistogram SCAN_HANDLING = new LatencyHistogram("scan_handling_seconds", "Time InventoryService spends handling one scanner line");
+    public static final LatencyHistogram SCAN_TO_ENCODE = new LatencyHistogram("scan_to_encode_seconds", "Time from receiving a scan to encoding its LED frame, including queueing");
+    public static final LatencyHistogram ENCODE_TO_SEND = new LatencyHistogram("encode_to_send_seconds", "Time from encoding an LED frame to handing it to the socket");
+    public static final LatencyHistogram SCAN_TO_SEND = new LatencyHistogram("scan_to_send_seconds", "Time from receiving a scan to handing its LED frame to the socket");
+
+    private static final List<Counter> COUNTERS = List.of(
+            SCANS, IMPORTS, EXPORTS, LED_COMMANDS, LED_COMMANDS_SUPPRESSED, LED_RECONCILE_SENDS, LED_COMMAND_FAILURES, LOCATES, LOCATES_NOT_FOUND,
+            SCAN_PIPELINE_FULL, SCANS_FORWARDED, SCANS_SHED, LOG_EVENTS_DROPPED);
+    private static final List<LatencyHistogram> HISTOGRAMS = List.of(
+            SCAN_QUEUEING, SCAN_HANDLING, SCAN_TO_ENCODE, ENCODE_TO_SEND, SCAN_TO_SEND);
+
+    private static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"};
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_KEYS = {"p50", "p90", "p99", "p999"};
+
+    // Looked up by BoardConfig identity first (no boxing); boards reloaded under the same serial share one entry.
+    private static final Map<BoardConfig, BoardMetrics> BY_BOARD = new ConcurrentHashMap<>();
+    private static final Map<Integer, BoardMetrics> BY_SERIAL = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @return The metrics of a board, created on first use.
+     */
+    public static BoardMetrics board(BoardConfig board) {
+        BoardMetrics metrics = BY_BOARD.get(board);
+        if (metrics == null) {
+            metrics = BY_SERIAL.computeIfAbsent(board.serialNumber, BoardMetrics::new);
+            BY_BOARD.putIfAbsent(board, metrics);
+        }
+        return metrics;
+    }
+
+    public static Collection<BoardMetrics> boards() {
+        return Collections.unmodifiableCollection(BY_SERIAL.values());
+    }
+
+    /**
+     * @return Every counter by name, per-board counters as {@code name{board="<serial>"}}.
+     */
+    public static Map<String, Long> counterValues() {
+        Map<String, Long> values = new java.util.TreeMap<>();
+        for (Counter counter : COUNTERS) {
+            values.put(counter.getName(), counter.get());
+        }
+        for (BoardMetrics board : BY_SERIAL.values()) {
+            for (Counter counter : board.counters()) {
+                values.put(counter.getName() + boardLabel(board), counter.get());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return Count, mean, p50/p90/p99/p99.9 and max in microseconds of every histogram,
+     *         keyed {@code <name>_<statistic>}.
+     */
+    public static Map<String, Double> latencyValues() {
+        Map<String, Double> values = new java.util.TreeMap<>();
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            putLatencies(values, histogram, histogram.getName());
+        }
+        for (BoardMetrics board : BY_SERIAL.values()) {
+            putLatencies(values, board.ackLatency, board.ackLatency.getName() + boardLabel(board));
+        }
+        return values;
+    }
+
+    private static void putLatencies(Map<String, Double> values, LatencyHistogram histogram, String key) {
+        long count = histogram.count();
+        values.put(key + "_count", (double) count);
+        values.put(key + "_mean_us", count == 0 ? 0.0 : histogram.sumNanos() / (double) count / 1e3);
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            values.put(key + "_" + PERCENTILE_KEYS[i] + "_us", histogram.valueAtPercentile(PERCENTILES[i]) / 1e3);
+        }
+        values.put(key + "_max_us", histogram.maxNanos() / 1e3);
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format; histograms become summaries in seconds.
+     */
+    public static String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Counter counter : COUNTERS) {
+            header(out, counter.getName(), counter.getHelp(), "counter");
+            out.append(counter.getName()).append(' ').append(counter.get()).append('\n');
+        }
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            header(out, histogram.getName(), histogram.getHelp(), "summary");
+            appendSummary(out, histogram, "");
+        }
+
+        Collection<BoardMetrics> boards = BY_SERIAL.values();
+        if (!boards.isEmpty()) {
+            BoardMetrics first = boards.iterator().next();
+            Counter[] templates = first.counters();
+            for (int i = 0; i < templates.length; i++) {
+                header(out, templates[i].getName(), templates[i].getHelp(), "counter");
+                for (BoardMetrics board : boards) {
+                    Counter counter = board.counters()[i];
+                    out.append(counter.getName()).append(boardLabel(board)).append(' ').append(counter.get()).append('\n');
+                }
+            }
+            header(out, first.ackLatency.getName(), first.ackLatency.getHelp(), "summary");
+            for (BoardMetrics board : boards) {
+                appendSummary(out, board.ackLatency, "board=\"" + board.getSerialNumber() + "\"");
+            }
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void appendSummary(StringBuilder out, LatencyHistogram histogram, String labels) {
+        String name = histogram.getName();
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            out.append(name).append("{").append(prefix).append("quantile=\"").append(QUANTILES[i]).append("\"} ")
+                    .append(seconds(histogram.valueAtPercentile(PERCENTILES[i]))).append('\n');
+        }
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(seconds(histogram.sumNanos())).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(histogram.count()).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static String boardLabel(BoardMetrics board) {
+        return "{board=\"" + board.getSerialNumber() + "\"}";
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under {@value #OBJECT_NAME}.
+     * Registering twice is a no-op.
+     */
+    public static synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMXBeanImpl(), name);
+            }
+        } catch (JMException e) {
+            EventLog.warn("Failed to register the metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    private static final class MetricsMXBeanImpl implements MetricsMXBean {
+        @Override
+        public Map<String, Long> getCounters() {
+            return counterValues();
+        }
+
+        @Override
+        public Map<String, Double> getLatencies() {
+            return latencyValues();
+        }
+    }
+}
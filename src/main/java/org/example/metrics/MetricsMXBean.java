@@ -0,0 +1,19 @@
+package org.example.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link Metrics}, e.g. for JConsole or VisualVM.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return Every counter by name; per-board counters carry a {@code {board="<serial>"}} suffix.
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return Count, mean, percentiles and max (in microseconds) of every latency histogram.
+     */
+    Map<String, Double> getLatencies();
+}
@@ -0,0 +1,299 @@
+package org.example.network;
+
+import org.example.config.BoardConfig;
+import org.example.metrics.Metrics;
+import org.example.protocol.RelayCoalescer;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One bounded send queue per controller board, drained by a small shared worker pool.
+ *
+ * A board's queue is drained by at most one worker at a time, a batch at a time, so its
+ * commands go out in order; a board that is slow to send to (e.g. its host name does not
+ * resolve) only ever ties up one worker while the other boards keep being served.
+ * Frames are encoded when they are sent, so sequence IDs reach each board in increasing order.
+ *
+ * Each drained batch is coalesced by {@link RelayCoalescer}: commands for the same relay share
+ * one frame, and on boards that accept multi-relay frames the whole batch becomes one bitmap frame.
+ * For such boards the first command of a batch waits a short coalescing window, so that
+ * commands arriving right after it (e.g. during a pick wave) join the same frame.
+ *
+ * With a {@link SendPacer}, a board is only drained while it has send tokens; otherwise its next
+ * drain is put off until a token is due, without holding a worker. As every drain sends at most
+ * one batch before the board goes to the back of the workers' queue, a congested board cannot
+ * starve the others. A board whose queue is full refuses further commands (see {@link #submit}),
+ * so callers see the backpressure instead of frames piling up.
+ */
+public class BoardSendQueues implements Closeable {
+
+    private static final int DRAIN_BATCH = 64;
+
+    private final UdpTransport transport;
+    private final CommandTracker tracker;
+    private final int queueCapacity;
+    private final long coalesceWindowNanos;
+    private final SendPacer pacer;
+    private final ScheduledExecutorService workers;
+    private final Map<BoardConfig, BoardQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Creates queues that send every batch as soon as a worker picks it up.
+     *
+     * @param transport     Used for untracked sends.
+     * @param tracker       Used for tracked sends; null sends everything fire-and-forget.
+     * @param queueCapacity The maximum number of queued commands per board.
+     * @param workerCount   The number of threads draining the queues.
+     */
+    public BoardSendQueues(UdpTransport transport, CommandTracker tracker, int queueCapacity, int workerCount) {
+        this(transport, tracker, queueCapacity, workerCount, 0);
+    }
+
+    /**
+     * @param transport            Used for untracked sends.
+     * @param tracker              Used for tracked sends; null sends everything fire-and-forget.
+     * @param queueCapacity        The maximum number of queued commands per board.
+     * @param workerCount          The number of threads draining the queues.
+     * @param coalesceWindowMillis How long the first command of a batch waits for more commands on
+     *                             boards that accept multi-relay frames; 0 sends at once.
+     */
+    public BoardSendQueues(UdpTransport transport, CommandTracker tracker, int queueCapacity, int workerCount,
+                           long coalesceWindowMillis) {
+        this(transport, tracker, queueCapacity, workerCount, coalesceWindowMillis, null);
+    }
+
+    /**
+     * @param transport            Used for untracked sends.
+     * @param tracker              Used for tracked sends; null sends everything fire-and-forget.
+     * @param queueCapacity        The maximum number of queued commands per board.
+     * @param workerCount          The number of threads draining the queues.
+     * @param coalesceWindowMillis How long the first command of a batch waits for more commands on
+     *                             boards that accept multi-relay frames; 0 sends at once.
+     * @param pacer                Limits the frame rate per board; null sends as fast as possible.
+     *                             Only adapts if it listens to the tracker's deliveries.
+     */
+    public BoardSendQueues(UdpTransport transport, CommandTracker tracker, int queueCapacity, int workerCount,
+                           long coalesceWindowMillis, SendPacer pacer) {
+        this.transport = transport;
+        this.tracker = tracker;
+        this.queueCapacity = queueCapacity;
+        this.coalesceWindowNanos = TimeUnit.MILLISECONDS.toNanos(coalesceWindowMillis);
+        this.pacer = pacer;
+        this.workers = Executors.newScheduledThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "board-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a 0x40 command for a floor number: 1-40 switch a relay on, 41-80 switch it off.
+     *
+     * @return A future completed once the command was acknowledged (or, without a tracker, sent);
+     *         completed exceptionally with a RejectedExecutionException if the board's queue is full.
+     */
+    public CompletableFuture<Void> submit(BoardConfig board, int relayNumber) {
+        return submit(board, relayNumber, System.nanoTime());
+    }
+
+    /**
+     * Queues a 0x40 command on behalf of a scan.
+     *
+     * @param scanNanos The {@link System#nanoTime()} at which the scan that caused the command was
+     *                  received; the scan-to-encode and scan-to-send latencies are measured from it.
+     * @see #submit(BoardConfig, int)
+     */
+    public CompletableFuture<Void> submit(BoardConfig board, int relayNumber, long scanNanos) {
+        QueuedCommand command = new QueuedCommand(relayNumber, scanNanos);
+        BoardQueue queue;
+        boolean queued;
+        while (true) {
+            queue = queues.computeIfAbsent(board, BoardQueue::new);
+            synchronized (queue) {
+                // Dropped by retainBoards after the lookup: queue on its successor instead.
+                if (queue.closed) {
+                    continue;
+                }
+                queued = queue.commands.offer(command);
+            }
+            break;
+        }
+        if (!queued) {
+            Metrics.board(board).queueRejections.increment();
+            command.future.completeExceptionally(new RejectedExecutionException(
+                    "Send queue of board SN " + board.serialNumber + " is full"));
+            return command.future;
+        }
+        queue.schedule(true);
+        return command.future;
+    }
+
+    /**
+     * @return The number of commands waiting for a board.
+     */
+    public int queuedFor(BoardConfig board) {
+        BoardQueue queue = queues.get(board);
+        return queue == null ? 0 : queue.commands.size();
+    }
+
+    /**
+     * Drops the (idle) queues of boards that are no longer configured, e.g. after a registry reload.
+     * A queue is only dropped while empty; it is closed under the same lock {@link #submit} queues
+     * under, so a command is never left on a queue that is no longer in the map.
+     */
+    public void retainBoards(Collection<BoardConfig> boards) {
+        Set<BoardConfig> keep = Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+        keep.addAll(boards);
+        for (BoardQueue queue : queues.values()) {
+            if (keep.contains(queue.board)) {
+                continue;
+            }
+            synchronized (queue) {
+                if (queue.commands.isEmpty()) {
+                    queue.closed = true;
+                    queues.remove(queue.board, queue);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private final class BoardQueue {
+        final BoardConfig board;
+        final BlockingQueue<QueuedCommand> commands = new ArrayBlockingQueue<>(queueCapacity);
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        // Set once retainBoards dropped this queue; guarded by the queue's monitor.
+        boolean closed;
+
+        BoardQueue(BoardConfig board) {
+            this.board = board;
+        }
+
+        void schedule(boolean mayCoalesce) {
+            if (scheduled.compareAndSet(false, true)) {
+                if (mayCoalesce && coalesceWindowNanos > 0 && board.multiRelayFrames) {
+                    workers.schedule(this::drain, coalesceWindowNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    workers.execute(this::drain);
+                }
+            }
+        }
+
+        void drain() {
+            int limit = DRAIN_BATCH;
+            if (pacer != null) {
+                // Out of tokens: try again when the next one is due (still marked as scheduled).
+                long delay = pacer.delayNanos(board);
+                if (delay > 0) {
+                    Metrics.board(board).pacingDelays.increment();
+                    workers.schedule(this::drain, delay, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                // One frame per command unless the batch becomes a bitmap frame.
+                if (!board.multiRelayFrames) {
+                    limit = Math.min(limit, pacer.available(board));
+                }
+            }
+            List<QueuedCommand> batch = new ArrayList<>();
+            QueuedCommand command;
+            while (batch.size() < limit && (command = commands.poll()) != null) {
+                batch.add(command);
+            }
+            if (!batch.isEmpty()) {
+                send(batch);
+            }
+            scheduled.set(false);
+            // Commands queued after the last poll, or left over from a full batch, need another pass.
+            if (!commands.isEmpty()) {
+                schedule(false);
+            }
+        }
+
+        void send(List<QueuedCommand> batch) {
+            long encodeNanos = System.nanoTime();
+            for (QueuedCommand command : batch) {
+                Metrics.SCAN_TO_ENCODE.record(encodeNanos - command.scanNanos);
+            }
+            // Bitmap frames need the tracker: only its reply can show that the board read the bitmap.
+            RelayCoalescer.coalesce(board, batch, command -> command.relayNumber, board.multiRelayFrames && tracker != null,
+                    (frame, covered, relayMask) -> sendFrame(frame, covered, relayMask, encodeNanos));
+        }
+
+        void sendFrame(ByteBuffer frame, List<QueuedCommand> covered, long relayMask, long encodeNanos) {
+            if (pacer != null) {
+                pacer.consume(board);
+            }
+            try {
+                if (tracker != null) {
+                    long[] echo = new long[1];
+                    CompletableFuture<Void> acknowledged = tracker.send(board, frame, relayMask == 0 ? null : echo);
+                    recordSent(covered, encodeNanos);
+                    acknowledged.whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            covered.forEach(command -> command.future.completeExceptionally(error));
+                            return;
+                        }
+                        if (relayMask == 0) {
+                            covered.forEach(command -> command.future.complete(null));
+                            return;
+                        }
+                        List<QueuedCommand> unproven = RelayCoalescer.afterBitmapReply(covered, command -> command.relayNumber,
+                                relayMask, echo[0], command -> command.future.complete(null));
+                        if (!unproven.isEmpty()) {
+                            // These may now go out after newer commands for the same relays; the
+                            // relay shadow's reconciler then restores the newer state.
+                            Metrics.board(board).bitmapFallbacks.increment();
+                            workers.execute(() -> RelayCoalescer.coalesce(board, unproven, command -> command.relayNumber, false,
+                                    (single, singleCovered, ignoredMask) -> sendFrame(single, singleCovered, 0, System.nanoTime())));
+                        }
+                    });
+                } else {
+                    transport.send(board, frame);
+                    recordSent(covered, encodeNanos);
+                    covered.forEach(command -> command.future.complete(null));
+                }
+            } catch (Exception e) {
+                covered.forEach(command -> command.future.completeExceptionally(e));
+            }
+        }
+    }
+
+    private static void recordSent(List<QueuedCommand> commands, long encodeNanos) {
+        long sentNanos = System.nanoTime();
+        Metrics.ENCODE_TO_SEND.record(sentNanos - encodeNanos);
+        for (QueuedCommand command : commands) {
+            Metrics.SCAN_TO_SEND.record(sentNanos - command.scanNanos);
+        }
+    }
+
+    private static final class QueuedCommand {
+        final int relayNumber;
+        final long scanNanos;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        QueuedCommand(int relayNumber, long scanNanos) {
+            this.relayNumber = relayNumber;
+            this.scanNanos = scanNanos;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package org.example.network;
+
+import org.example.config.BoardConfig;
+import org.example.logging.EventLog;
+import org.example.metrics.BoardMetrics;
+import org.example.metrics.Metrics;
+import org.example.protocol.PacketBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.Selector;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends commands with acknowledgement tracking and selective retransmission.
+ *
+ * Every tracked command is remembered by its board serial number and the sequence ID at bytes
+ * 40-43 of the frame. A receiver thread reads controller replies from the transport and completes
+ * the matching command. A retransmit thread resends only the commands whose reply is overdue,
+ * doubling the timeout each time up to a cap, and fails them after the last attempt.
+ *
+ * Every retransmission carries a fresh sequence ID. The controller firmware is not known to
+ * acknowledge a sequence ID it already accepted, so resending the same ID could never be
+ * acknowledged if only the reply was lost. A 0x40 command sets a relay's state, so applying it a
+ * second time is harmless. Earlier attempts stay tracked until the command completes, so a late
+ * reply to any of them is still matched.
+ *
+ * A reply is a 0x17 frame from the board with the same serial number and sequence ID;
+ * byte 8 is 1 when the controller accepted the command.
+ *
+ * Delivery listeners (e.g. a {@link SendPacer}) are told about every acknowledgement and every
+ * overdue reply, as a signal of how congested each board is.
+ */
+public class CommandTracker implements Closeable {
+
+    /**
+     * Notified on the tracker's threads; must not block.
+     */
+    public interface DeliveryListener {
+        /** A command to the board was acknowledged. */
+        void onDelivered(BoardConfig board);
+
+        /** No reply to a command arrived in time: it is being retransmitted or has timed out. */
+        void onLost(BoardConfig board);
+    }
+
+    private static final long RETRANSMIT_TICK_MILLIS = 5;
+
+    private final UdpTransport transport;
+    private final PendingCommands pending;
+    private final long initialTimeoutNanos;
+    private final long maxTimeoutNanos;
+    private final int maxAttempts;
+    private final List<DeliveryListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Selector selector;
+    private final Thread receiver;
+    private final ScheduledExecutorService retransmitter;
+    private volatile boolean running = true;
+
+    /**
+     * Creates a tracker with defaults suited to a LAN: 4096 in-flight commands,
+     * 50 ms first timeout doubling up to 800 ms, 5 attempts in total.
+     */
+    public CommandTracker(UdpTransport transport) throws IOException {
+        this(transport, 4096, 50, 800, 5);
+    }
+
+    /**
+     * @param transport            The transport commands are sent with and replies arrive on.
+     * @param capacity             The maximum number of in-flight commands.
+     * @param initialTimeoutMillis How long to wait for the first reply.
+     * @param maxTimeoutMillis     The cap of the exponential backoff.
+     * @param maxAttempts          Sends per command, including the first.
+     */
+    public CommandTracker(UdpTransport transport, int capacity, long initialTimeoutMillis,
+                          long maxTimeoutMillis, int maxAttempts) throws IOException {
+        this.transport = transport;
+        // Every attempt of a command is tracked until the command completes.
+        this.pending = new PendingCommands(capacity * maxAttempts);
+        this.initialTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(initialTimeoutMillis);
+        this.maxTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(maxTimeoutMillis);
+        this.maxAttempts = maxAttempts;
+
+        this.selector = Selector.open();
+        transport.registerForReads(selector);
+        this.receiver = new Thread(this::receiveLoop, "udp-ack-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+
+        this.retransmitter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "udp-retransmitter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retransmitter.scheduleAtFixedRate(this::retransmitOverdue,
+                RETRANSMIT_TICK_MILLIS, RETRANSMIT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends a 64-byte command frame and tracks its acknowledgement.
+     *
+     * @param board The target controller board.
+     * @param frame The frame, positioned at its first byte; it is copied, so it may be reused.
+     * @return A future completed when the controller accepts the command, or completed
+     *         exceptionally when it rejects it or all attempts time out.
+     */
+    public CompletableFuture<Void> send(BoardConfig board, ByteBuffer frame) {
+        return send(board, frame, null);
+    }
+
+    /**
+     * Like {@link #send(BoardConfig, ByteBuffer)}, for a multi-relay frame.
+     *
+     * @param relayMaskEcho Receives the relay bitmap (bytes 12-16) of the accepting reply before
+     *                      the future completes.
+     */
+    public CompletableFuture<Void> send(BoardConfig board, ByteBuffer frame, long[] relayMaskEcho) {
+        int base = frame.position();
+        long sequenceId = PacketBuilder.readSequenceId(frame, base);
+        byte[] copy = new byte[frame.remaining()];
+        frame.get(base, copy);
+
+        PendingCommand command = new PendingCommand(board, sequenceId, copy, initialTimeoutNanos, relayMaskEcho);
+        if (!pending.add(command)) {
+            command.future.completeExceptionally(new IllegalStateException(
+                    "Too many unacknowledged commands; command " + sequenceId + " for board SN " + board.serialNumber + " not sent"));
+            return command.future;
+        }
+        try {
+            transport.send(board, frame);
+        } catch (IOException e) {
+            // Leave it pending: the retransmit thread will try again when the timeout expires.
+            EventLog.warn("Sending command {} to board SN {} failed, will retry: {}", sequenceId, board.serialNumber, e.getMessage());
+        }
+        return command.future;
+    }
+
+    public void addDeliveryListener(DeliveryListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return The number of commands currently waiting for a reply (a full table scan).
+     */
+    public int outstanding() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        int[] count = {0};
+        pending.forEach(command -> {
+            if (!command.superseded && !command.future.isDone()) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    private void receiveLoop() {
+        ByteBuffer reply = ByteBuffer.allocateDirect(1024);
+        while (running) {
+            try {
+                selector.select(100);
+                selector.selectedKeys().clear();
+                while (true) {
+                    reply.clear();
+                    if (transport.receive(reply) == null) {
+                        break;
+                    }
+                    reply.flip();
+                    onReply(reply);
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    EventLog.error("Receiving controller replies failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void onReply(ByteBuffer reply) {
+        if (reply.remaining() < PacketBuilder.PACKET_SIZE || reply.get(0) != 0x17) {
+            return; // Not a controller frame.
+        }
+        int serialNumber = (reply.get(4) & 0xFF)
+                | (reply.get(5) & 0xFF) << 8
+                | (reply.get(6) & 0xFF) << 16
+                | (reply.get(7) & 0xFF) << 24;
+        long sequenceId = PacketBuilder.readSequenceId(reply, 0);
+        PendingCommand command = pending.remove(serialNumber, sequenceId);
+        if (command == null) {
+            return; // Late reply to a command that already completed or timed out.
+        }
+        BoardMetrics metrics = Metrics.board(command.board);
+        if (command.future.isDone()) {
+            return; // Another attempt of the same command was answered first.
+        }
+        if (reply.get(8) == 1) {
+            if (command.relayMaskEcho != null) {
+                command.relayMaskEcho[0] = PacketBuilder.readRelayMask(reply, 0);
+            }
+            metrics.acks.increment();
+            metrics.ackLatency.record(System.nanoTime() - command.firstSentNanos);
+            for (DeliveryListener listener : listeners) {
+                listener.onDelivered(command.board);
+            }
+            command.future.complete(null);
+        } else {
+            metrics.rejections.increment();
+            command.future.completeExceptionally(new IOException(
+                    "Board SN " + serialNumber + " rejected command " + sequenceId));
+        }
+    }
+
+    private void retransmitOverdue() {
+        if (pending.isEmpty()) {
+            return; // Nothing in flight: skip scanning the whole slot array every tick.
+        }
+        long now = System.nanoTime();
+        pending.forEach(command -> {
+            if (command.future.isDone()) {
+                // Another attempt of the command was answered, or the command failed.
+                pending.remove(command);
+                return;
+            }
+            if (command.superseded || now - command.deadlineNanos < 0) {
+                return;
+            }
+            for (DeliveryListener listener : listeners) {
+                listener.onLost(command.board);
+            }
+            if (command.attempts >= maxAttempts) {
+                if (pending.remove(command)) {
+                    Metrics.board(command.board).timeouts.increment();
+                    command.future.completeExceptionally(new TimeoutException(
+                            "No reply from board SN " + command.serialNumber + " to command " + command.sequenceId
+                                    + " after " + command.attempts + " attempts"));
+                }
+                return;
+            }
+            // 1. The next attempt, with a fresh sequence ID
+            long sequenceId = command.board.nextSequenceId();
+            byte[] frame = command.frame.clone();
+            PacketBuilder.writeSequenceId(ByteBuffer.wrap(frame), 0, sequenceId);
+            PendingCommand retry = command.retry(sequenceId, frame, Math.min(command.timeoutNanos * 2, maxTimeoutNanos));
+            if (!pending.add(retry)) {
+                if (pending.remove(command)) {
+                    command.future.completeExceptionally(new IllegalStateException(
+                            "Too many unacknowledged commands; command " + command.sequenceId + " for board SN " + command.serialNumber + " not retransmitted"));
+                }
+                return;
+            }
+            command.superseded = true;
+
+            // 2. Send it
+            Metrics.board(command.board).retransmits.increment();
+            try {
+                transport.send(retry.board, retry.frame);
+            } catch (IOException e) {
+                EventLog.warn("Retransmitting command {} to board SN {} failed: {}", retry.sequenceId, retry.serialNumber, e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        retransmitter.shutdownNow();
+        selector.close();
+        pending.forEach(command -> {
+            if (pending.remove(command)) {
+                command.future.completeExceptionally(new IOException("Command tracker closed"));
+            }
+        });
+    }
+}
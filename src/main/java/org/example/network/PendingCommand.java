@@ -0,0 +1,52 @@
+package org.example.network;
+
+import org.example.config.BoardConfig;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One attempt of a sent command that has not been acknowledged by its controller yet.
+ * Every retransmission is a new attempt with its own sequence ID; all attempts of a command share
+ * its future, so a reply to any of them completes the command.
+ */
+class PendingCommand {
+
+    final BoardConfig board;
+    final int serialNumber;
+    final long sequenceId;
+    final byte[] frame; // Copy of the frame sent in this attempt.
+    final CompletableFuture<Void> future;
+    final long firstSentNanos;
+    final int attempts; // This attempt's number, 1 for the first send.
+    final long timeoutNanos;
+    final long[] relayMaskEcho; // Receives the bitmap of the reply; null if not wanted.
+
+    volatile long deadlineNanos;
+    // Set once the next attempt was sent; this one then only waits for a late reply.
+    volatile boolean superseded;
+
+    PendingCommand(BoardConfig board, long sequenceId, byte[] frame, long timeoutNanos, long[] relayMaskEcho) {
+        this(board, sequenceId, frame, new CompletableFuture<>(), System.nanoTime(), 1, timeoutNanos, relayMaskEcho);
+    }
+
+    private PendingCommand(BoardConfig board, long sequenceId, byte[] frame, CompletableFuture<Void> future,
+                           long firstSentNanos, int attempts, long timeoutNanos, long[] relayMaskEcho) {
+        this.board = board;
+        this.serialNumber = board.serialNumber;
+        this.sequenceId = sequenceId;
+        this.frame = frame;
+        this.future = future;
+        this.firstSentNanos = firstSentNanos;
+        this.attempts = attempts;
+        this.timeoutNanos = timeoutNanos;
+        this.relayMaskEcho = relayMaskEcho;
+        this.deadlineNanos = System.nanoTime() + timeoutNanos;
+    }
+
+    /**
+     * @return The next attempt of the same command, sent as {@code frame} with {@code sequenceId}.
+     */
+    PendingCommand retry(long sequenceId, byte[] frame, long timeoutNanos) {
+        return new PendingCommand(board, sequenceId, frame, future, firstSentNanos, attempts + 1, timeoutNanos, relayMaskEcho);
+    }
+}
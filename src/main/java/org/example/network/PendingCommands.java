@@ -0,0 +1,139 @@
+package org.example.network;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free table of commands waiting for a controller reply, keyed by (serial number, sequence ID).
+ *
+ * A command lives in one slot of a fixed array. Its home slot is derived from the key and it may
+ * be placed anywhere in the {@code PROBE_WINDOW} slots after it; lookups scan that whole window,
+ * so removals can simply clear a slot without tombstones. Insert and remove are single CAS
+ * operations, so the receiver thread, the retransmit thread and senders never block each other.
+ *
+ * The array has twice as many slots as the table holds commands, so full windows are rare; a
+ * command whose window is full goes to an overflow map instead. A command is only refused when
+ * the table holds its full capacity.
+ */
+class PendingCommands {
+
+    private static final int PROBE_WINDOW = 32;
+
+    private final AtomicReferenceArray<PendingCommand> slots;
+    private final int mask;
+    private final int capacity;
+    private final AtomicInteger size = new AtomicInteger();
+    private final Map<Long, PendingCommand> overflow = new ConcurrentHashMap<>();
+
+    /**
+     * @param capacity The maximum number of pending commands.
+     */
+    PendingCommands(int capacity) {
+        int length = Integer.highestOneBit(Math.max(PROBE_WINDOW, 2 * capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(length);
+        this.mask = length - 1;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return False if the table is full.
+     */
+    boolean add(PendingCommand command) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return false;
+        }
+        int home = home(command.serialNumber, command.sequenceId);
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            if (slots.compareAndSet((home + i) & mask, null, command)) {
+                return true;
+            }
+        }
+        overflow.put(key(command.serialNumber, command.sequenceId), command);
+        return true;
+    }
+
+    /**
+     * Removes and returns the command with the given key, or null if it is not (or no longer) pending.
+     * At most one caller gets a given command back.
+     */
+    PendingCommand remove(int serialNumber, long sequenceId) {
+        int home = home(serialNumber, sequenceId);
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            int slot = (home + i) & mask;
+            PendingCommand command = slots.get(slot);
+            if (command != null && command.serialNumber == serialNumber && command.sequenceId == sequenceId) {
+                if (!slots.compareAndSet(slot, command, null)) {
+                    return null;
+                }
+                size.decrementAndGet();
+                return command;
+            }
+        }
+        if (overflow.isEmpty()) {
+            return null;
+        }
+        PendingCommand command = overflow.remove(key(serialNumber, sequenceId));
+        if (command != null) {
+            size.decrementAndGet();
+        }
+        return command;
+    }
+
+    /**
+     * Removes the given command if it is still pending.
+     *
+     * @return True if this call removed it.
+     */
+    boolean remove(PendingCommand command) {
+        int home = home(command.serialNumber, command.sequenceId);
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            if (slots.compareAndSet((home + i) & mask, command, null)) {
+                size.decrementAndGet();
+                return true;
+            }
+        }
+        if (!overflow.isEmpty() && overflow.remove(key(command.serialNumber, command.sequenceId), command)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return True if no command is pending; cheap, unlike a {@link #forEach} over the whole array.
+     */
+    boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * Visits every pending command. Commands added or removed during the scan may or may not be seen.
+     */
+    void forEach(Consumer<PendingCommand> action) {
+        for (int i = 0; i <= mask; i++) {
+            PendingCommand command = slots.get(i);
+            if (command != null) {
+                action.accept(command);
+            }
+        }
+        if (!overflow.isEmpty()) {
+            overflow.values().forEach(action);
+        }
+    }
+
+    private int home(int serialNumber, long sequenceId) {
+        long h = (serialNumber * 0x9E3779B97F4A7C15L) ^ sequenceId;
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static long key(int serialNumber, long sequenceId) {
+        return (long) serialNumber << 32 | sequenceId;
+    }
+}
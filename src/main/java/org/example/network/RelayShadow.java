@@ -0,0 +1,225 @@
+package org.example.network;
+
+import org.example.config.BoardConfig;
+import org.example.logging.EventLog;
+import org.example.metrics.Metrics;
+import org.example.protocol.PacketBuilder;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory shadow of which relays are on, as two 256-bit sets per board: the state we want
+ * ({@code desired}) and the state the board confirmed ({@code applied}).
+ *
+ * A command is only sent when the desired state of a relay actually changes; asking for the
+ * state a relay already has sends nothing. ON sends the relay's own floor number. The SDK does
+ * not document an OFF command; we assume floor + {@value PacketBuilder#NC_FLOOR_OFFSET} switches
+ * the relay's NC contact, which still has to be confirmed on real hardware. Under that assumption
+ * only relays 1-{@value PacketBuilder#MAX_MASK_RELAY} can be switched off.
+ * A background pass re-sends every relay whose confirmed state differs from the desired one
+ * (e.g. after a lost or rejected command), and every few passes re-asserts all relays that
+ * should be on, in case a board restarted and lost its state.
+ */
+public class RelayShadow implements Closeable {
+
+    private static final int WORDS = PacketBuilder.MAX_RELAYS / Long.SIZE;
+
+    /**
+     * Sends one relay command; normally {@link BoardSendQueues#submit(BoardConfig, int, long)}.
+     */
+    public interface RelaySender {
+        CompletableFuture<Void> send(BoardConfig board, int floorNumber, long scanNanos);
+    }
+
+    private final RelaySender sender;
+    private final Map<BoardConfig, BoardShadow> boards = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reconciler;
+    private final int fullReassertEvery;
+    private long passes; // Only touched by the reconciler thread.
+
+    /**
+     * @param sender                  Sends the commands.
+     * @param reconcileIntervalMillis How often to re-send relays whose state is not confirmed.
+     * @param fullReassertEvery       Every how many passes all relays that should be on are re-sent.
+     */
+    public RelayShadow(RelaySender sender, long reconcileIntervalMillis, int fullReassertEvery) {
+        this.sender = sender;
+        this.fullReassertEvery = fullReassertEvery;
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "relay-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.scheduleWithFixedDelay(this::reconcile, reconcileIntervalMillis, reconcileIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the desired state of a relay and sends a command if it changed.
+     *
+     * @param scanNanos The {@link System#nanoTime()} of the scan that caused the change.
+     * @return True if a command was sent, false if the relay already had that state.
+     */
+    public boolean set(BoardConfig board, int relayNumber, boolean on, long scanNanos) {
+        checkRelay(relayNumber);
+        BoardShadow shadow = boards.computeIfAbsent(board, BoardShadow::new);
+        if (!shadow.desired.setBit(relayNumber, on)) {
+            Metrics.LED_COMMANDS_SUPPRESSED.increment();
+            return false;
+        }
+        emit(shadow, relayNumber, on, scanNanos);
+        return true;
+    }
+
+    /**
+     * Flips the desired state of a relay and sends the command, e.g. for one step of a blink.
+     *
+     * @return The new desired state.
+     */
+    public boolean toggle(BoardConfig board, int relayNumber) {
+        checkRelay(relayNumber);
+        BoardShadow shadow = boards.computeIfAbsent(board, BoardShadow::new);
+        boolean on = shadow.desired.flipBit(relayNumber);
+        emit(shadow, relayNumber, on, System.nanoTime());
+        return on;
+    }
+
+    /**
+     * @return True if the relay is supposed to be on.
+     */
+    public boolean isOn(BoardConfig board, int relayNumber) {
+        BoardShadow shadow = boards.get(board);
+        return shadow != null && shadow.desired.getBit(relayNumber);
+    }
+
+    /**
+     * @return True if the board confirmed the relay's current desired state.
+     */
+    public boolean isConfirmed(BoardConfig board, int relayNumber) {
+        BoardShadow shadow = boards.get(board);
+        return shadow == null || shadow.desired.getBit(relayNumber) == shadow.applied.getBit(relayNumber);
+    }
+
+    /**
+     * Forgets the boards that are no longer configured, e.g. after a registry reload.
+     */
+    public void retainBoards(Collection<BoardConfig> keep) {
+        Set<BoardConfig> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(keep);
+        boards.keySet().removeIf(board -> !current.contains(board));
+    }
+
+    private void emit(BoardShadow shadow, int relayNumber, boolean on, long scanNanos) {
+        if (!on && relayNumber > PacketBuilder.MAX_MASK_RELAY) {
+            // No OFF floor exists for this relay. Treat OFF as applied so the reconciler and
+            // callers waiting for confirmation do not retry forever; warn once per relay.
+            shadow.applied.setBit(relayNumber, false);
+            if (shadow.noOff.setBit(relayNumber, true)) {
+                EventLog.warn("Relay {} on board SN {} has no OFF command; it stays on.", relayNumber, shadow.board.serialNumber);
+            }
+            return;
+        }
+        int floorNumber = on ? relayNumber : relayNumber + PacketBuilder.NC_FLOOR_OFFSET;
+        sender.send(shadow.board, floorNumber, scanNanos).whenComplete((ignored, error) -> {
+            // Recorded even if the desired state changed meanwhile: a retransmission may have been
+            // applied after the newer command, and the reconciler then re-sends the desired state.
+            if (error == null) {
+                shadow.applied.setBit(relayNumber, on);
+            }
+        });
+    }
+
+    private void reconcile() {
+        boolean full = fullReassertEvery > 0 && ++passes % fullReassertEvery == 0;
+        int resent = 0;
+        for (BoardShadow shadow : boards.values()) {
+            for (int word = 0; word < WORDS; word++) {
+                long desired = shadow.desired.bits.get(word);
+                long stale = desired ^ shadow.applied.bits.get(word);
+                if (full) {
+                    stale |= desired;
+                }
+                while (stale != 0) {
+                    int bit = Long.numberOfTrailingZeros(stale);
+                    stale &= stale - 1;
+                    int relay = word * Long.SIZE + bit;
+                    emit(shadow, relay, (desired & (1L << bit)) != 0, System.nanoTime());
+                    resent++;
+                }
+            }
+        }
+        if (resent > 0) {
+            Metrics.LED_RECONCILE_SENDS.add(resent);
+            EventLog.info("Relay reconciliation re-sent {} commands{}", resent, full ? " (full re-assert)" : "");
+        }
+    }
+
+    private static void checkRelay(int relayNumber) {
+        if (relayNumber < 0 || relayNumber >= PacketBuilder.MAX_RELAYS) {
+            throw new IllegalArgumentException("Relay number out of range: " + relayNumber);
+        }
+    }
+
+    @Override
+    public void close() {
+        reconciler.shutdownNow();
+    }
+
+    private static final class BoardShadow {
+        final BoardConfig board;
+        final RelayBits desired = new RelayBits();
+        final RelayBits applied = new RelayBits();
+        final RelayBits noOff = new RelayBits(); // Relays already warned about having no OFF command.
+
+        BoardShadow(BoardConfig board) {
+            this.board = board;
+        }
+    }
+
+    /**
+     * A lock-free 256-bit set.
+     */
+    private static final class RelayBits {
+        final AtomicLongArray bits = new AtomicLongArray(WORDS);
+
+        boolean getBit(int index) {
+            return (bits.get(index >>> 6) & (1L << index)) != 0;
+        }
+
+        /**
+         * @return True if the bit changed.
+         */
+        boolean setBit(int index, boolean value) {
+            int word = index >>> 6;
+            long mask = 1L << index;
+            while (true) {
+                long current = bits.get(word);
+                long updated = value ? current | mask : current & ~mask;
+                if (current == updated) {
+                    return false;
+                }
+                if (bits.compareAndSet(word, current, updated)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return The new value of the bit.
+         */
+        boolean flipBit(int index) {
+            long mask = 1L << index;
+            return (bits.getAndUpdate(index >>> 6, current -> current ^ mask) & mask) == 0;
+        }
+    }
+}
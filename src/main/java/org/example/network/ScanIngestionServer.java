@@ -0,0 +1,418 @@
+package org.example.network;
+
+import org.example.logging.EventLog;
+import org.example.metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accepts scans from network-attached QR/RFID scanners.
+ *
+ * One selector thread serves all TCP connections and the UDP socket:
+ * <ul>
+ *   <li>TCP: one scan per line. A scanner may name itself with a first line {@code SCANNER <id>};
+ *       otherwise its IP address is its identity.</li>
+ *   <li>UDP: one scan per datagram, either {@code <id>|<scan>} or just the scan (identity = source IP address).</li>
+ * </ul>
+ * The identity deliberately ignores the source port, so a scanner that reconnects keeps its
+ * session (e.g. a pending export). Scanners sharing an IP address must therefore name themselves.
+ *
+ * Scans are handed to the handler on a worker pool, one scanner at a time in arrival order, so
+ * a handler that blocks (e.g. waiting for the journal) never stalls the selector or other scanners.
+ * Each scanner may have {@value #MAX_QUEUED_SCANS} scans waiting: beyond that the server stops
+ * reading its TCP connection until the handler catches up, and drops its UDP scans. At most
+ * {@value #MAX_SCANNERS} scanners are tracked; idle ones are forgotten to make room.
+ */
+public class ScanIngestionServer implements Closeable {
+
+    /**
+     * Receives the scans, e.g. {@code inventoryService::handleInput}.
+     */
+    public interface ScanHandler {
+        void onScan(String scannerId, String line);
+    }
+
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final String HELLO_PREFIX = "SCANNER ";
+    private static final int MAX_QUEUED_SCANS = 256;
+    private static final int MAX_SCANNERS = 4096;
+
+    private final ScanHandler handler;
+    private final Selector selector;
+    private final ServerSocketChannel tcpChannel;
+    private final DatagramChannel udpChannel;
+    private final ExecutorService workers;
+    private final Map<String, ScannerLane> lanes = new ConcurrentHashMap<>(); // Only changed by the selector thread.
+    // Paused connections whose lane has room again; re-armed by the selector thread.
+    private final Queue<SelectionKey> resumed = new ConcurrentLinkedQueue<>();
+    private boolean scannerLimitReported; // Only touched by the selector thread.
+    private final Thread selectorThread;
+    private volatile boolean running = true;
+
+    /**
+     * Binds the listeners and starts serving.
+     *
+     * @param tcpAddress  The TCP listen address, or null for no TCP listener.
+     * @param udpAddress  The UDP listen address, or null for no UDP listener.
+     * @param handler     Receives every scan line.
+     * @param workerCount The number of threads running the handler.
+     */
+    public ScanIngestionServer(InetSocketAddress tcpAddress, InetSocketAddress udpAddress,
+                               ScanHandler handler, int workerCount) throws IOException {
+        this.handler = handler;
+        this.selector = Selector.open();
+        if (tcpAddress != null) {
+            tcpChannel = ServerSocketChannel.open();
+            tcpChannel.bind(tcpAddress, 1024);
+            tcpChannel.configureBlocking(false);
+            tcpChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } else {
+            tcpChannel = null;
+        }
+        if (udpAddress != null) {
+            udpChannel = DatagramChannel.open();
+            udpChannel.bind(udpAddress);
+            udpChannel.configureBlocking(false);
+            udpChannel.register(selector, SelectionKey.OP_READ);
+        } else {
+            udpChannel = null;
+        }
+        this.workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread thread = new Thread(r, "scan-handler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.selectorThread = new Thread(this::selectLoop, "scan-ingestion");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    public InetSocketAddress getTcpAddress() throws IOException {
+        return tcpChannel == null ? null : (InetSocketAddress) tcpChannel.getLocalAddress();
+    }
+
+    public InetSocketAddress getUdpAddress() throws IOException {
+        return udpChannel == null ? null : (InetSocketAddress) udpChannel.getLocalAddress();
+    }
+
+    private void selectLoop() {
+        ByteBuffer datagram = ByteBuffer.allocateDirect(MAX_LINE_LENGTH);
+        while (running) {
+            try {
+                resumeConnections();
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.channel() == udpChannel) {
+                        readDatagrams(datagram);
+                    } else if (key.isReadable()) {
+                        readConnection(key);
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    EventLog.error("Scan ingestion failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel connection;
+        while ((connection = tcpChannel.accept()) != null) {
+            connection.configureBlocking(false);
+            SocketAddress remote = connection.getRemoteAddress();
+            connection.register(selector, SelectionKey.OP_READ, new Connection(addressId(remote)));
+        }
+    }
+
+    private void readConnection(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        if (connection.paused) {
+            return;
+        }
+        try {
+            int read = channel.read(connection.buffer);
+            if (read < 0) {
+                closeConnection(key);
+                return;
+            }
+            connection.buffer.flip();
+            extractLines(key, connection);
+            connection.buffer.compact();
+            if (key.isValid() && !connection.paused && !connection.buffer.hasRemaining()) {
+                EventLog.warn("Scanner '{}' sent a line longer than {} bytes; disconnecting.", connection.scannerId, MAX_LINE_LENGTH);
+                closeConnection(key);
+            }
+        } catch (IOException e) {
+            closeConnection(key);
+        }
+    }
+
+    /**
+     * Dispatches the complete lines in the buffer. Stops early, leaving the rest in the buffer,
+     * if the scanner's lane is full; the connection is then paused until the lane has room.
+     */
+    private void extractLines(SelectionKey key, Connection connection) {
+        ByteBuffer buffer = connection.buffer;
+        int lineStart = buffer.position();
+        for (int i = lineStart; i < buffer.limit(); i++) {
+            if (buffer.get(i) != '\n') {
+                continue;
+            }
+            int end = i;
+            if (end > lineStart && buffer.get(end - 1) == '\r') {
+                end--;
+            }
+            byte[] bytes = new byte[end - lineStart];
+            buffer.get(lineStart, bytes);
+            String line = new String(bytes, StandardCharsets.UTF_8);
+
+            if (!connection.named && line.startsWith(HELLO_PREFIX)) {
+                connection.scannerId = line.substring(HELLO_PREFIX.length()).trim();
+                connection.named = true;
+                lineStart = i + 1;
+                continue;
+            }
+            ScannerLane lane = lane(connection.scannerId);
+            if (lane == null) {
+                Metrics.SCANS_SHED.increment();
+                closeConnection(key);
+                return;
+            }
+            if (!lane.offer(line)) {
+                pause(key, connection, lane);
+                break;
+            }
+            connection.named = true; // Only the very first line may name the scanner.
+            lineStart = i + 1;
+        }
+        buffer.position(lineStart);
+    }
+
+    private void pause(SelectionKey key, Connection connection, ScannerLane lane) {
+        connection.paused = true;
+        key.interestOps(0);
+        lane.paused.add(key);
+        // The lane may have drained between offer() and add(); its worker would then have missed this key.
+        if (lane.hasRoom()) {
+            lane.resumePaused();
+        }
+    }
+
+    private void resumeConnections() {
+        SelectionKey key;
+        while ((key = resumed.poll()) != null) {
+            Connection connection = (Connection) key.attachment();
+            if (!key.isValid() || !connection.paused) {
+                continue;
+            }
+            connection.paused = false;
+            // First the lines read before the pause, then the socket again.
+            connection.buffer.flip();
+            extractLines(key, connection);
+            connection.buffer.compact();
+            if (!connection.paused && key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void readDatagrams(ByteBuffer datagram) throws IOException {
+        SocketAddress sender;
+        while (true) {
+            datagram.clear();
+            sender = udpChannel.receive(datagram);
+            if (sender == null) {
+                return;
+            }
+            datagram.flip();
+            String payload = StandardCharsets.UTF_8.decode(datagram).toString().trim();
+            int separator = payload.indexOf('|');
+            String scannerId = separator > 0 ? payload.substring(0, separator) : addressId(sender);
+            ScannerLane lane = lane(scannerId);
+            if (lane != null && lane.offer(separator > 0 ? payload.substring(separator + 1) : payload)) {
+                if (lane.queued.get() == 1) {
+                    lane.shedding = false; // The scanner's backlog was fully handled; warn again next time.
+                }
+            } else {
+                // UDP has no flow control; shed the scan rather than queue without bound.
+                Metrics.SCANS_SHED.increment();
+                if (lane != null && !lane.shedding) {
+                    lane.shedding = true;
+                    EventLog.warn("Scanner '{}' sends faster than its scans are handled; dropping its datagrams.", scannerId);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The scanner's lane, or null if {@value #MAX_SCANNERS} scanners have scans in flight.
+     */
+    private ScannerLane lane(String scannerId) {
+        ScannerLane lane = lanes.get(scannerId);
+        if (lane != null) {
+            return lane;
+        }
+        if (lanes.size() >= MAX_SCANNERS) {
+            // Only this thread adds to a lane, so an idle lane stays idle while it is removed.
+            lanes.values().removeIf(ScannerLane::isIdle);
+            if (lanes.size() >= MAX_SCANNERS) {
+                if (!scannerLimitReported) {
+                    scannerLimitReported = true;
+                    EventLog.warn("More than {} scanners are busy; refusing scans from new ones.", MAX_SCANNERS);
+                }
+                return null;
+            }
+        }
+        scannerLimitReported = false;
+        lane = new ScannerLane(scannerId);
+        lanes.put(scannerId, lane);
+        return lane;
+    }
+
+    private void closeConnection(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already gone.
+        }
+    }
+
+    private static String addressId(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            return ((InetSocketAddress) address).getAddress().getHostAddress();
+        }
+        return String.valueOf(address);
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.close();
+        if (tcpChannel != null) {
+            tcpChannel.close();
+        }
+        if (udpChannel != null) {
+            udpChannel.close();
+        }
+        workers.shutdown();
+    }
+
+    private static final class Connection {
+        final ByteBuffer buffer = ByteBuffer.allocate(MAX_LINE_LENGTH);
+        String scannerId;
+        boolean named;
+        boolean paused; // Not reading because the scanner's lane is full.
+
+        Connection(String scannerId) {
+            this.scannerId = scannerId;
+        }
+    }
+
+    /**
+     * The scans of one scanner waiting for the handler; filled by the selector thread and
+     * drained by one worker at a time.
+     */
+    private final class ScannerLane {
+        final String scannerId;
+        final Queue<String> scans = new ConcurrentLinkedQueue<>();
+        final AtomicInteger queued = new AtomicInteger(); // Scans added and not yet handled.
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final Queue<SelectionKey> paused = new ConcurrentLinkedQueue<>();
+        boolean shedding; // Only touched by the selector thread.
+
+        ScannerLane(String scannerId) {
+            this.scannerId = scannerId;
+        }
+
+        /**
+         * @return False if the lane is full.
+         */
+        boolean offer(String line) {
+            if (!hasRoom()) {
+                return false;
+            }
+            queued.incrementAndGet();
+            scans.add(line);
+            schedule();
+            return true;
+        }
+
+        boolean hasRoom() {
+            return queued.get() < MAX_QUEUED_SCANS;
+        }
+
+        boolean isIdle() {
+            return queued.get() == 0 && !scheduled.get() && paused.isEmpty();
+        }
+
+        void resumePaused() {
+            SelectionKey key;
+            boolean any = false;
+            while ((key = paused.poll()) != null) {
+                resumed.add(key);
+                any = true;
+            }
+            if (any) {
+                selector.wakeup();
+            }
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                workers.execute(this::drain);
+            }
+        }
+
+        void drain() {
+            String line;
+            while ((line = scans.poll()) != null) {
+                try {
+                    handler.onScan(scannerId, line);
+                } catch (RuntimeException e) {
+                    EventLog.error("Handling scan from '{}' failed: {}", scannerId, e.getMessage());
+                }
+                // Resume readers at half capacity, so they are not paused again after one scan.
+                if (queued.decrementAndGet() <= MAX_QUEUED_SCANS / 2 && !paused.isEmpty()) {
+                    resumePaused();
+                }
+            }
+            scheduled.set(false);
+            if (!scans.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
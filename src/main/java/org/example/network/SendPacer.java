@@ -0,0 +1,147 @@
+package org.example.network;
+
+import org.example.config.BoardConfig;
+import org.example.metrics.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how fast frames are sent to each controller board, adapting the rate to the board.
+ *
+ * Every board (by serial number) has a token bucket refilled at its current rate. The rate follows
+ * AIMD: every acknowledged command raises it by a fixed step, and a command whose reply is overdue
+ * halves it, at most once per backoff interval so that one burst of losses counts as one congestion
+ * event. The rate stays between a floor and a ceiling.
+ *
+ * The pacer never blocks; senders ask for the delay until the next token and consume tokens as they
+ * send (see {@link BoardSendQueues}). It learns about acknowledgements and losses as a
+ * {@link CommandTracker.DeliveryListener}.
+ */
+public class SendPacer implements CommandTracker.DeliveryListener {
+
+    private final double initialRate;
+    private final double minRate;
+    private final double maxRate;
+    private final double increasePerAck;
+    private final int burst;
+    private final long backoffIntervalNanos;
+    private final Map<Integer, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a pacer with defaults suited to the access controllers: 200 frames/s per board to
+     * start with, between 20 and 2000 frames/s, +2 frames/s per acknowledgement, bursts of up to
+     * 16 frames and at most one halving per 50 ms.
+     */
+    public SendPacer() {
+        this(200, 20, 2000, 2, 16, 50);
+    }
+
+    /**
+     * @param initialRate         The rate of a board not heard from yet, in frames per second.
+     * @param minRate             The rate is never halved below this.
+     * @param maxRate             The rate never grows above this.
+     * @param increasePerAck      How much every acknowledged command raises the rate.
+     * @param burst               The bucket size: how many frames may go out back to back.
+     * @param backoffIntervalMillis Losses within this interval of a halving do not halve again;
+     *                            about one acknowledgement timeout.
+     */
+    public SendPacer(double initialRate, double minRate, double maxRate, double increasePerAck, int burst,
+                     long backoffIntervalMillis) {
+        this.initialRate = initialRate;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increasePerAck = increasePerAck;
+        this.burst = burst;
+        this.backoffIntervalNanos = TimeUnit.MILLISECONDS.toNanos(backoffIntervalMillis);
+    }
+
+    /**
+     * @return How long to wait before the next frame may be sent to the board; 0 if it may go now.
+     */
+    public long delayNanos(BoardConfig board) {
+        return bucket(board).delayNanos(System.nanoTime());
+    }
+
+    /**
+     * @return The number of frames that may be sent to the board right now.
+     */
+    public int available(BoardConfig board) {
+        return bucket(board).available(System.nanoTime());
+    }
+
+    /**
+     * Takes a token for a frame about to be sent. The bucket may go into debt (e.g. when a batch
+     * coalesces into more frames than expected); the debt delays the following frames.
+     */
+    public void consume(BoardConfig board) {
+        bucket(board).consume(System.nanoTime());
+    }
+
+    /**
+     * @return The board's current rate in frames per second.
+     */
+    public double rate(BoardConfig board) {
+        return bucket(board).rate;
+    }
+
+    @Override
+    public void onDelivered(BoardConfig board) {
+        bucket(board).increase();
+    }
+
+    @Override
+    public void onLost(BoardConfig board) {
+        if (bucket(board).decrease(System.nanoTime())) {
+            Metrics.board(board).rateDecreases.increment();
+        }
+    }
+
+    private Bucket bucket(BoardConfig board) {
+        Bucket bucket = buckets.get(board.serialNumber);
+        return bucket != null ? bucket : buckets.computeIfAbsent(board.serialNumber, serial -> new Bucket());
+    }
+
+    private final class Bucket {
+        double rate = initialRate;
+        double tokens = burst;
+        long refilledNanos = System.nanoTime();
+        long lastDecreaseNanos = refilledNanos - backoffIntervalNanos;
+
+        synchronized long delayNanos(long now) {
+            refill(now);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / rate * 1e9);
+        }
+
+        synchronized int available(long now) {
+            refill(now);
+            return (int) Math.max(0, tokens);
+        }
+
+        synchronized void consume(long now) {
+            refill(now);
+            tokens = Math.max(tokens - 1, -burst);
+        }
+
+        synchronized void increase() {
+            rate = Math.min(maxRate, rate + increasePerAck);
+        }
+
+        synchronized boolean decrease(long now) {
+            if (now - lastDecreaseNanos < backoffIntervalNanos) {
+                return false;
+            }
+            lastDecreaseNanos = now;
+            refill(now);
+            rate = Math.max(minRate, rate / 2);
+            tokens = Math.min(tokens, 1);
+            return true;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledNanos) * rate / 1e9);
+            refilledNanos = now;
+        }
+    }
+}
@@ -3,18 +3,75 @@ package org.example.network;
 import org.example.config.BoardConfig;
 
 import java.io.IOException;
-import java.net.*;
+import java.nio.ByteBuffer;
 
+/**
+ * Static entry point for sending frames to the controller boards.
+ * All sends go through one shared {@link UdpTransport}, which is opened on first use.
+ */
 public class UDPClient {
 
+    private static volatile UdpTransport transport;
+    private static volatile CommandTracker tracker;
+    private static volatile SendPacer pacer;
+
     public static void send(BoardConfig cfg, byte[] data) throws IOException {
-        DatagramSocket socket = new DatagramSocket();
-        InetAddress addr = InetAddress.getByName(cfg.ip);
+        transport().send(cfg, data);
+    }
+
+    public static void send(BoardConfig cfg, ByteBuffer frame) throws IOException {
+        transport().send(cfg, frame);
+    }
 
-        DatagramPacket packet = new DatagramPacket(data, data.length, addr, cfg.port);
+    /**
+     * @return The shared transport, opening it if this is the first call.
+     */
+    public static UdpTransport transport() throws IOException {
+        UdpTransport current = transport;
+        if (current == null) {
+            synchronized (UDPClient.class) {
+                current = transport;
+                if (current == null) {
+                    current = new UdpTransport();
+                    transport = current;
+                }
+            }
+        }
+        return current;
+    }
 
-        socket.send(packet);
-        socket.close();
+    /**
+     * @return The shared acknowledgement tracker on top of the shared transport, started on first use.
+     */
+    public static CommandTracker tracker() throws IOException {
+        CommandTracker current = tracker;
+        if (current == null) {
+            synchronized (UDPClient.class) {
+                current = tracker;
+                if (current == null) {
+                    current = new CommandTracker(transport());
+                    current.addDeliveryListener(pacer());
+                    tracker = current;
+                }
+            }
+        }
+        return current;
     }
 
+    /**
+     * @return The shared per-board send pacer, fed by the shared tracker's acknowledgements.
+     */
+    public static SendPacer pacer() {
+        SendPacer current = pacer;
+        if (current == null) {
+            synchronized (UDPClient.class) {
+                current = pacer;
+                if (current == null) {
+                    current = new SendPacer();
+                    pacer = current;
+                }
+            }
+        }
+        return current;
+    }
 }
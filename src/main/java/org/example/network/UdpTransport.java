@@ -0,0 +1,128 @@
+package org.example.network;
+
+import org.example.config.BoardConfig;
+import org.example.metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * A long-lived UDP transport to the controller boards.
+ * One non-blocking DatagramChannel is opened once and shared by all threads, instead of
+ * binding a new DatagramSocket for every command. Frames given as byte arrays are copied
+ * into a per-thread direct buffer, so a steady-state send does not allocate.
+ */
+public class UdpTransport implements Closeable {
+
+    // Large enough for any controller frame (they are 64 bytes).
+    private static final int MAX_DATAGRAM_SIZE = 1024;
+
+    // How often to retry when the socket send buffer is momentarily full.
+    private static final int SEND_SPIN_LIMIT = 10_000;
+
+    private final DatagramChannel channel;
+    private final ThreadLocal<ByteBuffer> sendBuffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE));
+
+    /**
+     * Opens a transport bound to an ephemeral local port.
+     */
+    public UdpTransport() throws IOException {
+        this(new InetSocketAddress(0));
+    }
+
+    /**
+     * Opens a transport bound to the given local address.
+     *
+     * @param bindAddress The local address to bind to.
+     */
+    public UdpTransport(InetSocketAddress bindAddress) throws IOException {
+        this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        // The boards are often addressed via 255.255.255.255, which needs SO_BROADCAST on a channel.
+        channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+        channel.configureBlocking(false);
+        channel.bind(bindAddress);
+    }
+
+    /**
+     * Sends a frame held in a byte array.
+     *
+     * @param cfg  The target controller board.
+     * @param data The frame to send.
+     * @throws IOException If the frame could not be handed to the socket.
+     */
+    public void send(BoardConfig cfg, byte[] data) throws IOException {
+        ByteBuffer buffer = sendBuffers.get();
+        if (data.length > buffer.capacity()) {
+            send(cfg, ByteBuffer.wrap(data));
+            return;
+        }
+        buffer.clear();
+        buffer.put(data).flip();
+        send(cfg, buffer);
+    }
+
+    /**
+     * Sends the remaining bytes of a buffer as one datagram.
+     * The buffer's position is advanced past the sent bytes.
+     *
+     * @param cfg   The target controller board.
+     * @param frame The frame to send, positioned at its first byte.
+     * @throws IOException If the frame could not be handed to the socket.
+     */
+    public void send(BoardConfig cfg, ByteBuffer frame) throws IOException {
+        InetSocketAddress target = cfg.socketAddress();
+        if (target.isUnresolved()) {
+            Metrics.board(cfg).sendFailures.increment();
+            throw new IOException("Cannot resolve address '" + cfg.ip + "' of board SN " + cfg.serialNumber);
+        }
+        int spins = 0;
+        // A non-blocking channel returns 0 when the socket buffer has no room; retry briefly.
+        while (channel.send(frame, target) == 0) {
+            if (++spins > SEND_SPIN_LIMIT) {
+                Metrics.board(cfg).sendFailures.increment();
+                throw new IOException("UDP send buffer full, frame for board SN " + cfg.serialNumber + " dropped");
+            }
+            Thread.onSpinWait();
+        }
+        Metrics.board(cfg).framesSent.increment();
+    }
+
+    /**
+     * Receives one datagram if one is waiting.
+     *
+     * @param dst The buffer to receive into.
+     * @return The sender's address, or null if no datagram was available.
+     */
+    public SocketAddress receive(ByteBuffer dst) throws IOException {
+        return channel.receive(dst);
+    }
+
+    /**
+     * Registers the transport's channel for read readiness, for a receiver thread that waits
+     * on the selector instead of polling {@link #receive(ByteBuffer)}.
+     */
+    SelectionKey registerForReads(Selector selector) throws IOException {
+        return channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * @return The local address the transport is bound to.
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,555 @@
+package org.example.persistence;
+
+import org.example.logging.EventLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only journal of RFID/product import and export events.
+ *
+ * Events are appended to memory-mapped segment files ({@code journal-N.log}). A background
+ * committer thread forces the current segment to disk; every writer waiting in
+ * {@link #awaitDurable(long)} is released by the same force, so a burst of scans costs one
+ * fsync instead of one per scan (group commit).
+ *
+ * A snapshot ({@code snapshot-N.dat}) holds the complete association map as of the start of
+ * segment N; older segments and snapshots are deleted once it is written. Recovery loads the
+ * newest snapshot and replays only the segments after it, so startup time depends on the
+ * number of live associations, not on the length of the history.
+ *
+ * A failed force is permanent: the pages it covered may never reach the disk, so no event after
+ * the last successful force is reported durable again and further appends are refused.
+ */
+public class InventoryJournal implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final byte IMPORT = 1;
+    private static final byte EXPORT = 2;
+    private static final int RECORD_HEADER = 8; // int payload length + int CRC32 of the payload
+    private static final int SNAPSHOT_MAGIC = 0x534E4150; // "SNAP"
+
+    /**
+     * The longest tag or product ID, in UTF-8 bytes, that can be journaled. Records store the
+     * lengths as signed shorts, and snapshots use {@link DataOutputStream#writeUTF(String)},
+     * whose modified UTF-8 is at most twice as long and limited to 65,535 bytes.
+     */
+    public static final int MAX_FIELD_BYTES = Short.MAX_VALUE;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Map<String, String> recoveredState;
+
+    // --- Append state, guarded by appendLock ---
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final CRC32 crc = new CRC32();
+    private long segmentIndex;
+    private MappedByteBuffer segment;
+    private int writePosition;
+    private long appendedSequence;
+
+    // Held shared by every change (journal record + the caller's state update) and exclusively
+    // by a snapshot while it rolls, so the state it reads contains every event before the roll.
+    private final ReentrantReadWriteLock changeLock = new ReentrantReadWriteLock();
+
+    // --- Group commit state, guarded by commitLock ---
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Condition commitRequested = commitLock.newCondition();
+    private final Condition commitDone = commitLock.newCondition();
+    private boolean commitPending;
+    private volatile long durableSequence;
+    private volatile IOException commitFailure;
+    private volatile boolean running = true;
+
+    private final Thread committer;
+    private final long commitIntervalMillis;
+    private ScheduledExecutorService snapshotter;
+
+    /**
+     * Opens (or creates) a journal with default settings and recovers its state.
+     *
+     * @param directory The directory holding the journal segments and snapshots.
+     */
+    public static InventoryJournal open(Path directory) throws IOException {
+        return new InventoryJournal(directory, DEFAULT_SEGMENT_SIZE, 10);
+    }
+
+    /**
+     * Opens (or creates) a journal and recovers its state.
+     * Appends always go to a fresh segment, so a torn record at the end of the
+     * previous run is never extended.
+     *
+     * @param directory            The directory holding the journal segments and snapshots.
+     * @param segmentSize          The size of one mapped segment file in bytes.
+     * @param commitIntervalMillis How often the committer forces the journal even if nobody waits.
+     */
+    public InventoryJournal(Path directory, int segmentSize, long commitIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.commitIntervalMillis = commitIntervalMillis;
+        Files.createDirectories(directory);
+
+        this.recoveredState = new HashMap<>();
+        long lastSegment = recover(recoveredState);
+        openSegment(lastSegment + 1);
+
+        this.committer = new Thread(this::commitLoop, "journal-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * @return The RFID-to-product associations rebuilt from the snapshot and journal on open.
+     */
+    public Map<String, String> recoveredState() {
+        return Collections.unmodifiableMap(recoveredState);
+    }
+
+    /**
+     * Starts a change of the journaled state. The records appended until {@link #endChange()}
+     * must be applied to the state passed to {@link #snapshot(Supplier)} before {@link #endChange()}
+     * is called; a snapshot then never misses an event whose segment it replaces.
+     */
+    public void beginChange() {
+        changeLock.readLock().lock();
+    }
+
+    /**
+     * Ends a change started with {@link #beginChange()}.
+     */
+    public void endChange() {
+        changeLock.readLock().unlock();
+    }
+
+    /**
+     * Appends an import event. The event is not durable until {@link #awaitDurable(long)} returns.
+     *
+     * @return The sequence number of the event, to pass to {@link #awaitDurable(long)}.
+     * @throws IOException If the journal failed, or a field is longer than {@value #MAX_FIELD_BYTES} bytes.
+     */
+    public long recordImport(String rfidTag, String productId) throws IOException {
+        return append(IMPORT, rfidTag, productId);
+    }
+
+    /**
+     * Appends an export event. The event is not durable until {@link #awaitDurable(long)} returns.
+     *
+     * @return The sequence number of the event, to pass to {@link #awaitDurable(long)}.
+     */
+    public long recordExport(String rfidTag) throws IOException {
+        return append(EXPORT, rfidTag, "");
+    }
+
+    private long append(byte type, String rfidTag, String productId) throws IOException {
+        byte[] rfid = rfidTag.getBytes(StandardCharsets.UTF_8);
+        byte[] product = productId.getBytes(StandardCharsets.UTF_8);
+        if (rfid.length > MAX_FIELD_BYTES || product.length > MAX_FIELD_BYTES) {
+            // Would not be read back on recovery, nor fit in a snapshot.
+            throw new IOException("RFID tag or product ID longer than " + MAX_FIELD_BYTES + " bytes cannot be journaled");
+        }
+        int payloadLength = 1 + 2 + rfid.length + 2 + product.length;
+        int recordLength = RECORD_HEADER + payloadLength;
+        if (recordLength > segmentSize) {
+            throw new IOException("Journal record of " + recordLength + " bytes exceeds the segment size");
+        }
+
+        appendLock.lock();
+        try {
+            if (!running) {
+                throw new IOException("Journal is closed");
+            }
+            if (commitFailure != null) {
+                throw new IOException("Journal commit failed", commitFailure);
+            }
+            if (writePosition + recordLength > segmentSize) {
+                rollSegment();
+            }
+            int base = writePosition;
+            int p = base + RECORD_HEADER;
+            segment.put(p, type);
+            segment.putShort(p + 1, (short) rfid.length);
+            segment.put(p + 3, rfid);
+            segment.putShort(p + 3 + rfid.length, (short) product.length);
+            segment.put(p + 5 + rfid.length, product);
+
+            crc.reset();
+            crc.update(segment.slice(base + RECORD_HEADER, payloadLength));
+            segment.putInt(base + 4, (int) crc.getValue());
+            // The length goes in last: a zero length marks the end of the segment on replay.
+            segment.putInt(base, payloadLength);
+
+            writePosition = base + recordLength;
+            return ++appendedSequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the event with the given sequence number (and all before it) is on disk.
+     * Concurrent callers are satisfied by a single force of the journal.
+     *
+     * @throws IOException If the force covering the event failed.
+     */
+    public void awaitDurable(long sequence) throws IOException {
+        if (durableSequence >= sequence) {
+            return;
+        }
+        if (commitFailure != null) {
+            throw new IOException("Journal commit failed", commitFailure);
+        }
+        commitLock.lock();
+        try {
+            commitPending = true;
+            commitRequested.signal();
+            while (durableSequence < sequence) {
+                if (commitFailure != null) {
+                    throw new IOException("Journal commit failed", commitFailure);
+                }
+                if (!running) {
+                    throw new IOException("Journal is closed");
+                }
+                commitDone.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for journal commit");
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void commitLoop() {
+        while (running) {
+            commitLock.lock();
+            try {
+                if (!commitPending) {
+                    commitRequested.await(commitIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+                commitPending = false;
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                commitLock.unlock();
+            }
+            commit();
+        }
+        commit();
+    }
+
+    private void commit() {
+        long target;
+        MappedByteBuffer toForce;
+        appendLock.lock();
+        try {
+            target = appendedSequence;
+            toForce = segment;
+        } finally {
+            appendLock.unlock();
+        }
+        boolean forced = false;
+        if (target > durableSequence && commitFailure == null) {
+            try {
+                // Earlier segments were forced when they were rolled.
+                toForce.force();
+                forced = true;
+            } catch (UncheckedIOException e) {
+                commitFailure = e.getCause();
+            }
+        }
+        commitLock.lock();
+        try {
+            // A failed force leaves durableSequence where it was: its waiters get commitFailure.
+            if (forced && target > durableSequence) {
+                durableSequence = target;
+            }
+            commitDone.signalAll();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Starts writing a snapshot every {@code intervalMillis}, provided new events were
+     * appended since the previous one.
+     *
+     * @param state          Supplies the current associations; read while appends continue.
+     * @param intervalMillis The time between two snapshot attempts.
+     */
+    public void startPeriodicSnapshots(Supplier<Map<String, String>> state, long intervalMillis) {
+        snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                if (hasEventsInCurrentSegment()) {
+                    snapshot(state);
+                }
+            } catch (IOException e) {
+                EventLog.error("Journal snapshot failed: {}", e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean hasEventsInCurrentSegment() {
+        appendLock.lock();
+        try {
+            return writePosition > 0;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a compacted snapshot and deletes the history it replaces.
+     *
+     * The journal first rolls to a new segment N, waiting for the changes in progress (see
+     * {@link #beginChange()}), so the state contains every event of the earlier segments. It may
+     * already contain some events of segment N; replaying them again on recovery is harmless
+     * because an import sets and an export removes a tag, whatever the state before.
+     *
+     * @param state Supplies the current associations.
+     */
+    public void snapshot(Supplier<Map<String, String>> state) throws IOException {
+        long snapshotSegment;
+        changeLock.writeLock().lock();
+        appendLock.lock();
+        try {
+            rollSegment();
+            snapshotSegment = segmentIndex;
+        } finally {
+            appendLock.unlock();
+            changeLock.writeLock().unlock();
+        }
+
+        Path target = snapshotPath(snapshotSegment);
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        Map<String, String> current = state.get();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            List<Map.Entry<String, String>> entries = new ArrayList<>(current.entrySet());
+            out.writeInt(entries.size());
+            for (Map.Entry<String, String> entry : entries) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // Everything before the snapshot's segment is now redundant.
+        for (Path file : listFiles()) {
+            long index = fileIndex(file);
+            if (index >= 0 && index < snapshotSegment) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    // Must be called with appendLock held.
+    private void rollSegment() throws IOException {
+        if (segment != null) {
+            try {
+                segment.force();
+            } catch (UncheckedIOException e) {
+                // The committer only forces the newest segment, so this one can never be made durable.
+                commitFailure = e.getCause();
+                throw e.getCause();
+            }
+        }
+        openSegment(segmentIndex + 1);
+    }
+
+    private void openSegment(long index) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        this.segmentIndex = index;
+        this.writePosition = 0;
+    }
+
+    /**
+     * Loads the newest snapshot and replays all later segments into {@code state}.
+     *
+     * @return The index of the last segment on disk (or of the snapshot if there is none after it).
+     */
+    private long recover(Map<String, String> state) throws IOException {
+        long snapshotSegment = -1;
+        List<Long> segments = new ArrayList<>();
+        for (Path file : listFiles()) {
+            String name = file.getFileName().toString();
+            if (name.startsWith("snapshot-") && name.endsWith(".dat")) {
+                snapshotSegment = Math.max(snapshotSegment, fileIndex(file));
+            } else if (name.startsWith("journal-") && name.endsWith(".log")) {
+                segments.add(fileIndex(file));
+            }
+        }
+        Collections.sort(segments);
+
+        long last = 0;
+        if (snapshotSegment >= 0) {
+            loadSnapshot(snapshotPath(snapshotSegment), state);
+            last = snapshotSegment;
+        }
+        for (long index : segments) {
+            if (index >= snapshotSegment) {
+                // Segments without events (e.g. from a run that only scanned free tags) are dropped.
+                if (replaySegment(segmentPath(index), state) == 0 && index > snapshotSegment) {
+                    Files.delete(segmentPath(index));
+                }
+                last = Math.max(last, index);
+            }
+        }
+        return last;
+    }
+
+    private static void loadSnapshot(Path path, Map<String, String> state) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a journal snapshot: " + path);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                state.put(in.readUTF(), in.readUTF());
+            }
+        }
+    }
+
+    /**
+     * @return The number of events replayed from the segment.
+     */
+    private static int replaySegment(Path path, Map<String, String> state) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        CRC32 crc = new CRC32();
+        int position = 0;
+        int events = 0;
+        while (position + RECORD_HEADER <= data.limit()) {
+            int payloadLength = data.getInt(position);
+            if (payloadLength <= 0 || position + RECORD_HEADER + payloadLength > data.limit()) {
+                break; // End of the written part of the segment.
+            }
+            int p = position + RECORD_HEADER;
+            crc.reset();
+            crc.update(data.slice(p, payloadLength));
+            if ((int) crc.getValue() != data.getInt(position + 4)) {
+                break; // Torn record from a crash; nothing after it was acknowledged.
+            }
+            byte type = data.get(p);
+            // Read unsigned: before MAX_FIELD_BYTES was enforced, longer fields could be written.
+            int rfidLength = Short.toUnsignedInt(data.getShort(p + 1));
+            int productLength = 3 + rfidLength + 2 <= payloadLength ? Short.toUnsignedInt(data.getShort(p + 3 + rfidLength)) : -1;
+            if (5 + rfidLength + productLength != payloadLength || rfidLength > MAX_FIELD_BYTES || productLength > MAX_FIELD_BYTES) {
+                // Such a record is dropped: its length may have wrapped, and it would not fit in a snapshot.
+                EventLog.warn("Skipping unreadable journal record at {} in {}", position, path);
+                position = p + payloadLength;
+                continue;
+            }
+            String rfid = readString(data, p + 3, rfidLength);
+            if (type == IMPORT) {
+                state.put(rfid, readString(data, p + 5 + rfidLength, productLength));
+            } else if (type == EXPORT) {
+                state.remove(rfid);
+            }
+            position = p + payloadLength;
+            events++;
+        }
+        return events;
+    }
+
+    private static String readString(MappedByteBuffer data, int index, int length) {
+        byte[] bytes = new byte[length];
+        data.get(index, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<Path> listFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "{journal-*.log,snapshot-*.dat}")) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    private static long fileIndex(Path file) {
+        String name = file.getFileName().toString();
+        int dash = name.indexOf('-');
+        int dot = name.indexOf('.');
+        try {
+            return Long.parseLong(name.substring(dash + 1, dot));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("journal-%012d.log", index));
+    }
+
+    private Path snapshotPath(long index) {
+        return directory.resolve(String.format("snapshot-%012d.dat", index));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (snapshotter != null) {
+            snapshotter.shutdownNow();
+        }
+        appendLock.lock();
+        try {
+            running = false;
+        } finally {
+            appendLock.unlock();
+        }
+        commitLock.lock();
+        try {
+            commitRequested.signal();
+        } finally {
+            commitLock.unlock();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (commitFailure != null) {
+            throw commitFailure;
+        }
+    }
+}
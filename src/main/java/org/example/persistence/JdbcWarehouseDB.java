@@ -0,0 +1,366 @@
+package org.example.persistence;
+
+import org.example.config.BoardConfig;
+import org.example.logging.EventLog;
+import org.example.protocol.PacketBuilder;
+import org.example.service.Location;
+import org.example.service.WarehouseDB;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warehouse layout stored in an embedded SQL database (H2 by default, e.g.
+ * {@code jdbc:h2:./data/warehouse}), in one table:
+ * <pre>
+ * warehouse_location(qr_code VARCHAR PRIMARY KEY, board_serial INT, relay INT)
+ * </pre>
+ * Lookups use prepared statements on a small pool of connections, so concurrent scans do not
+ * queue behind one connection; writes go in JDBC batches inside one transaction.
+ * Every lookup is a database round trip; put a {@link org.example.service.CachingWarehouseDB}
+ * in front of it on the scan path.
+ *
+ * The upsert uses H2's {@code MERGE ... KEY}; another database needs that statement adapted.
+ */
+public class JdbcWarehouseDB implements WarehouseDB, Closeable {
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS warehouse_location ("
+            + "qr_code VARCHAR(255) PRIMARY KEY, board_serial INT NOT NULL, relay INT NOT NULL)";
+    private static final String SELECT_ONE = "SELECT board_serial, relay FROM warehouse_location WHERE qr_code = ?";
+    private static final String UPSERT = "MERGE INTO warehouse_location (qr_code, board_serial, relay) KEY (qr_code) VALUES (?, ?, ?)";
+    private static final String DELETE = "DELETE FROM warehouse_location WHERE qr_code = ?";
+    private static final String COUNT = "SELECT COUNT(*) FROM warehouse_location";
+
+    private static final int BATCH_SIZE = 1000;
+    // Bulk lookups bind this many QR codes per IN (...) query.
+    private static final int IN_LIST_SIZE = 100;
+
+    private final String url;
+    private final Map<Integer, BoardConfig> boards = new HashMap<>();
+    private final BlockingQueue<Session> idle;
+    private final int maxConnections;
+    private final AtomicInteger opened = new AtomicInteger();
+    private final List<Session> sessions = new ArrayList<>(); // Guarded by itself.
+    private volatile boolean closed;
+
+    /**
+     * Opens the database and creates the table if it does not exist yet.
+     *
+     * @param url            The JDBC URL.
+     * @param boards         The controller boards the stored locations refer to.
+     * @param maxConnections The maximum number of connections used for concurrent lookups.
+     */
+    public JdbcWarehouseDB(String url, Collection<BoardConfig> boards, int maxConnections) throws SQLException {
+        this.url = url;
+        this.maxConnections = maxConnections;
+        this.idle = new ArrayBlockingQueue<>(maxConnections);
+        boards.forEach(board -> this.boards.put(board.serialNumber, board));
+        // The first connection creates the table, then becomes the first pooled one.
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        Session session = Session.of(connection);
+        opened.incrementAndGet();
+        sessions.add(session);
+        idle.add(session);
+    }
+
+    @Override
+    public Optional<Location> findLocationByQrCode(String qrCode) {
+        Session session = borrow();
+        try {
+            PreparedStatement select = session.selectOne;
+            select.setString(1, qrCode);
+            try (ResultSet row = select.executeQuery()) {
+                return row.next() ? Optional.ofNullable(toLocation(qrCode, row.getInt(1), row.getInt(2))) : Optional.empty();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Looking up '" + qrCode + "' failed: " + e.getMessage(), e);
+        } finally {
+            release(session);
+        }
+    }
+
+    /**
+     * Looks the QR codes up {@value #IN_LIST_SIZE} per query instead of one by one.
+     */
+    @Override
+    public Map<String, Location> findLocationsByQrCodes(Collection<String> qrCodes) {
+        Map<String, Location> found = new HashMap<>();
+        List<String> chunk = new ArrayList<>(IN_LIST_SIZE);
+        Session session = borrow();
+        try {
+            for (String qrCode : qrCodes) {
+                chunk.add(qrCode);
+                if (chunk.size() == IN_LIST_SIZE) {
+                    selectChunk(session.connection, chunk, found);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                selectChunk(session.connection, chunk, found);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Bulk lookup failed: " + e.getMessage(), e);
+        } finally {
+            release(session);
+        }
+        return found;
+    }
+
+    private void selectChunk(Connection connection, List<String> chunk, Map<String, Location> found) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT qr_code, board_serial, relay FROM warehouse_location WHERE qr_code IN (");
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        try (PreparedStatement select = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < chunk.size(); i++) {
+                select.setString(i + 1, chunk.get(i));
+            }
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    String qrCode = rows.getString(1);
+                    Location location = toLocation(qrCode, rows.getInt(2), rows.getInt(3));
+                    if (location != null) {
+                        found.put(qrCode, location);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds or replaces locations in batches of {@value #BATCH_SIZE}, all in one transaction.
+     *
+     * @param locations QR code to location.
+     */
+    public void putAll(Map<String, Location> locations) throws SQLException {
+        Session session = borrow();
+        Connection connection = session.connection;
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT)) {
+            connection.setAutoCommit(false);
+            int pending = 0;
+            for (Map.Entry<String, Location> entry : locations.entrySet()) {
+                upsert.setString(1, entry.getKey());
+                upsert.setInt(2, entry.getValue().getBoard().serialNumber);
+                upsert.setInt(3, entry.getValue().getRelayNumber());
+                upsert.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    upsert.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                upsert.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+            release(session);
+        }
+    }
+
+    /**
+     * Loads a bulk location file in batches of {@value #BATCH_SIZE}, all in one transaction, in the format of
+     * {@link org.example.service.OffHeapWarehouseDB#load}: one {@code qrCode,boardSerialNumber,relayNumber} per line;
+     * blank lines and lines starting with '#' are skipped. If any line is rejected, nothing is loaded.
+     *
+     * @return The number of location lines loaded.
+     * @throws IOException If the file cannot be read, is malformed, references an unknown board or a relay
+     *                     outside 1-{@value PacketBuilder#MAX_MASK_RELAY}.
+     */
+    public int load(Path file) throws IOException, SQLException {
+        int loaded = 0;
+        Session session = borrow();
+        Connection connection = session.connection;
+        try {
+            connection.setAutoCommit(false);
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+                 PreparedStatement upsert = connection.prepareStatement(UPSERT)) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (line.isBlank() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] fields = line.split(",");
+                    if (fields.length != 3) {
+                        throw new IOException("Malformed location at line " + lineNumber + ": " + line);
+                    }
+                    BoardConfig board;
+                    int relay;
+                    try {
+                        board = boards.get(Integer.parseInt(fields[1].trim()));
+                        relay = Integer.parseInt(fields[2].trim());
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Malformed location at line " + lineNumber + ": " + line);
+                    }
+                    if (board == null) {
+                        throw new IOException("Unknown board SN " + fields[1].trim() + " at line " + lineNumber);
+                    }
+                    if (relay < 1 || relay > PacketBuilder.MAX_MASK_RELAY) {
+                        // Same range as BoardRegistry: higher floors are the OFF commands of relays 1-40.
+                        throw new IOException("Relay number must be 1-" + PacketBuilder.MAX_MASK_RELAY + " at line " + lineNumber + ": " + line);
+                    }
+                    upsert.setString(1, fields[0].trim());
+                    upsert.setInt(2, board.serialNumber);
+                    upsert.setInt(3, relay);
+                    upsert.addBatch();
+                    if (++loaded % BATCH_SIZE == 0) {
+                        upsert.executeBatch();
+                    }
+                }
+                if (loaded % BATCH_SIZE != 0) {
+                    upsert.executeBatch();
+                }
+            }
+            connection.commit();
+        } catch (IOException | SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+            release(session);
+        }
+        return loaded;
+    }
+
+    /**
+     * Deletes the location of a QR code; caches in front of this database must be invalidated by the caller.
+     *
+     * @return True if the QR code had a location.
+     */
+    public boolean remove(String qrCode) throws SQLException {
+        Session session = borrow();
+        try (PreparedStatement delete = session.connection.prepareStatement(DELETE)) {
+            delete.setString(1, qrCode);
+            return delete.executeUpdate() > 0;
+        } finally {
+            release(session);
+        }
+    }
+
+    public int size() throws SQLException {
+        Session session = borrow();
+        try (Statement statement = session.connection.createStatement();
+             ResultSet row = statement.executeQuery(COUNT)) {
+            row.next();
+            return row.getInt(1);
+        } finally {
+            release(session);
+        }
+    }
+
+    private Location toLocation(String qrCode, int boardSerial, int relay) {
+        BoardConfig board = boards.get(boardSerial);
+        if (board == null) {
+            EventLog.warn("Location of '{}' refers to unknown board SN {}.", qrCode, boardSerial);
+            return null;
+        }
+        return new Location(board, relay);
+    }
+
+    /**
+     * Takes an idle connection, opens a new one while under the limit, or waits for one.
+     */
+    private Session borrow() {
+        if (closed) {
+            throw new IllegalStateException("Warehouse database is closed");
+        }
+        Session session = idle.poll();
+        if (session != null) {
+            return session;
+        }
+        if (opened.incrementAndGet() <= maxConnections) {
+            try {
+                session = Session.of(DriverManager.getConnection(url));
+            } catch (SQLException e) {
+                opened.decrementAndGet();
+                throw new IllegalStateException("Opening " + url + " failed: " + e.getMessage(), e);
+            }
+            synchronized (sessions) {
+                sessions.add(session);
+            }
+            return session;
+        }
+        opened.decrementAndGet();
+        try {
+            return idle.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    private void release(Session session) {
+        idle.offer(session);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (sessions) {
+            for (Session session : sessions) {
+                try {
+                    session.connection.close();
+                } catch (SQLException e) {
+                    EventLog.warn("Closing a warehouse database connection failed: {}", e.getMessage());
+                }
+            }
+            sessions.clear();
+        }
+    }
+
+    /**
+     * A pooled connection with its prepared lookup statement.
+     */
+    private static final class Session {
+        final Connection connection;
+        final PreparedStatement selectOne;
+
+        private Session(Connection connection, PreparedStatement selectOne) {
+            this.connection = connection;
+            this.selectOne = selectOne;
+        }
+
+        /**
+         * Prepares the lookup on a new connection; the connection is closed if that fails.
+         */
+        static Session of(Connection connection) throws SQLException {
+            try {
+                return new Session(connection, connection.prepareStatement(SELECT_ONE));
+            } catch (SQLException | RuntimeException e) {
+                connection.close();
+                throw e;
+            }
+        }
+    }
+}
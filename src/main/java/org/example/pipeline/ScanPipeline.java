@@ -0,0 +1,307 @@
+package org.example.pipeline;
+
+import org.example.logging.EventLog;
+import org.example.metrics.Metrics;
+
+import java.io.Closeable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands scans from the threads that read them (console, network scanners) to a fixed set of
+ * consumer threads through a preallocated ring buffer, in the style of the LMAX Disruptor.
+ *
+ * Producers claim a sequence number, fill in the slot it maps to and publish it; they never do
+ * any I/O or take a lock on the way. Every consumer reads every slot, but handles only the scans
+ * of its own scanners (by hash of the scanner ID), so the scans of one scanner are handled by one
+ * thread in the order they were published. A consumer takes all scans published so far as one batch
+ * and releases their slots after the batch. When the ring is full, {@link #publish} waits for the
+ * slowest consumer (backpressure) and {@link #tryPublish} gives up.
+ */
+public class ScanPipeline implements Closeable {
+
+    /**
+     * Handles the scans, e.g. {@code inventoryService::handleInput}.
+     */
+    public interface Handler {
+        /**
+         * @param receivedNanos The {@link System#nanoTime()} at which the scan was published.
+         */
+        void onScan(String scannerId, String line, long receivedNanos);
+    }
+
+    private static final int MAX_BATCH = 256;
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+    private static final long BLOCK_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long CLOSE_TIMEOUT_MS = 2000;
+
+    private final int capacity;
+    private final int mask;
+    private final Slot[] slots;
+    // The sequence last published in each slot; a slot is readable when it holds the sequence asked for.
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final Consumer[] consumers;
+    private final Handler handler;
+    private final WaitStrategy waitStrategy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition scansAvailable = lock.newCondition();
+    private final AtomicInteger blockedConsumers = new AtomicInteger();
+    private volatile long gateCache; // The slowest consumer's position, as last seen by a producer.
+    private volatile boolean running = true;
+
+    /**
+     * Creates the ring and starts the consumers.
+     *
+     * @param capacity      The number of slots; a power of two.
+     * @param consumerCount The number of threads handling scans.
+     * @param waitStrategy  How idle consumers wait for scans.
+     * @param handler       Handles every scan.
+     */
+    public ScanPipeline(int capacity, int consumerCount, WaitStrategy waitStrategy, Handler handler) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        if (consumerCount <= 0) {
+            throw new IllegalArgumentException("At least one consumer is needed: " + consumerCount);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.handler = handler;
+        this.waitStrategy = waitStrategy;
+        this.slots = new Slot[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+        this.consumers = new Consumer[consumerCount];
+        for (int i = 0; i < consumerCount; i++) {
+            consumers[i] = new Consumer(i);
+        }
+        for (Consumer consumer : consumers) {
+            consumer.thread.start();
+        }
+    }
+
+    /**
+     * Publishes a scan, waiting for room if the ring is full.
+     *
+     * @throws RejectedExecutionException If the pipeline is closed.
+     */
+    public void publish(String scannerId, String line) {
+        long receivedNanos = System.nanoTime();
+        publish(claim(true), scannerId, line, receivedNanos);
+    }
+
+    /**
+     * Publishes a scan unless the ring is full.
+     *
+     * @return False if the ring was full and the scan was not published.
+     * @throws RejectedExecutionException If the pipeline is closed.
+     */
+    public boolean tryPublish(String scannerId, String line) {
+        long receivedNanos = System.nanoTime();
+        long sequence = claim(false);
+        if (sequence < 0) {
+            return false;
+        }
+        publish(sequence, scannerId, line, receivedNanos);
+        return true;
+    }
+
+    /**
+     * @return The number of scans published but not yet released by every consumer.
+     */
+    public long backlog() {
+        return claimed.get() - slowestConsumer();
+    }
+
+    private long claim(boolean wait) {
+        boolean waited = false;
+        while (true) {
+            if (!running) {
+                throw new RejectedExecutionException("Scan pipeline is closed");
+            }
+            long next = claimed.get();
+            // The slot of `next` is free once every consumer is past the sequence one lap before it.
+            if (next - capacity >= gateCache) {
+                long gate = slowestConsumer();
+                gateCache = gate;
+                if (next - capacity >= gate) {
+                    if (!wait) {
+                        return -1;
+                    }
+                    if (!waited) {
+                        waited = true;
+                        Metrics.SCAN_PIPELINE_FULL.increment();
+                    }
+                    LockSupport.parkNanos(FULL_PARK_NANOS);
+                    continue;
+                }
+            }
+            if (claimed.compareAndSet(next, next + 1)) {
+                if (!running) {
+                    // Closed since the check above: the consumers may have stopped at this sequence
+                    // already. The slot is published empty, so the ones still running do not wait for it.
+                    publish(next, null, null, 0);
+                    throw new RejectedExecutionException("Scan pipeline is closed");
+                }
+                return next;
+            }
+        }
+    }
+
+    private void publish(long sequence, String scannerId, String line, long receivedNanos) {
+        Slot slot = slots[(int) sequence & mask];
+        slot.scannerId = scannerId;
+        slot.line = line;
+        slot.receivedNanos = receivedNanos;
+        slot.partition = scannerId == null ? -1 : Math.floorMod(scannerId.hashCode(), consumers.length); // -1: no consumer handles it
+        published.set((int) sequence & mask, sequence); // Volatile write: makes the fields above visible.
+        if (blockedConsumers.get() > 0) {
+            lock.lock();
+            try {
+                scansAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private long slowestConsumer() {
+        long slowest = Long.MAX_VALUE;
+        for (Consumer consumer : consumers) {
+            slowest = Math.min(slowest, consumer.position.get());
+        }
+        return slowest;
+    }
+
+    /**
+     * @return The sequence after the last one of the contiguous run of published scans starting at {@code next}.
+     */
+    private long availableFrom(long next) {
+        long end = next;
+        while (end - next < MAX_BATCH && published.get((int) end & mask) == end) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Stops accepting scans, lets the consumers handle the ones already published and stops them.
+     */
+    @Override
+    public void close() {
+        running = false;
+        lock.lock();
+        try {
+            scansAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+        for (Consumer consumer : consumers) {
+            try {
+                consumer.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private final class Consumer {
+        final int partition;
+        final Thread thread;
+        // The next sequence this consumer will read; every slot before it is released.
+        final AtomicLong position = new AtomicLong();
+
+        Consumer(int partition) {
+            this.partition = partition;
+            this.thread = new Thread(this::run, "scan-consumer-" + partition);
+            thread.setDaemon(true);
+        }
+
+        void run() {
+            long next = 0;
+            int idle = 0;
+            while (true) {
+                long end = availableFrom(next);
+                if (end == next) {
+                    if (!running && claimed.get() == next) {
+                        return; // Closed and everything published is handled.
+                    }
+                    waitForScans(next, idle++);
+                    continue;
+                }
+                idle = 0;
+                for (long sequence = next; sequence < end; sequence++) {
+                    Slot slot = slots[(int) sequence & mask];
+                    if (slot.partition == partition) {
+                        handle(slot);
+                    }
+                }
+                next = end;
+                position.lazySet(next);
+            }
+        }
+
+        private void handle(Slot slot) {
+            Metrics.SCAN_QUEUEING.record(System.nanoTime() - slot.receivedNanos);
+            try {
+                handler.onScan(slot.scannerId, slot.line, slot.receivedNanos);
+            } catch (RuntimeException e) {
+                EventLog.error("Handling scan from '{}' failed: {}", slot.scannerId, e.getMessage());
+            }
+        }
+
+        private void waitForScans(long next, int idle) {
+            if (waitStrategy == WaitStrategy.BUSY_SPIN || idle < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else if (waitStrategy == WaitStrategy.YIELD
+                    || (waitStrategy == WaitStrategy.PARK && idle < SPIN_TRIES + YIELD_TRIES)) {
+                Thread.yield();
+            } else if (waitStrategy == WaitStrategy.PARK) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else {
+                block(next);
+            }
+        }
+
+        private void block(long next) {
+            lock.lock();
+            try {
+                blockedConsumers.incrementAndGet();
+                // Re-check under the lock: a producer that published before the increment did not signal.
+                if (running && published.get((int) next & mask) != next) {
+                    scansAvailable.awaitNanos(BLOCK_TIMEOUT_NANOS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                blockedConsumers.decrementAndGet();
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * One preallocated scan event; written by the producer that claimed it, then only read.
+     */
+    private static final class Slot {
+        String scannerId;
+        String line;
+        long receivedNanos;
+        int partition;
+    }
+}
@@ -0,0 +1,16 @@
+package org.example.pipeline;
+
+/**
+ * How a {@link ScanPipeline} consumer waits for the next scan when it has caught up.
+ * The strategies trade idle CPU for the latency of picking up a scan.
+ */
+public enum WaitStrategy {
+    /** Spin on the ring; lowest latency, but burns a core per consumer. Only for dedicated cores. */
+    BUSY_SPIN,
+    /** Spin briefly, then yield the CPU between checks. */
+    YIELD,
+    /** Spin and yield briefly, then sleep in short parks; wakes up within tens of microseconds. */
+    PARK,
+    /** Spin briefly, then block until a producer signals; no idle CPU, a wake-up costs a few microseconds. */
+    BLOCK
+}
@@ -2,15 +2,36 @@ package org.example.protocol;
 
 import org.example.config.BoardConfig;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 /**
  * Builds command packets for the Access Controller based on the C# SDK.
+ * Frames can be written into a caller-supplied buffer or into a per-thread pooled slot,
+ * so encoding a command does not allocate. Sequence IDs come from the board's own
+ * atomic counter (see {@link BoardConfig#nextSequenceId()}), which makes encoding thread-safe.
  */
 public class PacketBuilder {
 
-    // sequenceId is a rolling number for each command sent.
-    private static long sequenceId = 0;
+    // The total packet size is 64 bytes, as defined in the SDK.
+    public static final int PACKET_SIZE = 64;
+
+    // Offset of the 4-byte little endian sequence ID inside a frame.
+    public static final int SEQUENCE_OFFSET = 40;
+
+    // Assumed, not yet confirmed on hardware: floors 1-40 switch a relay's NO contact, floors 41-80
+    // its NC contact (floor + 40), which is how we turn a relay off. The SDK documents no OFF command.
+    public static final int NC_FLOOR_OFFSET = 40;
+
+    // Floor numbers are a single byte in the 0x40 frame, so per-relay tables never need more entries.
+    public static final int MAX_RELAYS = 256;
+
+    // Multi-relay frames: a relay bitmap in bytes 12-16 (bit 0 of byte 12 = relay 1), relays 1-40.
+    // Our own extension, not in the SDK; unconfirmed on hardware (see RelayCoalescer).
+    public static final int RELAY_MASK_OFFSET = 12;
+    public static final int MAX_MASK_RELAY = 40;
+
+    // One reusable frame per thread; see controlCommandFrame().
+    private static final ThreadLocal<ByteBuffer> FRAME_SLOTS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(PACKET_SIZE));
 
     /**
      * Creates a 64-byte packet for the "One-to-many remote control" command (Function ID 0x40).
@@ -22,46 +43,163 @@ public class PacketBuilder {
      * @return The 64-byte command packet.
      */
     public static byte[] sendControlCommand(BoardConfig cfg, int doorNumber, int floorNumber) {
-        // The total packet size is 64 bytes, as defined in the SDK.
-        byte[] packet = new byte[64];
+        byte[] packet = new byte[PACKET_SIZE];
+        encodeControlCommand(ByteBuffer.wrap(packet), cfg, doorNumber, floorNumber);
+        return packet;
+    }
+
+    /**
+     * Encodes a 0x40 command into this thread's pooled frame slot.
+     * The returned buffer is ready to send and is only valid until the same thread
+     * encodes its next frame.
+     *
+     * @param cfg         The configuration of the target controller board.
+     * @param doorNumber  The door number (must be 1).
+     * @param floorNumber The floor/device number to control.
+     * @return The pooled slot, positioned at the start of the frame.
+     */
+    public static ByteBuffer controlCommandFrame(BoardConfig cfg, int doorNumber, int floorNumber) {
+        ByteBuffer slot = FRAME_SLOTS.get();
+        slot.clear();
+        encodeControlCommand(slot, cfg, doorNumber, floorNumber);
+        slot.flip();
+        return slot;
+    }
+
+    /**
+     * Writes a 64-byte 0x40 command at the buffer's current position and advances it.
+     *
+     * @param dst         The buffer to write into; needs at least 64 bytes remaining.
+     * @param cfg         The configuration of the target controller board.
+     * @param doorNumber  The door number (must be 1).
+     * @param floorNumber The floor/device number to control.
+     * @return The sequence ID written into the frame.
+     */
+    public static long encodeControlCommand(ByteBuffer dst, BoardConfig cfg, int doorNumber, int floorNumber) {
+        if (dst.remaining() < PACKET_SIZE) {
+            throw new IllegalArgumentException("Buffer has " + dst.remaining() + " bytes left, a frame needs " + PACKET_SIZE);
+        }
+        int base = dst.position();
+
+        // The buffer may be reused, so clear all 64 bytes first; unused fields must be 0.
+        for (int i = 0; i < PACKET_SIZE; i += Long.BYTES) {
+            dst.putLong(base + i, 0L);
+        }
 
         // Byte 0: Packet Type (Always 0x17 for this controller model)
-        packet[0] = 0x17;
+        dst.put(base, (byte) 0x17);
 
         // Byte 1: Function ID for "Remote Open Door" is 0x40
-        packet[1] = 0x40;
+        dst.put(base + 1, (byte) 0x40);
 
         // Bytes 2-3: Unused, remain 0.
 
         // Bytes 4-7: Device Serial Number (in Little Endian format)
-        int sn = cfg.serialNumber;
-        packet[4] = (byte) (sn & 0xFF);
-        packet[5] = (byte) ((sn >> 8) & 0xFF);
-        packet[6] = (byte) ((sn >> 16) & 0xFF);
-        packet[7] = (byte) ((sn >> 24) & 0xFF);
+        putIntLE(dst, base + 4, cfg.serialNumber);
 
         // --- Data Block (starts at byte 8) ---
         // Byte 8: Door number (must be 1 for this command).
-        packet[8] = (byte) doorNumber;
+        dst.put(base + 8, (byte) doorNumber);
         // Byte 9: Floor number (1-40 for NO, 41-80 for NC). This controls the specific relay/LED.
-        packet[9] = (byte) floorNumber;
-        
-        // Bytes 10-11: Action duration (0 for default).
-        packet[10] = 0;
-        packet[11] = 0;
+        dst.put(base + 9, (byte) floorNumber);
 
+        // Bytes 10-11: Action duration (0 for default).
         // Bytes 12-39: Unused for this function, remain 0.
 
         // Bytes 40-43: Sequence ID (a unique, incrementing number for each packet)
         // This is crucial for the controller to accept the command.
-        sequenceId++;
-        packet[40] = (byte) (sequenceId & 0xFF);
-        packet[41] = (byte) ((sequenceId >> 8) & 0xFF);
-        packet[42] = (byte) ((sequenceId >> 16) & 0xFF);
-        packet[43] = (byte) ((sequenceId >> 24) & 0xFF);
+        long sequenceId = cfg.nextSequenceId();
+        putIntLE(dst, base + SEQUENCE_OFFSET, (int) sequenceId);
 
         // Bytes 44-63: Unused, remain 0.
 
-        return packet;
+        dst.position(base + PACKET_SIZE);
+        return sequenceId;
+    }
+
+    /**
+     * Encodes a 0x40 command for several relays into this thread's pooled frame slot.
+     * See {@link #encodeMultiRelayCommand(ByteBuffer, BoardConfig, int, long)}.
+     *
+     * @return The pooled slot, positioned at the start of the frame.
+     */
+    public static ByteBuffer multiRelayCommandFrame(BoardConfig cfg, int doorNumber, long relayMask) {
+        ByteBuffer slot = FRAME_SLOTS.get();
+        slot.clear();
+        encodeMultiRelayCommand(slot, cfg, doorNumber, relayMask);
+        slot.flip();
+        return slot;
+    }
+
+    /**
+     * Writes a 0x40 command that activates several relays at once.
+     * Only for boards whose firmware reads the relay bitmap (see {@link BoardConfig#multiRelayFrames}):
+     * bit {@code n - 1} of the 40-bit little endian bitmap at bytes 12-16 selects relay {@code n}.
+     * Byte 9 still carries the lowest selected relay, so a board that ignores the bitmap
+     * lights at least that one.
+     *
+     * @param relayMask Bit {@code n - 1} set for every relay {@code n} to activate (relays 1-40).
+     * @return The sequence ID written into the frame.
+     */
+    public static long encodeMultiRelayCommand(ByteBuffer dst, BoardConfig cfg, int doorNumber, long relayMask) {
+        if (relayMask == 0 || relayMask >>> MAX_MASK_RELAY != 0) {
+            throw new IllegalArgumentException("Relay mask must select relays 1-" + MAX_MASK_RELAY + ": " + Long.toHexString(relayMask));
+        }
+        int base = dst.position();
+        long sequenceId = encodeControlCommand(dst, cfg, doorNumber, Long.numberOfTrailingZeros(relayMask) + 1);
+        for (int i = 0; i < 5; i++) {
+            dst.put(base + RELAY_MASK_OFFSET + i, (byte) (relayMask >>> (8 * i)));
+        }
+        return sequenceId;
+    }
+
+    /**
+     * Reads the relay bitmap (bytes 12-16) of a frame starting at the given index.
+     *
+     * @return Bit {@code n - 1} set for every relay {@code n} the bitmap selects.
+     */
+    public static long readRelayMask(ByteBuffer frame, int base) {
+        long mask = 0;
+        for (int i = 0; i < 5; i++) {
+            mask |= (frame.get(base + RELAY_MASK_OFFSET + i) & 0xFFL) << (8 * i);
+        }
+        return mask;
+    }
+
+    /**
+     * Reads the sequence ID of a frame starting at the given index.
+     *
+     * @param frame The buffer holding the frame.
+     * @param base  The index of the frame's first byte.
+     * @return The sequence ID as an unsigned 32-bit value.
+     */
+    public static long readSequenceId(ByteBuffer frame, int base) {
+        return getIntLE(frame, base + SEQUENCE_OFFSET) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Overwrites the sequence ID of a frame starting at the given index, e.g. to resend it as a new command.
+     *
+     * @param frame      The buffer holding the frame.
+     * @param base       The index of the frame's first byte.
+     * @param sequenceId The new sequence ID.
+     */
+    public static void writeSequenceId(ByteBuffer frame, int base, long sequenceId) {
+        putIntLE(frame, base + SEQUENCE_OFFSET, (int) sequenceId);
+    }
+
+    // Written byte by byte so the result does not depend on the buffer's byte order.
+    private static void putIntLE(ByteBuffer dst, int index, int value) {
+        dst.put(index, (byte) (value & 0xFF));
+        dst.put(index + 1, (byte) ((value >> 8) & 0xFF));
+        dst.put(index + 2, (byte) ((value >> 16) & 0xFF));
+        dst.put(index + 3, (byte) ((value >> 24) & 0xFF));
+    }
+
+    static int getIntLE(ByteBuffer src, int index) {
+        return (src.get(index) & 0xFF)
+                | (src.get(index + 1) & 0xFF) << 8
+                | (src.get(index + 2) & 0xFF) << 16
+                | (src.get(index + 3) & 0xFF) << 24;
     }
 }
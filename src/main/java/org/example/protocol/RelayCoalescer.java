@@ -0,0 +1,138 @@
+package org.example.protocol;
+
+import org.example.config.BoardConfig;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Turns a batch of relay activations for one board into the fewest 0x40 frames.
+ *
+ * Activations of the same relay always share one frame. An ON (floor 1-40) and an OFF (floor 41-80)
+ * of the same relay in one batch also share one frame, the later command's, so the relay ends up
+ * in the state asked for last. If bitmap frames are allowed, all relays 1-40 of the batch go out
+ * in a single bitmap frame; otherwise every distinct relay gets its own frame.
+ *
+ * The bitmap (bytes 12-16) is our own extension of the 0x40 frame. It is not in the SDK and has
+ * not been confirmed on a real board, so it is off unless a board opts in
+ * ({@link BoardConfig#multiRelayFrames}), and even then a bitmap frame only counts for all its
+ * relays if the board's reply carries the same bitmap back (see {@link #afterBitmapReply}).
+ * Otherwise only the relay in byte 9 is known to be switched, and the others are sent again
+ * one frame per relay.
+ */
+public final class RelayCoalescer {
+
+    /**
+     * Sends one frame on behalf of the commands it covers.
+     */
+    public interface FrameSender<T> {
+        /**
+         * @param frame     The encoded frame (this thread's pooled slot, valid until the next encode).
+         * @param commands  The commands the frame carries out.
+         * @param relayMask For a bitmap frame the relays it selects, else 0; see {@link #afterBitmapReply}.
+         */
+        void send(ByteBuffer frame, List<T> commands, long relayMask);
+    }
+
+    private RelayCoalescer() {
+    }
+
+    /**
+     * Encodes and sends the frames for a batch of commands, in order of each relay's first appearance.
+     *
+     * @param board    The board all commands are for.
+     * @param commands The commands.
+     * @param relayOf  The floor number of a command.
+     * @param bitmap   True to put relays 1-40 into one bitmap frame; only if the sender reads the reply.
+     * @param sender   Sends each frame.
+     * @return The number of frames sent.
+     */
+    public static <T> int coalesce(BoardConfig board, List<T> commands, ToIntFunction<T> relayOf, boolean bitmap,
+                                   FrameSender<T> sender) {
+        // 1. Group the commands by relay; the last command of a group decides its floor (ON or OFF)
+        Map<Integer, Group<T>> byRelay = new LinkedHashMap<>();
+        for (T command : commands) {
+            int floor = relayOf.applyAsInt(command);
+            Group<T> group = byRelay.computeIfAbsent(contactRelay(floor), relay -> new Group<>());
+            group.floor = floor;
+            group.commands.add(command);
+        }
+
+        // 2. One frame per relay, unless bitmap frames are allowed
+        int frames = 0;
+        long mask = 0;
+        List<T> masked = null;
+        for (Group<T> group : byRelay.values()) {
+            int relay = group.floor;
+            if (bitmap && relay >= 1 && relay <= PacketBuilder.MAX_MASK_RELAY) {
+                mask |= 1L << (relay - 1);
+                if (masked == null) {
+                    masked = new ArrayList<>(commands.size());
+                }
+                masked.addAll(group.commands);
+                continue;
+            }
+            sender.send(PacketBuilder.controlCommandFrame(board, 1, relay), group.commands, 0);
+            frames++;
+        }
+
+        // 3. The bitmap frame (a single relay still goes out as a plain frame)
+        if (mask != 0) {
+            if (Long.bitCount(mask) == 1) {
+                sender.send(PacketBuilder.controlCommandFrame(board, 1, Long.numberOfTrailingZeros(mask) + 1), masked, 0);
+            } else {
+                sender.send(PacketBuilder.multiRelayCommandFrame(board, 1, mask), masked, mask);
+            }
+            frames++;
+        }
+        return frames;
+    }
+
+    /**
+     * Sorts out the commands of an accepted bitmap frame. Only a reply that carries the frame's
+     * bitmap back is taken as proof that every selected relay was switched; any other reply only
+     * proves the relay in byte 9 (the lowest selected one), which every board reads.
+     *
+     * @param commands   The commands the frame carried.
+     * @param relayOf    The floor number of a command.
+     * @param relayMask  The bitmap the frame was sent with.
+     * @param echoedMask The bitmap in the board's reply.
+     * @param carriedOut Called for every command proven carried out.
+     * @return The other commands; send them again, one frame per relay.
+     */
+    public static <T> List<T> afterBitmapReply(List<T> commands, ToIntFunction<T> relayOf, long relayMask, long echoedMask,
+                                               Consumer<T> carriedOut) {
+        if (echoedMask == relayMask) {
+            commands.forEach(carriedOut);
+            return List.of();
+        }
+        int plainRelay = Long.numberOfTrailingZeros(relayMask) + 1;
+        List<T> unproven = new ArrayList<>(commands.size());
+        for (T command : commands) {
+            if (contactRelay(relayOf.applyAsInt(command)) == plainRelay) {
+                carriedOut.accept(command);
+            } else {
+                unproven.add(command);
+            }
+        }
+        return unproven;
+    }
+
+    /**
+     * @return The relay a floor number switches: floors 41-80 are the NC contacts of relays 1-40.
+     */
+    private static int contactRelay(int floor) {
+        int offset = PacketBuilder.NC_FLOOR_OFFSET;
+        return floor > offset && floor <= offset + PacketBuilder.MAX_MASK_RELAY ? floor - offset : floor;
+    }
+
+    private static final class Group<T> {
+        final List<T> commands = new ArrayList<>(1);
+        int floor;
+    }
+}
@@ -0,0 +1,172 @@
+package org.example.service;
+
+import org.example.config.BoardConfig;
+import org.example.logging.EventLog;
+import org.example.network.RelayShadow;
+import org.example.protocol.PacketBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Drives all flashing LEDs from a single scheduler thread.
+ * Each blinking relay is one slot in its board's table, so starting, stopping and changing
+ * the rate of a blink are O(1) and never wait for a thread. On every tick the due relays of
+ * a board are toggled in one pass before moving on to the next board.
+ *
+ * The relays are switched through the {@link RelayShadow}, so a blink is one ON and one OFF
+ * command per period and the shadow always knows whether the LED is lit.
+ */
+public class BlinkScheduler implements AutoCloseable {
+
+    private final Map<BoardConfig, BoardBlinks> boards = new ConcurrentHashMap<>();
+    private final RelayShadow shadow;
+    private final ScheduledExecutorService ticker;
+
+    /**
+     * Creates a scheduler that checks for due blinks every {@code tickMillis} milliseconds.
+     *
+     * @param tickMillis The timer resolution; half blink periods are rounded up to it.
+     * @param shadow     Switches the relays.
+     */
+    public BlinkScheduler(long tickMillis, RelayShadow shadow) {
+        this.shadow = shadow;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "led-blink-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts blinking a relay, or restarts it with a new period if it is already blinking.
+     * The first toggle happens on the next tick.
+     *
+     * @param board        The board the relay belongs to.
+     * @param relayNumber  The floor/device number of the LED.
+     * @param periodMillis The time between two ON frames.
+     */
+    public void start(BoardConfig board, int relayNumber, long periodMillis) {
+        checkRelay(relayNumber);
+        BoardBlinks blinks = boards.computeIfAbsent(board, BoardBlinks::new);
+        Blink previous = blinks.slots.getAndSet(relayNumber, new Blink(relayNumber, periodMillis));
+        if (previous == null) {
+            blinks.active.incrementAndGet();
+        } else {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Stops blinking a relay, leaving it in whatever state its last toggle put it in.
+     * Waits at most for a toggle of this relay that the current tick is sending, so a
+     * command the caller sends afterwards (e.g. OFF) always comes last.
+     *
+     * @return True if the relay was blinking.
+     */
+    public boolean stop(BoardConfig board, int relayNumber) {
+        checkRelay(relayNumber);
+        BoardBlinks blinks = boards.get(board);
+        Blink blink = blinks == null ? null : blinks.slots.getAndSet(relayNumber, null);
+        if (blink == null) {
+            return false;
+        }
+        blinks.active.decrementAndGet();
+        blink.cancel();
+        return true;
+    }
+
+    /**
+     * Changes the period of a blinking relay without resetting its phase.
+     *
+     * @return True if the relay was blinking.
+     */
+    public boolean changeRate(BoardConfig board, int relayNumber, long periodMillis) {
+        checkRelay(relayNumber);
+        BoardBlinks blinks = boards.get(board);
+        Blink blink = blinks == null ? null : blinks.slots.get(relayNumber);
+        if (blink == null) {
+            return false;
+        }
+        blink.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        return true;
+    }
+
+    public boolean isBlinking(BoardConfig board, int relayNumber) {
+        BoardBlinks blinks = boards.get(board);
+        return blinks != null && blinks.slots.get(relayNumber) != null;
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        for (BoardBlinks blinks : boards.values()) {
+            if (blinks.active.get() == 0) {
+                continue;
+            }
+            for (int relay = 0; relay < PacketBuilder.MAX_RELAYS; relay++) {
+                Blink blink = blinks.slots.get(relay);
+                if (blink == null || now - blink.nextDueNanos < 0) {
+                    continue;
+                }
+                blink.nextDueNanos = now + blink.periodNanos / 2;
+                try {
+                    blink.toggle(blinks.board, shadow);
+                } catch (RuntimeException e) {
+                    EventLog.error("Flashing LED {} on board SN {} failed: {}", relay, blinks.board.serialNumber, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void checkRelay(int relayNumber) {
+        if (relayNumber < 0 || relayNumber >= PacketBuilder.MAX_RELAYS) {
+            throw new IllegalArgumentException("Relay number out of range: " + relayNumber);
+        }
+    }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    private static final class BoardBlinks {
+        final BoardConfig board;
+        final AtomicReferenceArray<Blink> slots = new AtomicReferenceArray<>(PacketBuilder.MAX_RELAYS);
+        final AtomicInteger active = new AtomicInteger();
+
+        BoardBlinks(BoardConfig board) {
+            this.board = board;
+        }
+    }
+
+    private static final class Blink {
+        final int relayNumber;
+        volatile long periodNanos;
+        // Only touched by the ticker thread after construction.
+        long nextDueNanos;
+        // Guarded by this Blink's monitor.
+        private boolean cancelled;
+
+        Blink(int relayNumber, long periodMillis) {
+            this.relayNumber = relayNumber;
+            this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+            this.nextDueNanos = System.nanoTime();
+        }
+
+        synchronized void toggle(BoardConfig board, RelayShadow shadow) {
+            if (!cancelled) {
+                shadow.toggle(board, relayNumber);
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+        }
+    }
+}
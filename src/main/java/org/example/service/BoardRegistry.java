@@ -0,0 +1,304 @@
+package org.example.service;
+
+import org.example.config.BoardConfig;
+import org.example.logging.EventLog;
+import org.example.protocol.PacketBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the controller boards and of which board and relay light up each product.
+ *
+ * The layout is read from a properties file:
+ * <pre>
+ * # Controller boards
+ * board.aisle1.serial=175111864
+ * board.aisle1.ip=192.168.0.50
+ * board.aisle1.port=60000
+ * # Optional, experimental: try one frame for several relays (see RelayCoalescer); unconfirmed on hardware
+ * board.aisle1.multiRelay=false
+ * # Products: product.&lt;product/QR code&gt;=&lt;board name or serial&gt;:&lt;relay&gt;
+ * product.PRD1=aisle1:1
+ * </pre>
+ * Each product maps to a unicast board address, so a command only reaches the board that owns
+ * the LED. When loaded from a file the registry can watch it and swap in the new layout without
+ * a restart; a board whose settings are unchanged keeps its BoardConfig instance.
+ */
+public class BoardRegistry implements WarehouseDB {
+
+    public static final String DEFAULT_RESOURCE = "/boards.properties";
+
+    private final Path file; // null when the layout did not come from a file
+    private volatile Layout layout;
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService watcher;
+    private FileTime lastModified;
+
+    private BoardRegistry(Path file, Layout layout) {
+        this.file = file;
+        this.layout = layout;
+    }
+
+    /**
+     * Loads the registry from a properties file.
+     */
+    public static BoardRegistry load(Path file) throws IOException {
+        BoardRegistry registry = new BoardRegistry(file, null);
+        registry.lastModified = Files.getLastModifiedTime(file);
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            registry.layout = Layout.parse(reader, Layout.EMPTY);
+        }
+        return registry;
+    }
+
+    /**
+     * Loads the layout bundled with the application ({@value #DEFAULT_RESOURCE}).
+     */
+    public static BoardRegistry loadDefault() throws IOException {
+        try (InputStream in = BoardRegistry.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + DEFAULT_RESOURCE);
+            }
+            Properties properties = new Properties();
+            properties.load(new java.io.InputStreamReader(in, StandardCharsets.UTF_8));
+            return new BoardRegistry(null, Layout.parse(properties, Layout.EMPTY));
+        }
+    }
+
+    /**
+     * Creates a fixed registry of one board.
+     *
+     * @param board    The board.
+     * @param products Product ID to relay number on that board.
+     */
+    public static BoardRegistry of(BoardConfig board, Map<String, Integer> products) {
+        Map<Integer, BoardConfig> boards = Map.of(board.serialNumber, board);
+        Map<String, Location> locations = new HashMap<>();
+        products.forEach((product, relay) -> locations.put(product, new Location(board, relay)));
+        return new BoardRegistry(null, new Layout(boards, Map.of(), locations));
+    }
+
+    @Override
+    public Optional<Location> findLocationByQrCode(String qrCode) {
+        return Optional.ofNullable(layout.products.get(qrCode));
+    }
+
+    /**
+     * @return The board and relay of a product, or null if the product is unknown.
+     */
+    public Location route(String productId) {
+        return layout.products.get(productId);
+    }
+
+    public boolean isKnownProduct(String productId) {
+        return layout.products.containsKey(productId);
+    }
+
+    public BoardConfig boardBySerial(int serialNumber) {
+        return layout.boards.get(serialNumber);
+    }
+
+    public Collection<BoardConfig> boards() {
+        return Collections.unmodifiableCollection(layout.boards.values());
+    }
+
+    public int productCount() {
+        return layout.products.size();
+    }
+
+    /**
+     * Registers an action to run after every successful reload.
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    public void removeReloadListener(Runnable listener) {
+        reloadListeners.remove(listener);
+    }
+
+    /**
+     * Starts polling the registry file and reloads it when it changes.
+     * An invalid file is reported and the previous layout stays in effect.
+     *
+     * @param intervalMillis How often to check the file's modification time.
+     */
+    public synchronized void startWatching(long intervalMillis) {
+        if (file == null) {
+            throw new IllegalStateException("Registry was not loaded from a file");
+        }
+        if (watcher != null) {
+            return;
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "board-registry-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                FileTime modified = Files.getLastModifiedTime(file);
+                if (!modified.equals(lastModified)) {
+                    lastModified = modified;
+                    reload();
+                }
+            } catch (IOException | RuntimeException e) {
+                EventLog.error("Failed to reload board registry {}: {}", file, e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Re-reads the registry file and swaps in the new layout.
+     */
+    public void reload() throws IOException {
+        if (file == null) {
+            throw new IllegalStateException("Registry was not loaded from a file");
+        }
+        Layout updated;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            updated = Layout.parse(reader, layout);
+        }
+        layout = updated;
+        EventLog.prompt("Board registry reloaded: {} boards, {} products.", updated.boards.size(), updated.products.size());
+        reloadListeners.forEach(Runnable::run);
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+            watcher = null;
+        }
+    }
+
+    /**
+     * One immutable version of the registry; replaced as a whole on reload.
+     */
+    private static final class Layout {
+        static final Layout EMPTY = new Layout(Map.of(), Map.of(), Map.of());
+
+        final Map<Integer, BoardConfig> boards;
+        final Map<String, BoardConfig> boardsByName;
+        final Map<String, Location> products;
+
+        Layout(Map<Integer, BoardConfig> boards, Map<String, BoardConfig> boardsByName, Map<String, Location> products) {
+            this.boards = boards;
+            this.boardsByName = boardsByName;
+            this.products = products;
+        }
+
+        static Layout parse(Reader reader, Layout previous) throws IOException {
+            Properties properties = new Properties();
+            properties.load(reader);
+            return parse(properties, previous);
+        }
+
+        static Layout parse(Properties properties, Layout previous) throws IOException {
+            Map<Integer, BoardConfig> boards = new HashMap<>();
+            Map<String, BoardConfig> boardsByName = new HashMap<>();
+            List<String> boardNames = new ArrayList<>();
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith("board.") && key.endsWith(".serial")) {
+                    boardNames.add(key.substring("board.".length(), key.length() - ".serial".length()));
+                }
+            }
+            for (String name : boardNames) {
+                int serial = parseInt(properties, "board." + name + ".serial");
+                String ip = required(properties, "board." + name + ".ip");
+                int port = parseInt(properties, "board." + name + ".port");
+                boolean multiRelay = Boolean.parseBoolean(properties.getProperty("board." + name + ".multiRelay", "false").trim());
+                BoardConfig board = previous.boards.get(serial);
+                if (multiRelay && (board == null || !board.multiRelayFrames)) {
+                    EventLog.warn("Board {} uses multi-relay frames, an extension not yet confirmed on hardware.", name);
+                }
+                if (board == null || !board.ip.equals(ip) || board.port != port || board.multiRelayFrames != multiRelay) {
+                    board = new BoardConfig(ip, port, serial);
+                    board.multiRelayFrames = multiRelay;
+                }
+                if (boards.put(serial, board) != null) {
+                    throw new IOException("Board SN " + serial + " is configured twice");
+                }
+                boardsByName.put(name, board);
+            }
+
+            Map<String, Location> products = new HashMap<>();
+            Map<String, Location> previousLocations = previous.products;
+            for (String key : properties.stringPropertyNames()) {
+                if (!key.startsWith("product.")) {
+                    continue;
+                }
+                String productId = key.substring("product.".length());
+                String value = properties.getProperty(key).trim();
+                int colon = value.lastIndexOf(':');
+                if (colon <= 0) {
+                    throw new IOException("Expected <board>:<relay> for " + key + ", got '" + value + "'");
+                }
+                String boardRef = value.substring(0, colon).trim();
+                BoardConfig board = boardsByName.get(boardRef);
+                if (board == null) {
+                    try {
+                        board = boards.get(Integer.parseInt(boardRef));
+                    } catch (NumberFormatException e) {
+                        // Neither a board name nor a serial number; reported below.
+                    }
+                }
+                if (board == null) {
+                    throw new IOException("Product " + productId + " refers to unknown board '" + boardRef + "'");
+                }
+                int relay;
+                try {
+                    relay = Integer.parseInt(value.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid relay number for " + key + ": '" + value + "'");
+                }
+                if (relay < 1 || relay > PacketBuilder.MAX_MASK_RELAY) {
+                    // Higher floors are (presumably) the OFF commands of relays 1-40, see PacketBuilder.
+                    throw new IOException("Relay number for " + key + " must be 1-" + PacketBuilder.MAX_MASK_RELAY + ": '" + value + "'");
+                }
+                // Keep the same Location object if nothing changed, so in-flight work can compare identities.
+                Location old = previousLocations.get(productId);
+                if (old != null && old.getBoard() == board && old.getRelayNumber() == relay) {
+                    products.put(productId, old);
+                } else {
+                    products.put(productId, new Location(board, relay));
+                }
+            }
+            return new Layout(boards, boardsByName, products);
+        }
+
+        private static String required(Properties properties, String key) throws IOException {
+            String value = properties.getProperty(key);
+            if (value == null || value.isBlank()) {
+                throw new IOException("Missing " + key);
+            }
+            return value.trim();
+        }
+
+        private static int parseInt(Properties properties, String key) throws IOException {
+            String value = required(properties, key);
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid number for " + key + ": '" + value + "'");
+            }
+        }
+    }
+}
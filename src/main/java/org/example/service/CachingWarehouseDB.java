@@ -0,0 +1,424 @@
+package org.example.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded read-through cache in front of a slower {@link WarehouseDB}, e.g. a
+ * {@link org.example.persistence.JdbcWarehouseDB}, so repeated scans of a product do not go to
+ * the database. Unknown QR codes are cached too.
+ *
+ * Eviction follows W-TinyLFU: a new entry enters a small LRU window (1% of the capacity); when it
+ * leaves the window it competes with the main space's eviction victim, and only the one that was
+ * requested more often (estimated by a 4-bit count-min sketch that is halved periodically) stays.
+ * The main space is a segmented LRU: entries hit again move from probation to a protected segment
+ * (80%). A burst of one-off lookups therefore cannot flush the frequently used locations.
+ *
+ * The cache is split into independently locked segments by hash, each with its own policy, so
+ * concurrent lookups rarely wait for each other. Loads run outside the locks; a load that raced
+ * with an invalidation of its segment is not cached.
+ */
+public class CachingWarehouseDB implements WarehouseDB {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final WarehouseDB backing;
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param backing      The database to read through to.
+     * @param maximumSize  The maximum number of cached QR codes.
+     */
+    public CachingWarehouseDB(WarehouseDB backing, int maximumSize) {
+        if (maximumSize < 2) {
+            throw new IllegalArgumentException("Maximum size must be at least 2: " + maximumSize);
+        }
+        this.backing = backing;
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && maximumSize / (segmentCount * 2) >= MIN_SEGMENT_CAPACITY) {
+            segmentCount *= 2;
+        }
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        for (int i = 0; i < segmentCount; i++) {
+            // Spread the remainder so the segments add up to exactly maximumSize.
+            segments[i] = new Segment(maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0));
+        }
+    }
+
+    @Override
+    public Optional<Location> findLocationByQrCode(String qrCode) {
+        int hash = spread(qrCode.hashCode());
+        Segment segment = segments[hash & segmentMask];
+        Node node = segment.get(qrCode, hash);
+        if (node != null) {
+            hits.increment();
+            return Optional.ofNullable(node.location);
+        }
+        misses.increment();
+        long generation = segment.generation;
+        Optional<Location> loaded = backing.findLocationByQrCode(qrCode);
+        segment.put(qrCode, hash, loaded.orElse(null), generation);
+        return loaded;
+    }
+
+    /**
+     * Preloads locations, e.g. the {@link #hotKeys(int)} saved by a previous run, with one bulk
+     * query to the backing database. Preloaded entries go straight to the main space while it has
+     * room and never evict anything.
+     *
+     * @return The number of locations cached.
+     */
+    public int warmUp(Collection<String> qrCodes) {
+        int cached = 0;
+        for (Map.Entry<String, Location> entry : backing.findLocationsByQrCodes(qrCodes).entrySet()) {
+            int hash = spread(entry.getKey().hashCode());
+            if (segments[hash & segmentMask].preload(entry.getKey(), hash, entry.getValue())) {
+                cached++;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Drops one QR code, e.g. after its location was changed in the backing database.
+     */
+    public void invalidate(String qrCode) {
+        int hash = spread(qrCode.hashCode());
+        segments[hash & segmentMask].invalidate(qrCode);
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.invalidateAll();
+        }
+    }
+
+    /**
+     * @return Up to {@code n} cached QR codes, most frequently requested first.
+     */
+    public List<String> hotKeys(int n) {
+        List<Map.Entry<String, Integer>> all = new ArrayList<>();
+        for (Segment segment : segments) {
+            segment.collectFrequencies(all);
+        }
+        all.sort(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()));
+        List<String> keys = new ArrayList<>(Math.min(n, all.size()));
+        for (int i = 0; i < all.size() && i < n; i++) {
+            keys.add(all.get(i).getKey());
+        }
+        return keys;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return Hits divided by lookups, or 0 before the first lookup.
+     */
+    public double hitRate() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) * 0x45d9f3b;
+    }
+
+    private enum Queue {WINDOW, PROBATION, PROTECTED}
+
+    private static final class Node {
+        final String key;
+        final int hash;
+        Location location; // null caches "not found"
+        Queue queue;
+        Node prev;
+        Node next;
+
+        Node(String key, int hash, Location location) {
+            this.key = key;
+            this.hash = hash;
+            this.location = location;
+        }
+    }
+
+    /**
+     * A circular doubly linked list around a sentinel; head = least recently used.
+     */
+    private static final class AccessOrder {
+        final Node sentinel = new Node(null, 0, null);
+        int size;
+
+        AccessOrder() {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+        }
+
+        Node head() {
+            return sentinel.next == sentinel ? null : sentinel.next;
+        }
+
+        void addLast(Node node) {
+            node.prev = sentinel.prev;
+            node.next = sentinel;
+            sentinel.prev.next = node;
+            sentinel.prev = node;
+            size++;
+        }
+
+        void remove(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToLast(Node node) {
+            remove(node);
+            addLast(node);
+        }
+
+        void clear() {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            size = 0;
+        }
+    }
+
+    private final class Segment {
+        final Map<String, Node> nodes = new HashMap<>();
+        final AccessOrder window = new AccessOrder();
+        final AccessOrder probation = new AccessOrder();
+        final AccessOrder protectedOrder = new AccessOrder();
+        final FrequencySketch sketch;
+        final int maxWindow;
+        final int maxMain;
+        final int maxProtected;
+        // Bumped by every invalidation; a load that started under an older generation is not cached.
+        volatile long generation;
+
+        Segment(int capacity) {
+            this.maxWindow = Math.max(1, (int) (capacity * WINDOW_SHARE));
+            this.maxMain = Math.max(1, capacity - maxWindow);
+            this.maxProtected = (int) (maxMain * PROTECTED_SHARE);
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        synchronized Node get(String key, int hash) {
+            sketch.increment(hash);
+            Node node = nodes.get(key);
+            if (node != null) {
+                onHit(node);
+            }
+            return node;
+        }
+
+        private void onHit(Node node) {
+            switch (node.queue) {
+                case WINDOW:
+                    window.moveToLast(node);
+                    break;
+                case PROBATION:
+                    probation.remove(node);
+                    node.queue = Queue.PROTECTED;
+                    protectedOrder.addLast(node);
+                    if (protectedOrder.size > maxProtected) {
+                        Node demoted = protectedOrder.head();
+                        protectedOrder.remove(demoted);
+                        demoted.queue = Queue.PROBATION;
+                        probation.addLast(demoted);
+                    }
+                    break;
+                default:
+                    protectedOrder.moveToLast(node);
+                    break;
+            }
+        }
+
+        synchronized void put(String key, int hash, Location location, long loadGeneration) {
+            if (loadGeneration != generation) {
+                return;
+            }
+            Node existing = nodes.get(key);
+            if (existing != null) {
+                existing.location = location; // Loaded concurrently by another lookup.
+                return;
+            }
+            Node node = new Node(key, hash, location);
+            node.queue = Queue.WINDOW;
+            nodes.put(key, node);
+            window.addLast(node);
+            if (window.size <= maxWindow) {
+                return;
+            }
+            // The window's LRU entry moves to the main space and competes with its victim.
+            Node candidate = window.head();
+            window.remove(candidate);
+            candidate.queue = Queue.PROBATION;
+            probation.addLast(candidate);
+            if (probation.size + protectedOrder.size > maxMain) {
+                evict(candidate);
+            }
+        }
+
+        private void evict(Node candidate) {
+            Node victim = probation.head();
+            if (victim == candidate) {
+                victim = protectedOrder.head();
+            }
+            if (victim == null) {
+                remove(candidate);
+            } else if (sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                remove(victim);
+            } else {
+                remove(candidate);
+            }
+            evictions.increment();
+        }
+
+        synchronized boolean preload(String key, int hash, Location location) {
+            if (nodes.containsKey(key) || probation.size + protectedOrder.size >= maxMain) {
+                return false;
+            }
+            Node node = new Node(key, hash, location);
+            node.queue = Queue.PROBATION;
+            nodes.put(key, node);
+            probation.addLast(node);
+            sketch.increment(hash);
+            return true;
+        }
+
+        private void remove(Node node) {
+            nodes.remove(node.key);
+            switch (node.queue) {
+                case WINDOW:
+                    window.remove(node);
+                    break;
+                case PROBATION:
+                    probation.remove(node);
+                    break;
+                default:
+                    protectedOrder.remove(node);
+                    break;
+            }
+        }
+
+        synchronized void invalidate(String key) {
+            generation++;
+            Node node = nodes.get(key);
+            if (node != null) {
+                remove(node);
+            }
+        }
+
+        synchronized void invalidateAll() {
+            generation++;
+            nodes.clear();
+            window.clear();
+            probation.clear();
+            protectedOrder.clear();
+        }
+
+        synchronized void collectFrequencies(List<Map.Entry<String, Integer>> out) {
+            for (Node node : nodes.values()) {
+                if (node.location != null) {
+                    out.add(Map.entry(node.key, sketch.frequency(node.hash)));
+                }
+            }
+        }
+
+        synchronized int size() {
+            return nodes.size();
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four per key, 16 per long. All counters are halved
+     * after every {@code 10 * width} increments, so the estimates follow the recent popularity.
+     * Not thread-safe; used under its segment's lock.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {0x97cb3127L, 0xc2b2ae35L, 0x85ebca6bL, 0x27d4eb2fL};
+        private static final long HALF_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(8, capacity) - 1) << 1;
+            this.table = new long[width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        int frequency(int hash) {
+            int min = 15;
+            for (long seed : SEEDS) {
+                long h = (hash & 0xFFFFFFFFL) * seed;
+                min = Math.min(min, (int) (table[index(h)] >>> shift(h)) & 15);
+            }
+            return min;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (long seed : SEEDS) {
+                long h = (hash & 0xFFFFFFFFL) * seed;
+                int index = index(h);
+                int shift = shift(h);
+                if (((table[index] >>> shift) & 15) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & HALF_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int index(long h) {
+            return (int) (h >>> 32) & mask;
+        }
+
+        private static int shift(long h) {
+            return (int) ((h >>> 20) & 15) << 2;
+        }
+    }
+}
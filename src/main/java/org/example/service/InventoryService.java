@@ -1,135 +1,586 @@
 package org.example.service;
 
+import org.example.batch.BatchItem;
 import org.example.config.BoardConfig;
+import org.example.logging.EventLog;
+import org.example.metrics.Metrics;
+import org.example.network.BoardSendQueues;
+import org.example.network.RelayShadow;
 import org.example.network.UDPClient;
-import org.example.protocol.PacketBuilder;
-
+import org.example.persistence.InventoryJournal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * Manages inventory logic, RFID/QR code associations, and LED control.
  * This version handles raw scanner input without command prefixes.
+ * Every scanner station has its own {@link ScannerSession}; sessions share only the
+ * concurrent RFID-to-product store, so stations never wait for each other.
  */
-public class InventoryService {
+public class InventoryService implements Closeable {
+
+    private static final long FLASH_PERIOD_MS = 500; // Flash every 500ms
+    private static final long BLINK_TICK_MS = 50;
+    private static final long SNAPSHOT_INTERVAL_MS = 60_000;
+    // Sessions without a pending export are forgotten after this long without a scan.
+    private static final long SESSION_IDLE_MS = 10 * 60_000;
+    private static final int SEND_QUEUE_CAPACITY = 1024; // per board
+    private static final int SEND_WORKERS = 4;
+    // Only boards that accept multi-relay frames wait this long to gather commands into one frame.
+    private static final long COALESCE_WINDOW_MS = 5;
+    // Unconfirmed relay states are re-sent this often; every few passes all lit LEDs are re-sent.
+    private static final long RECONCILE_INTERVAL_MS = 10_000;
+    private static final int FULL_REASSERT_EVERY = 6;
+
+    // Scanner ID used for input that does not name its station (the local console).
+    public static final String CONSOLE_SCANNER_ID = "console";
+    // Station name under which batch exports claim their tags.
+    private static final String BATCH_STATION = "batch";
 
     // --- Data Storage ---
-    private final Map<String, String> rfidToProductMap = new HashMap<>();
-    private final Map<String, Integer> productToLedMap = new HashMap<>();
-    // private final Set<String> availableRfidTags = new HashSet<>(); // No longer needed
-    private String lastScannedProduct = null;
-    private final BoardConfig boardConfig;
+    private final Map<String, String> rfidToProductMap = new ConcurrentHashMap<>();
+    // Product -> tags and unit count, maintained with every import and export.
+    private final StockIndex stockIndex = new StockIndex();
+    private final BoardRegistry registry;
+    private final InventoryJournal journal; // null when associations are kept in memory only
 
     // --- State Management ---
-    private String rfidWaitingForExportConfirmation = null;
-    private Thread flashingThread;
-    private int flashingLedNumber = -1; // -1 indicates no LED is flashing
-    private volatile boolean stopFlashing = false;
+    private final Map<String, ScannerSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong lastSessionSweepNanos = new AtomicLong(System.nanoTime());
+    // RFID tag -> scanner ID of the station that started exporting it.
+    private final Map<String, String> pendingExports = new ConcurrentHashMap<>();
+    // RFID tags whose association is being handed over to another node; they cannot be exported meanwhile.
+    private final Set<String> handingOver = ConcurrentHashMap.newKeySet();
+    // LED (board and relay, see Location#equals) -> number of sessions currently flashing it.
+    private final Map<Location, Integer> ledFlashCounts = new ConcurrentHashMap<>();
+    private final BoardSendQueues sendQueues;
+    private final RelayShadow relayShadow;
+    private final BlinkScheduler blinkScheduler;
+    private final Runnable reloadListener;
 
     /**
-     * Constructor to initialize the service.
+     * Constructor to initialize the service with the board layout bundled with the application.
      */
     public InventoryService() {
-        this.boardConfig = new BoardConfig("255.255.255.255", 60000, 175111864); // SN: 0x0A6FFEB8
-        initializeSampleData();
+        this(loadDefaultRegistry(), null);
     }
 
-    private void initializeSampleData() {
-        System.out.println("Initializing system with sample data...");
-        // RFID tags are no longer pre-defined. Any tag can be used.
+    /**
+     * Constructor to initialize the service against a single controller board,
+     * with the 5 sample products (PRD1-PRD5) on floors 1-5.
+     * @param boardConfig The board that drives the product LEDs.
+     */
+    public InventoryService(BoardConfig boardConfig) {
+        this(BoardRegistry.of(boardConfig, Map.of("PRD1", 1, "PRD2", 2, "PRD3", 3, "PRD4", 4, "PRD5", 5)), null);
+    }
 
-        // 5 products (from QR codes) mapped to 5 LEDs (floors 1-5)
-        productToLedMap.put("PRD1", 1);
-        productToLedMap.put("PRD2", 2);
-        productToLedMap.put("PRD3", 3);
-        productToLedMap.put("PRD4", 4);
-        productToLedMap.put("PRD5", 5);
+    /**
+     * Constructor to initialize the service with a board registry and durable associations.
+     * Each LED command is routed to the board that owns the product. The associations
+     * recovered by the journal are loaded, every import/export is journaled before it is
+     * acknowledged, and the journal is compacted periodically.
+     * @param registry The board layout used to route LED commands.
+     * @param journal  The journal to recover from and write to, or null for in-memory only.
+     */
+    public InventoryService(BoardRegistry registry, InventoryJournal journal) {
+        this.registry = registry;
+        this.journal = journal;
+        try {
+            this.sendQueues = new BoardSendQueues(UDPClient.transport(), UDPClient.tracker(), SEND_QUEUE_CAPACITY, SEND_WORKERS, COALESCE_WINDOW_MS,
+                    UDPClient.pacer());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the UDP transport", e);
+        }
+        this.relayShadow = new RelayShadow(this::sendRelayCommand, RECONCILE_INTERVAL_MS, FULL_REASSERT_EVERY);
+        this.blinkScheduler = new BlinkScheduler(BLINK_TICK_MS, relayShadow);
+        this.reloadListener = () -> {
+            sendQueues.retainBoards(registry.boards());
+            relayShadow.retainBoards(registry.boards());
+        };
+        registry.addReloadListener(reloadListener);
+        if (journal != null) {
+            rfidToProductMap.putAll(journal.recoveredState());
+            stockIndex.addAll(rfidToProductMap);
+            EventLog.prompt("Recovered {} RFID associations from the journal.", rfidToProductMap.size());
+            journal.startPeriodicSnapshots(() -> rfidToProductMap, SNAPSHOT_INTERVAL_MS);
+        }
+        // RFID tags are not pre-defined. Any tag can be used.
+        EventLog.prompt("Loaded {} products on {} boards.", registry.productCount(), registry.boards().size());
+        EventLog.prompt("Ready to scan. Waiting for input from scanner or 'confirm' command...");
+    }
 
-        System.out.println("Ready to scan. Waiting for input from scanner or 'confirm' command...");
+    private static BoardRegistry loadDefaultRegistry() {
+        try {
+            return BoardRegistry.loadDefault();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the default board registry", e);
+        }
     }
 
     /**
-     * Parses and handles raw input from a scanner or user command.
+     * Parses and handles raw input from the local console scanner.
      * @param inputLine The line of text from the scanner or console.
      */
     public void handleInput(String inputLine) {
+        handleInput(CONSOLE_SCANNER_ID, inputLine);
+    }
+
+    /**
+     * Parses and handles raw input from a scanner or user command.
+     * Input of one station is processed under that station's session lock only,
+     * so different stations can import and export in parallel.
+     * @param scannerId The station the input came from.
+     * @param inputLine The line of text from the scanner or console.
+     */
+    public void handleInput(String scannerId, String inputLine) {
+        handleInput(scannerId, inputLine, System.nanoTime());
+    }
+
+    /**
+     * Handles input that was received earlier, e.g. taken from a {@link org.example.pipeline.ScanPipeline}.
+     * @param receivedNanos The {@link System#nanoTime()} at which the input was received; LED
+     *                      command latencies are measured from it.
+     * @see #handleInput(String, String)
+     */
+    public void handleInput(String scannerId, String inputLine, long receivedNanos) {
+        long startNanos = System.nanoTime();
         String command = inputLine.trim();
         if (command.isEmpty()) {
             return;
         }
+        Metrics.SCANS.increment();
 
-        // Priority 1: Handle confirmation for a pending export
-        if ("confirm".equalsIgnoreCase(command)) {
-            handleExportConfirmation();
-            return; // Done
+        try {
+            // Retried if the session was removed between the lookup and taking its monitor.
+            while (!handleCommand(session(scannerId), command, receivedNanos)) {
+                Thread.onSpinWait();
+            }
+        } finally {
+            Metrics.SCAN_HANDLING.record(System.nanoTime() - startNanos);
         }
+    }
 
-        // If an export is pending confirmation, block other operations.
-        if (this.rfidWaitingForExportConfirmation != null) {
-            System.out.println("[ACTION REQUIRED] An export is pending for RFID '" + this.rfidWaitingForExportConfirmation + "'. Please find the item and type 'confirm'.");
-            return;
+    private ScannerSession session(String scannerId) {
+        ScannerSession session = sessions.get(scannerId);
+        if (session != null) {
+            return session;
         }
+        // A new station: a good moment to forget the idle ones, at most once per idle period.
+        long now = System.nanoTime();
+        long lastSweep = lastSessionSweepNanos.get();
+        if (now - lastSweep >= TimeUnit.MILLISECONDS.toNanos(SESSION_IDLE_MS) && lastSessionSweepNanos.compareAndSet(lastSweep, now)) {
+            evictIdleSessions(SESSION_IDLE_MS);
+        }
+        return sessions.computeIfAbsent(scannerId, ScannerSession::new);
+    }
+
+    /**
+     * @return False if the session was closed meanwhile; nothing was done then.
+     */
+    private boolean handleCommand(ScannerSession session, String command, long receivedNanos) {
+        synchronized (session) {
+            if (session.closed) {
+                return false;
+            }
+            session.scanReceivedNanos = receivedNanos;
+            session.lastUsedNanos = System.nanoTime();
+            // Priority 1: Handle confirmation for a pending export
+            if ("confirm".equalsIgnoreCase(command)) {
+                handleExportConfirmation(session);
+                return true; // Done
+            }
 
-        // Priority 2: Handle product QR scan (start of import)
-        if (command.startsWith("PRD") && productToLedMap.containsKey(command)) {
-            handleProductScan(command);
+            // If an export is pending confirmation, block other operations at this station.
+            if (session.rfidWaitingForExportConfirmation != null) {
+                EventLog.prompt("[ACTION REQUIRED] An export is pending for RFID '{}'. Please find the item and type 'confirm'.", session.rfidWaitingForExportConfirmation);
+                return true;
+            }
+
+            // Priority 2: Handle product QR scan (start of import)
+            if (registry.isKnownProduct(command)) {
+                handleProductScan(session, command);
+            }
+            // Priority 3: Handle RFID scan (import step 2 or start of export)
+            else {
+                handleRfidScan(session, command);
+            }
+            return true;
         }
-        // Priority 3: Handle RFID scan (import step 2 or start of export)
-        else {
-            handleRfidScan(command);
+    }
+
+    /**
+     * @return The number of units of a product in stock, i.e. of RFID tags associated with it.
+     */
+    public int stockCount(String productId) {
+        return stockIndex.count(productId);
+    }
+
+    /**
+     * @return The RFID tags currently holding a product.
+     */
+    public List<String> tagsOf(String productId) {
+        return stockIndex.tags(productId);
+    }
+
+    /**
+     * @return The {@code n} products with the most units in stock, most first.
+     */
+    public List<StockLevel> topStockedProducts(int n) {
+        return stockIndex.topProducts(n);
+    }
+
+    /**
+     * @return The session of a station, or null if it has not scanned anything yet.
+     */
+    public ScannerSession getSession(String scannerId) {
+        return sessions.get(scannerId);
+    }
+
+    /**
+     * @return The product an RFID tag is associated with, or null if the tag is free.
+     */
+    public String productOf(String rfidTag) {
+        return rfidToProductMap.get(rfidTag);
+    }
+
+    /**
+     * Applies the items of a batch scan file in order, skipping the ones already failed.
+     * An import fails if the tag is associated, an export if it is free or being exported at
+     * a station. All journal records are waited for once, at the end, and every LED is set once
+     * to its state after the last item touching it (on after an import, off after an export).
+     * LEDs are told apart by board and relay, so products sharing a relay share one state.
+     * Per item, nothing is printed.
+     *
+     * If the journal fails, the item being applied and all items after it are failed with the
+     * error, and so are the items applied before it if their records may not be durable. They
+     * stay applied in memory, so their LEDs are still set; then the error is thrown.
+     * @param switched Receives the LEDs that were set, also if an IOException is thrown.
+     */
+    public void applyBatch(List<BatchItem> items, Collection<Location> switched) throws IOException {
+        // Keyed by board and relay (see Location#equals): a later item on a shared relay replaces the earlier state.
+        Map<Location, Boolean> leds = new LinkedHashMap<>();
+        List<BatchItem> applied = new ArrayList<>();
+        long[] sequence = {0};
+        long lastSequence = 0;
+        IOException failure = null;
+        // 1. Associations, in file order
+        for (BatchItem item : items) {
+            if (!item.isOk()) {
+                continue;
+            }
+            if (failure != null) {
+                item.fail("Not applied, the journal failed: " + failure.getMessage());
+                continue;
+            }
+            String productId;
+            try {
+                if (item.getOperation() == BatchItem.Operation.IMPORT) {
+                    productId = item.getProductId();
+                    if (!isJournalable(item.getRfidTag()) || !isJournalable(productId)) {
+                        // Refused by the journal without failing it; must not abort the batch.
+                        item.fail("Longer than " + InventoryJournal.MAX_FIELD_BYTES + " bytes");
+                        continue;
+                    }
+                    String existing = associate(item.getRfidTag(), productId, sequence);
+                    if (existing != null) {
+                        item.fail("Already associated with product " + existing);
+                        continue;
+                    }
+                } else {
+                    String refusal = claimExport(item.getRfidTag(), BATCH_STATION);
+                    if (refusal != null) {
+                        item.fail(refusal);
+                        continue;
+                    }
+                    try {
+                        productId = dissociate(item.getRfidTag(), sequence);
+                    } finally {
+                        pendingExports.remove(item.getRfidTag(), BATCH_STATION);
+                    }
+                    if (productId == null) {
+                        item.fail("Not associated");
+                        continue;
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+                item.fail("Not applied, the journal failed: " + e.getMessage());
+                continue;
+            }
+            applied.add(item);
+            lastSequence = Math.max(lastSequence, sequence[0]);
+            Location led = registry.route(productId);
+            if (led != null) {
+                leds.put(led, item.getOperation() == BatchItem.Operation.IMPORT);
+            }
         }
+        // 2. One durable wait for the whole batch
+        if (journal != null && lastSequence > 0) {
+            try {
+                journal.awaitDurable(lastSequence);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                for (BatchItem item : applied) {
+                    item.fail("Applied, but may be lost on restart, the journal failed: " + e.getMessage());
+                }
+            }
+        }
+        for (BatchItem item : applied) {
+            if (item.isOk()) {
+                (item.getOperation() == BatchItem.Operation.IMPORT ? Metrics.IMPORTS : Metrics.EXPORTS).increment();
+            }
+        }
+        // 3. The LED changes, for everything applied in memory; the send queues coalesce them per board
+        long now = System.nanoTime();
+        leds.forEach((led, on) -> relayShadow.set(led.getBoard(), led.getRelayNumber(), on, now));
+        switched.addAll(leds.keySet());
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return True once the controller acknowledged the LED's current state.
+     */
+    public boolean isLedConfirmed(Location led) {
+        return relayShadow.isConfirmed(led.getBoard(), led.getRelayNumber());
     }
 
-    private void handleProductScan(String productId) {
+    /**
+     * Forgets a station's session, e.g. because its scans are handled elsewhere from now on.
+     * A product scanned for an import that never got its tag is dropped.
+     * @return False if the station has an export waiting for 'confirm'; the session is kept then.
+     */
+    public boolean releaseSession(String scannerId) {
+        ScannerSession session = sessions.get(scannerId);
+        if (session == null) {
+            return true;
+        }
+        synchronized (session) {
+            if (session.rfidWaitingForExportConfirmation != null) {
+                return false;
+            }
+            session.closed = true;
+            sessions.remove(scannerId, session);
+            return true;
+        }
+    }
+
+    /**
+     * Forgets the sessions of stations that scanned nothing for the given time and have no export
+     * waiting for 'confirm'; a product scanned for an import that never got its tag is dropped.
+     * Also done by itself when a new station shows up, at most once per {@value #SESSION_IDLE_MS} ms.
+     * @return The number of sessions forgotten.
+     */
+    public int evictIdleSessions(long idleMillis) {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        int evicted = 0;
+        for (ScannerSession session : sessions.values()) {
+            synchronized (session) {
+                if (session.rfidWaitingForExportConfirmation == null && now - session.lastUsedNanos >= idleNanos) {
+                    session.closed = true;
+                    sessions.remove(session.getScannerId(), session);
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return The number of stations with a session.
+     */
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Starts handing over the associations of products on some boards, e.g. to another node.
+     * They stay here, but cannot be exported until {@link #completeHandOver(Map)} removes them
+     * or {@link #abortHandOver(Map)} gives them back. Tags being exported are left out until
+     * their export is confirmed.
+     * @param handedOver Selects the boards whose associations leave.
+     * @return RFID tag to product of the associations to hand over.
+     */
+    public Map<String, String> beginHandOver(Predicate<BoardConfig> handedOver) {
+        Map<String, String> claimed = new HashMap<>();
+        for (Map.Entry<String, String> entry : rfidToProductMap.entrySet()) {
+            String rfidTag = entry.getKey();
+            Location location = registry.route(entry.getValue());
+            if (location == null || !handedOver.test(location.getBoard()) || !handingOver.add(rfidTag)) {
+                continue;
+            }
+            // Checked after the mark; claimExport() checks in the opposite order, so one of them backs off.
+            // Once marked the association cannot change, so it is read again to skip a stale entry.
+            if (pendingExports.containsKey(rfidTag) || !entry.getValue().equals(rfidToProductMap.get(rfidTag))) {
+                handingOver.remove(rfidTag);
+                continue;
+            }
+            claimed.put(rfidTag, entry.getValue());
+        }
+        return claimed;
+    }
+
+    /**
+     * Removes associations the new owner has adopted, journaled like exports.
+     * @param associations As returned by {@link #beginHandOver(Predicate)}.
+     */
+    public void completeHandOver(Map<String, String> associations) throws IOException {
+        long[] sequence = {0};
+        long lastSequence = 0;
+        try {
+            for (String rfidTag : associations.keySet()) {
+                dissociate(rfidTag, sequence);
+                lastSequence = Math.max(lastSequence, sequence[0]);
+            }
+        } finally {
+            handingOver.removeAll(associations.keySet());
+        }
+        if (journal != null && lastSequence > 0) {
+            journal.awaitDurable(lastSequence);
+        }
+    }
+
+    /**
+     * Keeps associations whose hand-over failed; they can be exported here again.
+     * @param associations As returned by {@link #beginHandOver(Predicate)}.
+     */
+    public void abortHandOver(Map<String, String> associations) {
+        handingOver.removeAll(associations.keySet());
+    }
+
+    /**
+     * Stops re-asserting the relays of boards this service no longer owns.
+     * @param released Selects the boards.
+     */
+    public void releaseBoards(Predicate<BoardConfig> released) {
+        List<BoardConfig> kept = new ArrayList<>();
+        for (BoardConfig board : registry.boards()) {
+            if (!released.test(board)) {
+                kept.add(board);
+            }
+        }
+        relayShadow.retainBoards(kept);
+    }
+
+    /**
+     * Takes over associations handed over by another node, journaled like imports, and makes
+     * sure their LEDs are on. Idempotent: an association that already exists is left as it is, so
+     * a hand-over can simply be retried after a failure.
+     * @param associations RFID tag to product.
+     * @throws IOException If journaling fails; the associations adopted before stay.
+     */
+    public void adoptAssociations(Map<String, String> associations) throws IOException {
+        long now = System.nanoTime();
+        long[] sequence = {0};
+        long lastSequence = 0;
+        List<Location> leds = new ArrayList<>();
+        for (Map.Entry<String, String> entry : associations.entrySet()) {
+            String existing = associate(entry.getKey(), entry.getValue(), sequence);
+            if (existing != null && !existing.equals(entry.getValue())) {
+                EventLog.warn("RFID '{}' handed over for product '{}' is already associated with '{}'; kept.", entry.getKey(), entry.getValue(), existing);
+                continue;
+            }
+            lastSequence = Math.max(lastSequence, sequence[0]);
+            Location led = registry.route(entry.getValue());
+            if (led != null) {
+                leds.add(led);
+            }
+        }
+        // The sender drops its copies once this returns, so the adopted ones must be durable first.
+        if (journal != null && lastSequence > 0) {
+            journal.awaitDurable(lastSequence);
+        }
+        for (Location led : leds) {
+            relayShadow.set(led.getBoard(), led.getRelayNumber(), true, now);
+        }
+    }
+
+    private void handleProductScan(ScannerSession session, String productId) {
         // This is "Import: Step 1" - scanning the product's QR code
-        this.lastScannedProduct = productId;
-        System.out.println("OK: Product '" + productId + "' scanned. Now scan the RFID tag to associate.");
+        session.lastScannedProduct = productId;
+        EventLog.prompt("OK: Product '{}' scanned. Now scan the RFID tag to associate.", productId);
     }
 
-    private void handleRfidScan(String rfidTag) {
+    private void handleRfidScan(ScannerSession session, String rfidTag) {
         // This could be "Import: Step 2" or "Export"
 
         // Check if this is the second step of an import process
-        if (this.lastScannedProduct != null) {
+        if (session.lastScannedProduct != null) {
             // --- IMPORT LOGIC ---
-            System.out.println("IMPORT: Associating RFID tag '" + rfidTag + "' with product '" + this.lastScannedProduct + "'.");
+            String productId = session.lastScannedProduct;
+            session.lastScannedProduct = null; // Reset for the next operation
+            EventLog.prompt("IMPORT: Associating RFID tag '{}' with product '{}'.", rfidTag, productId);
 
-            if (rfidToProductMap.containsKey(rfidTag)) {
-                 System.out.println("[WARN] This RFID tag is already associated with product '" + rfidToProductMap.get(rfidTag) + "'. Please handle the export first.");
-                 this.lastScannedProduct = null; // Clear state
-                 return;
+            String existing;
+            try {
+                existing = associate(rfidTag, productId);
+            } catch (IOException e) {
+                EventLog.error("Failed to record import of RFID '{}': {}", rfidTag, e.getMessage());
+                return;
             }
-
-            rfidToProductMap.put(rfidTag, this.lastScannedProduct);
-            Integer ledNumber = productToLedMap.get(this.lastScannedProduct);
-            if (ledNumber != null) {
-                System.out.println("-> Turning ON LED " + ledNumber + " for product " + this.lastScannedProduct);
-                controlLed(ledNumber, true);
+            if (existing != null) {
+                EventLog.warn("This RFID tag is already associated with product '{}'. Please handle the export first.", existing);
+                return;
             }
+            Metrics.IMPORTS.increment();
 
-            this.lastScannedProduct = null; // Reset for the next operation
+            Location led = registry.route(productId);
+            if (led != null) {
+                EventLog.info("-> Turning ON LED {} for product {}", led.getRelayNumber(), productId);
+                controlLed(led, true, session.scanReceivedNanos);
+            }
 
         } else {
             // --- EXPORT or FREE SCAN LOGIC ---
-            if (rfidToProductMap.containsKey(rfidTag)) {
+            String productId = rfidToProductMap.get(rfidTag);
+            if (productId != null) {
                 // --- START EXPORT PROCESS ---
-                String productId = rfidToProductMap.get(rfidTag);
-                System.out.println("EXPORT: Found product '" + productId + "' associated with RFID '" + rfidTag + "'.");
+                String refusal = claimExport(rfidTag, session.getScannerId());
+                if (refusal != null) {
+                    EventLog.warn("RFID '{}' cannot be exported now: {}.", rfidTag, refusal);
+                    return;
+                }
+                // Another station may have exported the tag between the lookup and the claim.
+                productId = rfidToProductMap.get(rfidTag);
+                if (productId == null) {
+                    pendingExports.remove(rfidTag, session.getScannerId());
+                }
+            }
+            if (productId != null) {
+                EventLog.prompt("EXPORT: Found product '{}' associated with RFID '{}'.", productId, rfidTag);
 
-                Integer ledNumber = productToLedMap.get(productId);
-                if (ledNumber != null) {
-                    System.out.println("-> Starting continuous flashing for LED " + ledNumber + " to locate the item.");
-                    startFlashingLed(ledNumber); // Start flashing
+                Location led = registry.route(productId);
+                if (led != null) {
+                    EventLog.info("-> Starting continuous flashing for LED {} to locate the item.", led.getRelayNumber());
+                    startFlashingLed(session, led); // Start flashing
                 }
 
                 // Set state to wait for confirmation instead of completing the export
-                this.rfidWaitingForExportConfirmation = rfidTag;
-                System.out.println("ACTION: Please find the item. Type 'confirm' and press Enter after you have picked it up.");
+                session.rfidWaitingForExportConfirmation = rfidTag;
+                EventLog.prompt("ACTION: Please find the item. Type 'confirm' and press Enter after you have picked it up.");
 
             } else {
-                System.out.println("INFO: Scanned free RFID tag '" + rfidTag + "'. Not associated with any product.");
+                EventLog.prompt("INFO: Scanned free RFID tag '{}'. Not associated with any product.", rfidTag);
             }
         }
     }
@@ -137,95 +588,295 @@ public class InventoryService {
     /**
      * Handles the confirmation command to finalize an export.
      */
-    private void handleExportConfirmation() {
-        if (this.rfidWaitingForExportConfirmation == null) {
-            System.out.println("[INFO] No export operation is waiting for confirmation.");
+    private void handleExportConfirmation(ScannerSession session) {
+        if (session.rfidWaitingForExportConfirmation == null) {
+            EventLog.prompt("[INFO] No export operation is waiting for confirmation.");
             return;
         }
 
-        String rfidTag = this.rfidWaitingForExportConfirmation;
-        String productId = rfidToProductMap.get(rfidTag);
+        String rfidTag = session.rfidWaitingForExportConfirmation;
+        String productId;
+        try {
+            // Complete the export by removing the association
+            productId = dissociate(rfidTag);
+        } catch (IOException e) {
+            EventLog.error("Failed to record export of RFID '{}': {}. The export is still pending.", rfidTag, e.getMessage());
+            return;
+        }
 
-        System.out.println("CONFIRMED: Completing export for product '" + productId + "' with RFID '" + rfidTag + "'.");
+        if (productId == null) {
+            EventLog.warn("RFID '{}' was already exported; nothing to confirm.", rfidTag);
+        } else {
+            Metrics.EXPORTS.increment();
+            EventLog.prompt("CONFIRMED: Completing export for product '{}' with RFID '{}'.", productId, rfidTag);
+        }
 
         // Stop flashing the LED
-        if (flashingLedNumber != -1) {
-            stopFlashingLed();
-            // Send the final OFF command (simulated)
-            System.out.println("-> Sending final OFF command for LED " + flashingLedNumber);
-            controlLed(flashingLedNumber, false);
+        if (session.flashingLed != null) {
+            Location led = session.flashingLed;
+            session.flashingLed = null;
+            if (stopFlashingLed(led)) {
+                // The blink may have left the LED on.
+                EventLog.info("-> Sending final OFF command for LED {}", led.getRelayNumber());
+                controlLed(led, false, session.scanReceivedNanos);
+            }
         }
 
-        // Complete the export by removing the association
-        rfidToProductMap.remove(rfidTag);
-        System.out.println("-> RFID tag '" + rfidTag + "' is now free.");
+        pendingExports.remove(rfidTag, session.getScannerId());
+        EventLog.info("-> RFID tag '{}' is now free.", rfidTag);
 
         // Reset the state
-        this.rfidWaitingForExportConfirmation = null;
-        System.out.println("System is ready for the next operation.");
+        session.rfidWaitingForExportConfirmation = null;
+        EventLog.prompt("System is ready for the next operation.");
     }
 
-    private void startFlashingLed(int ledNumber) {
-        stopFlashing = false;
-        flashingLedNumber = ledNumber;
-        System.out.println("-> LED " + flashingLedNumber + " is now flashing continuously. Waiting for 'confirm'...");
-        flashingThread = new Thread(() -> {
-            while (!stopFlashing) {
-                try {
-                    // Send ON command silently
-                    byte[] packet = PacketBuilder.sendControlCommand(this.boardConfig, 1, flashingLedNumber);
-                    UDPClient.send(this.boardConfig, packet);
-                    Thread.sleep(500); // Flash every 500ms
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    System.out.println("Flashing thread interrupted.");
-                    break;
-                } catch (Exception e) {
-                    System.err.println("[ERROR] Flashing LED failed: " + e.getMessage());
-                }
+    /**
+     * Claims a tag for an export at a station.
+     * @return Why the tag cannot be exported now, or null if the station may export it.
+     */
+    private String claimExport(String rfidTag, String station) {
+        String exportingStation = pendingExports.putIfAbsent(rfidTag, station);
+        if (exportingStation != null) {
+            return "Being exported at station " + exportingStation;
+        }
+        // Checked after the claim; beginHandOver() checks in the opposite order.
+        if (handingOver.contains(rfidTag)) {
+            pendingExports.remove(rfidTag, station);
+            return "Being handed over to another node";
+        }
+        return null;
+    }
+
+    /**
+     * Associates a tag with a product unless it is already associated.
+     * The journal append and the stock index update happen inside the map's per-tag lock, so
+     * they see the events of one tag in the same order as the map; the call returns once the
+     * association is durable. If it cannot be made durable, it is undone before the error is thrown.
+     * @return The product the tag was already associated with, or null if it was associated now.
+     */
+    private String associate(String rfidTag, String productId) throws IOException {
+        long[] sequence = {0};
+        String existing = associate(rfidTag, productId, sequence);
+        if (existing == null && journal != null) {
+            try {
+                journal.awaitDurable(sequence[0]);
+            } catch (IOException e) {
+                undo(rfidTag, productId, null);
+                throw e;
             }
-            System.out.println("Flashing thread stopped for LED " + flashingLedNumber);
-        });
-        flashingThread.start();
+        }
+        return existing;
+    }
+
+    /**
+     * Like {@link #associate(String, String)}, but does not wait for the journal.
+     * @param sequence Receives the journal sequence to wait for.
+     */
+    private String associate(String rfidTag, String productId, long[] sequence) throws IOException {
+        String[] existing = {null};
+        beginChange();
+        try {
+            // compute() makes the check and the association one atomic step across stations.
+            rfidToProductMap.compute(rfidTag, (tag, current) -> {
+                if (current != null) {
+                    existing[0] = current;
+                    return current;
+                }
+                if (journal != null) {
+                    try {
+                        sequence[0] = journal.recordImport(tag, productId);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                stockIndex.added(tag, productId);
+                return productId;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            endChange();
+        }
+        return existing[0];
     }
 
-    private void stopFlashingLed() {
-        stopFlashing = true;
-        if (flashingThread != null) {
-            flashingThread.interrupt(); // Interrupt the thread to stop it
+    /**
+     * Removes a tag's association, journaling the export first if a journal is configured.
+     * Returns once the export is durable; if it cannot be made durable, the association is restored
+     * before the error is thrown.
+     * @return The product the tag was associated with, or null if it was free.
+     */
+    private String dissociate(String rfidTag) throws IOException {
+        long[] sequence = {0};
+        String removed = dissociate(rfidTag, sequence);
+        if (removed != null && journal != null) {
             try {
-                flashingThread.join(1000); // Wait for the thread to finish (max 1 second)
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+                journal.awaitDurable(sequence[0]);
+            } catch (IOException e) {
+                undo(rfidTag, null, removed);
+                throw e;
             }
-            flashingThread = null;
         }
-        flashingLedNumber = -1;
+        return removed;
     }
 
+    /**
+     * Reverts a change whose journal record did not become durable, so a failure reported to the
+     * station leaves the tag as it was. The record may still reach the disk (e.g. if only the wait
+     * was interrupted), so the reverse event is journaled too, as far as the journal still accepts it.
+     * A change made to the tag meanwhile by another station is kept.
+     * @param changedTo   The product the tag was associated with, or null if it was freed.
+     * @param changedFrom The product the tag was associated with before, or null if it was free.
+     */
+    private void undo(String rfidTag, String changedTo, String changedFrom) {
+        beginChange();
+        try {
+            rfidToProductMap.compute(rfidTag, (tag, current) -> {
+                if (!Objects.equals(current, changedTo)) {
+                    return current;
+                }
+                try {
+                    if (changedFrom == null) {
+                        journal.recordExport(tag);
+                    } else {
+                        journal.recordImport(tag, changedFrom);
+                    }
+                } catch (IOException e) {
+                    // Refused only once the journal failed or closed; the in-memory state is still reverted.
+                }
+                if (current != null) {
+                    stockIndex.removed(tag, current);
+                }
+                if (changedFrom != null) {
+                    stockIndex.added(tag, changedFrom);
+                }
+                return changedFrom;
+            });
+        } finally {
+            endChange();
+        }
+    }
 
     /**
-     * Sends a command to control an LED.
-     * @param ledNumber The LED to control (1-5).
-     * @param turnOn    True to turn on, false to turn off.
+     * Like {@link #dissociate(String)}, but does not wait for the journal.
+     * @param sequence Receives the journal sequence to wait for.
      */
-    private void controlLed(int ledNumber, boolean turnOn) {
+    private String dissociate(String rfidTag, long[] sequence) throws IOException {
+        String[] removed = {null};
+        beginChange();
         try {
-            if (turnOn) {
-                System.out.println("... Sending UDP command to turn ON floor/device " + ledNumber);
-                byte[] packet = PacketBuilder.sendControlCommand(this.boardConfig, 1, ledNumber);
-                UDPClient.send(this.boardConfig, packet);
-                System.out.println("... ON command for floor/device " + ledNumber + " sent successfully!");
-            } else {
-                // --- IMPORTANT ---
-                // The provided SDK documentation does not specify how to turn a relay/LED OFF.
-                // It might be sending the same command again, or sending with a different floor number (e.g., floor + 40), or a different function ID.
-                // For now, this action is only simulated.
-                System.out.println("[SIMULATED] Turning OFF floor/device " + ledNumber + ". You need to implement the actual UDP 'OFF' command here.");
+            rfidToProductMap.computeIfPresent(rfidTag, (tag, current) -> {
+                if (journal != null) {
+                    try {
+                        sequence[0] = journal.recordExport(tag);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                stockIndex.removed(tag, current);
+                removed[0] = current;
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            endChange();
+        }
+        return removed[0];
+    }
+
+    private boolean isJournalable(String field) {
+        // A char is at most 3 UTF-8 bytes, so only long strings need encoding.
+        return journal == null || field.length() * 3 <= InventoryJournal.MAX_FIELD_BYTES
+                || field.getBytes(StandardCharsets.UTF_8).length <= InventoryJournal.MAX_FIELD_BYTES;
+    }
+
+    // A snapshot must not read the map between a journal append and the map update it belongs to.
+    private void beginChange() {
+        if (journal != null) {
+            journal.beginChange();
+        }
+    }
+
+    private void endChange() {
+        if (journal != null) {
+            journal.endChange();
+        }
+    }
+
+    private void startFlashingLed(ScannerSession session, Location led) {
+        session.flashingLed = led;
+        // Several stations may be looking for items behind the same LED; only the first starts it.
+        // The scheduler call happens inside compute() so it is atomic with the count change.
+        ledFlashCounts.compute(led, (location, count) -> {
+            if (count == null) {
+                blinkScheduler.start(location.getBoard(), location.getRelayNumber(), FLASH_PERIOD_MS);
+                return 1;
             }
-        } catch (Exception e) {
-            System.err.println("[ERROR] Failed to send UDP command for LED " + ledNumber + ": " + e.getMessage());
-            e.printStackTrace();
+            return count + 1;
+        });
+        EventLog.info("-> LED {} is now flashing continuously. Waiting for 'confirm'...", led.getRelayNumber());
+    }
+
+    /**
+     * Releases one station's use of a flashing LED.
+     * @return True if this was the last station using it and the LED stopped flashing.
+     */
+    private boolean stopFlashingLed(Location led) {
+        Integer remaining = ledFlashCounts.computeIfPresent(led, (location, count) -> {
+            if (count > 1) {
+                return count - 1;
+            }
+            // Only clears the LED's slot in the scheduler, so there is no thread to wait for.
+            blinkScheduler.stop(location.getBoard(), location.getRelayNumber());
+            return null;
+        });
+        return remaining == null;
+    }
+
+
+    /**
+     * Sets an LED to a state.
+     * A command is only sent if the LED is not already in that state (see {@link RelayShadow});
+     * it is queued for the board that owns the LED and acknowledged asynchronously.
+     * @param led    The board and relay of the LED.
+     * @param turnOn True to turn on, false to turn off.
+     * @param scanNanos When the scan that caused the command was received.
+     */
+    private void controlLed(Location led, boolean turnOn, long scanNanos) {
+        int ledNumber = led.getRelayNumber();
+        BoardConfig board = led.getBoard();
+        String state = turnOn ? "ON" : "OFF";
+        if (relayShadow.set(board, ledNumber, turnOn, scanNanos)) {
+            EventLog.info("... {} command for floor/device {} on board SN {} queued.", state, ledNumber, board.serialNumber);
+        } else {
+            EventLog.info("... Floor/device {} on board SN {} is already {}; nothing to send.", ledNumber, board.serialNumber, state);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Stops blinking, re-asserting and sending relay commands, and stops following registry reloads.
+     * Commands still queued are dropped; the journal, if any, stays open and is closed by its owner.
+     */
+    @Override
+    public void close() {
+        registry.removeReloadListener(reloadListener);
+        blinkScheduler.close();
+        relayShadow.close();
+        sendQueues.close();
+    }
+
+    /**
+     * Queues one relay command for the shadow. Tracked send: lost datagrams are
+     * retransmitted until the controller acknowledges.
+     */
+    private CompletableFuture<Void> sendRelayCommand(BoardConfig board, int floorNumber, long scanNanos) {
+        Metrics.LED_COMMANDS.increment();
+        return sendQueues.submit(board, floorNumber, scanNanos).whenComplete((ignored, error) -> {
+            if (error != null) {
+                Metrics.LED_COMMAND_FAILURES.increment();
+                EventLog.error("Command for floor/device {} on board SN {} failed: {}", floorNumber, board.serialNumber, error.getMessage());
+            }
+        });
+    }
+}
@@ -1,22 +1,117 @@
 package org.example.service;
 
 import org.example.config.BoardConfig;
+import org.example.logging.EventLog;
+import org.example.metrics.Metrics;
+import org.example.network.BoardSendQueues;
+import org.example.network.CommandTracker;
 import org.example.network.UDPClient;
 import org.example.protocol.PacketBuilder;
+import org.example.protocol.RelayCoalescer;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * This service contains the core business logic for the warehouse management system.
  */
 public class LedService {
 
-    // The service uses an instance of our mock database.
+    private static final int LOCATE_QUEUE_CAPACITY = 1024; // per board
+
+    // Shared by every LedService using the default queues, so instances do not each start a worker pool.
+    private static volatile BoardSendQueues sharedSendQueues;
+
+    // The warehouse layout; by default the board registry bundled with the application.
     // In a Spring Boot application, this would be an injected dependency (@Autowired).
     private final WarehouseDB database;
 
+    // Sends the per-board bursts of locateProducts() off the caller's thread.
+    private final Executor sendExecutor;
+
+    // Tracks controller acknowledgements; null sends fire-and-forget.
+    private final CommandTracker tracker;
+
+    // Paced per-board queues that replace sendExecutor and tracker when set.
+    private final BoardSendQueues sendQueues;
+
     public LedService() {
-        this.database = new WarehouseDB();
+        this(loadDefaultRegistry());
+    }
+
+    /**
+     * Sends through paced per-board queues on the shared transport and tracker, so a locate loop
+     * cannot send faster than each controller keeps up with. The queues are shared by all
+     * instances created this way.
+     *
+     * @param database The warehouse layout backend used to resolve QR codes to locations.
+     */
+    public LedService(WarehouseDB database) {
+        this(database, pacedSendQueues());
+    }
+
+    /**
+     * @param database   The warehouse layout backend used to resolve QR codes to locations.
+     * @param sendQueues Queues, coalesces and paces the commands per board.
+     */
+    public LedService(WarehouseDB database, BoardSendQueues sendQueues) {
+        this.database = database;
+        this.sendExecutor = null;
+        this.tracker = null;
+        this.sendQueues = sendQueues;
+    }
+
+    /**
+     * @param database     The warehouse layout backend used to resolve QR codes to locations.
+     * @param sendExecutor Runs the per-board send bursts of {@link #locateProducts(Collection)}.
+     * @param tracker      Waits for controller acknowledgements, or null to send fire-and-forget.
+     */
+    public LedService(WarehouseDB database, Executor sendExecutor, CommandTracker tracker) {
+        this.database = database;
+        this.sendExecutor = sendExecutor;
+        this.tracker = tracker;
+        this.sendQueues = null;
+    }
+
+    private static WarehouseDB loadDefaultRegistry() {
+        try {
+            return BoardRegistry.loadDefault();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load the default board registry", e);
+        }
+    }
+
+    /**
+     * @return The shared paced send queues, started on first use.
+     */
+    private static BoardSendQueues pacedSendQueues() {
+        BoardSendQueues current = sharedSendQueues;
+        if (current == null) {
+            synchronized (LedService.class) {
+                current = sharedSendQueues;
+                if (current == null) {
+                    try {
+                        current = new BoardSendQueues(UDPClient.transport(), UDPClient.tracker(), LOCATE_QUEUE_CAPACITY,
+                                Runtime.getRuntime().availableProcessors(), 0, UDPClient.pacer());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to open the UDP transport", e);
+                    }
+                    sharedSendQueues = current;
+                }
+            }
+        }
+        return current;
     }
 
     /**
@@ -24,10 +119,12 @@ public class LedService {
      * and sends a command to the corresponding controller to activate an LED.
      *
      * @param qrCode The QR code of the product to locate.
-     * @throws Exception If there is a network error during packet sending.
+     * @throws Exception If there is a network error during packet sending, or the controller
+     *                   rejected or never acknowledged the command.
      */
     public void locateProduct(String qrCode) throws Exception {
-        System.out.println("Received request to locate product with QR Code: " + qrCode);
+        EventLog.info("Received request to locate product with QR Code: {}", qrCode);
+        Metrics.LOCATES.increment();
 
         // 1. Look up the location in the database using the QR code.
         Optional<Location> locationOptional = database.findLocationByQrCode(qrCode);
@@ -38,20 +135,133 @@ public class LedService {
             BoardConfig board = location.getBoard();
             int floorNumber = location.getRelayNumber();
 
-            System.out.println("Product found at location: Board SN " + board.serialNumber + ", Floor/Device " + floorNumber);
+            EventLog.info("Product found at location: Board SN {}, Floor/Device {}", board.serialNumber, floorNumber);
 
-            // 3. Build the UDP packet using the retrieved information.
-            // The door number must be 1 for this command.
-            byte[] packet = PacketBuilder.sendControlCommand(board, 1, floorNumber);
-
-            // 4. Send the command.
-            System.out.println("Sending 'Remote Open Door' command to IP " + board.ip + "...");
-            UDPClient.send(board, packet);
-            System.out.println("Command sent successfully.");
+            // 3. Send the command; the queues build the frame when the board's turn comes,
+            // and refuse it if the board is too far behind.
+            EventLog.info("Sending 'Remote Open Door' command to IP {}...", board.ip);
+            CompletableFuture<Void> acknowledged;
+            if (sendQueues != null) {
+                acknowledged = sendQueues.submit(board, floorNumber);
+            } else {
+                // 3a. Build the UDP packet using the retrieved information.
+                // The door number must be 1 for this command.
+                ByteBuffer packet = PacketBuilder.controlCommandFrame(board, 1, floorNumber);
+                if (tracker == null) {
+                    UDPClient.send(board, packet);
+                    EventLog.info("Command sent successfully.");
+                    return;
+                }
+                acknowledged = tracker.send(board, packet);
+            }
+            try {
+                acknowledged.get();
+            } catch (ExecutionException e) {
+                Metrics.LED_COMMAND_FAILURES.increment();
+                EventLog.error("Board SN {} did not accept the command: {}", board.serialNumber, e.getCause().getMessage());
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            EventLog.info("Command acknowledged by the controller.");
 
         } else {
             // Handle the case where the QR code does not map to any known location.
-            System.err.println("Error: QR Code '" + qrCode + "' not found in the database. No command sent.");
+            Metrics.LOCATES_NOT_FOUND.increment();
+            EventLog.error("QR Code '{}' not found in the database. No command sent.", qrCode);
+        }
+    }
+
+    /**
+     * Locates a whole wave of products at once.
+     * All QR codes are resolved first, then the locations are grouped by controller board and
+     * each board's commands are sent as one back-to-back burst on the send executor, coalesced
+     * into as few frames as the board allows (see {@link RelayCoalescer}); with send queues, the
+     * queues coalesce and pace them instead, and a board whose queue is full fails its items. Nothing is
+     * printed and nothing is thrown; the outcome of every item is reported through its future.
+     * With a command tracker, a future completes as SENT only once the controller acknowledged
+     * the command (after retransmissions if needed).
+     *
+     * @param qrCodes The QR codes of the products to locate.
+     * @return One future per QR code, in iteration order of {@code qrCodes}.
+     */
+    public List<CompletableFuture<LocateResult>> locateProducts(Collection<String> qrCodes) {
+        List<CompletableFuture<LocateResult>> results = new ArrayList<>(qrCodes.size());
+        Map<BoardConfig, List<PendingLocate>> byBoard = new LinkedHashMap<>();
+
+        for (String qrCode : qrCodes) {
+            CompletableFuture<LocateResult> future = new CompletableFuture<>();
+            results.add(future);
+            Metrics.LOCATES.increment();
+            Optional<Location> location = database.findLocationByQrCode(qrCode);
+            if (location.isEmpty()) {
+                Metrics.LOCATES_NOT_FOUND.increment();
+                future.complete(new LocateResult(qrCode, LocateResult.Status.NOT_FOUND, null, null));
+                continue;
+            }
+            PendingLocate pending = new PendingLocate(qrCode, location.get(), future);
+            if (sendQueues != null) {
+                sendQueues.submit(pending.location.getBoard(), pending.location.getRelayNumber())
+                        .whenComplete((ignored, error) -> pending.complete(error));
+                continue;
+            }
+            byBoard.computeIfAbsent(location.get().getBoard(), board -> new ArrayList<>()).add(pending);
+        }
+
+        byBoard.forEach((board, burst) -> sendExecutor.execute(() -> sendBurst(board, burst)));
+        return results;
+    }
+
+    private void sendBurst(BoardConfig board, List<PendingLocate> burst) {
+        // Items behind the same LED (or, on multi-relay boards, the whole burst) share one frame.
+        sendFrames(board, burst, board.multiRelayFrames && tracker != null);
+    }
+
+    private void sendFrames(BoardConfig board, List<PendingLocate> burst, boolean bitmap) {
+        RelayCoalescer.coalesce(board, burst, pending -> pending.location.getRelayNumber(), bitmap, (packet, covered, relayMask) -> {
+            if (tracker != null) {
+                long[] echo = new long[1];
+                tracker.send(board, packet, relayMask == 0 ? null : echo).whenComplete((ignored, error) -> {
+                    if (error != null || relayMask == 0) {
+                        covered.forEach(pending -> pending.complete(error));
+                        return;
+                    }
+                    List<PendingLocate> unproven = RelayCoalescer.afterBitmapReply(covered, pending -> pending.location.getRelayNumber(),
+                            relayMask, echo[0], pending -> pending.complete(null));
+                    if (!unproven.isEmpty()) {
+                        Metrics.board(board).bitmapFallbacks.increment();
+                        sendExecutor.execute(() -> sendFrames(board, unproven, false));
+                    }
+                });
+                return;
+            }
+            try {
+                UDPClient.send(board, packet);
+                covered.forEach(pending -> pending.complete(null));
+            } catch (Exception e) {
+                covered.forEach(pending -> pending.complete(e));
+            }
+        });
+    }
+
+    private static final class PendingLocate {
+        final String qrCode;
+        final Location location;
+        final CompletableFuture<LocateResult> future;
+
+        PendingLocate(String qrCode, Location location, CompletableFuture<LocateResult> future) {
+            this.qrCode = qrCode;
+            this.location = location;
+            this.future = future;
+        }
+
+        void complete(Throwable error) {
+            if (error != null) {
+                Metrics.LED_COMMAND_FAILURES.increment();
+            }
+            LocateResult.Status status = error == null ? LocateResult.Status.SENT : LocateResult.Status.FAILED;
+            future.complete(new LocateResult(qrCode, status, location, error));
         }
     }
 }
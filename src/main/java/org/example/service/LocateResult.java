@@ -0,0 +1,50 @@
+package org.example.service;
+
+/**
+ * The outcome of locating one product with {@link LedService#locateProducts(java.util.Collection)}.
+ */
+public class LocateResult {
+
+    public enum Status {
+        /** The LED command was acknowledged by the controller (or, without tracking, handed to the network). */
+        SENT,
+        /** The QR code is not in the warehouse database; nothing was sent. */
+        NOT_FOUND,
+        /** The location was found but the command could not be sent or was never acknowledged. */
+        FAILED
+    }
+
+    private final String qrCode;
+    private final Status status;
+    private final Location location;
+    private final Throwable error;
+
+    LocateResult(String qrCode, Status status, Location location, Throwable error) {
+        this.qrCode = qrCode;
+        this.status = status;
+        this.location = location;
+        this.error = error;
+    }
+
+    public String getQrCode() {
+        return qrCode;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The product's location, or null if it was not found.
+     */
+    public Location getLocation() {
+        return location;
+    }
+
+    /**
+     * @return The send failure, or null unless the status is FAILED.
+     */
+    public Throwable getError() {
+        return error;
+    }
+}
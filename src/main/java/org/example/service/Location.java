@@ -5,6 +5,8 @@ import org.example.config.BoardConfig;
 /**
  * Represents a physical location in the warehouse, which is defined by a specific
  * controller board and a relay number on that board.
+ * Two locations are equal if they name the same relay of the same board (by serial number),
+ * so products sharing an LED share its entry in maps keyed by location.
  */
 public class Location {
     private final BoardConfig board;
@@ -22,4 +24,26 @@ public class Location {
     public int getRelayNumber() {
         return relayNumber;
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Location)) {
+            return false;
+        }
+        Location other = (Location) o;
+        return board.serialNumber == other.board.serialNumber && relayNumber == other.relayNumber;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * board.serialNumber + relayNumber;
+    }
+
+    @Override
+    public String toString() {
+        return "SN " + board.serialNumber + " relay " + relayNumber;
+    }
+}
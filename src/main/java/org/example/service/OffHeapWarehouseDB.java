@@ -0,0 +1,277 @@
+package org.example.service;
+
+import org.example.config.BoardConfig;
+import org.example.protocol.PacketBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A warehouse layout backend for millions of SKUs that keeps its data off the Java heap.
+ *
+ * Each location is packed into one int ({@code boardIndex << 8 | relayNumber}) and stored in an
+ * open-addressing table in direct memory, keyed by a 64-bit hash of the QR code. The QR code
+ * characters themselves live in a separate off-heap arena and are compared on every hit, so a
+ * lookup has exactly the semantics of a map lookup. {@link #findPackedLocation(CharSequence)}
+ * does not allocate; {@link #findLocationByQrCode(String)} returns shared Location instances.
+ *
+ * The table is filled by a single writer (usually {@link #load(Path, Collection)}) before it is
+ * published to readers; lookups are safe to run concurrently once loading has finished.
+ */
+public class OffHeapWarehouseDB implements WarehouseDB {
+
+    public static final int NOT_FOUND = -1;
+
+    // Slot layout: long hash (0 = empty) | int key offset in the arena | int packed location.
+    private static final int SLOT_SIZE = 16;
+    private static final double MAX_LOAD_FACTOR = 0.6;
+
+    private final List<BoardConfig> boards = new ArrayList<>();
+    private final Map<Integer, Integer> boardIndexBySerial = new HashMap<>();
+    private final List<Location[]> locationsByBoard = new ArrayList<>();
+
+    private ByteBuffer slots;
+    private int slotMask;
+    private ByteBuffer keys;
+    private int size;
+
+    /**
+     * @param expectedEntries The number of QR codes the table is sized for; it grows past it if needed.
+     */
+    public OffHeapWarehouseDB(int expectedEntries) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedEntries / MAX_LOAD_FACTOR)) - 1) << 1;
+        this.slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        this.slotMask = capacity - 1;
+        this.keys = ByteBuffer.allocateDirect(Math.max(1024, expectedEntries * 24));
+    }
+
+    /**
+     * Builds a backend from a bulk file in one streaming pass.
+     * Each line holds {@code qrCode,boardSerialNumber,relayNumber}; blank lines and lines
+     * starting with '#' are skipped.
+     *
+     * @param file   The bulk location file.
+     * @param boards The controller boards referenced by the file.
+     * @return The loaded backend.
+     * @throws IOException If the file cannot be read or references an unknown board.
+     */
+    public static OffHeapWarehouseDB load(Path file, Collection<BoardConfig> boards) throws IOException {
+        // Assume ~24 bytes per line to size the table up front and avoid rehashing.
+        int expected = (int) Math.min(Integer.MAX_VALUE / 64, Math.max(16, Files.size(file) / 24));
+        OffHeapWarehouseDB db = new OffHeapWarehouseDB(expected);
+        boards.forEach(db::addBoard);
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                int first = line.indexOf(',');
+                int second = line.indexOf(',', first + 1);
+                if (first <= 0 || second < 0) {
+                    throw new IOException("Malformed location at line " + lineNumber + ": " + line);
+                }
+                try {
+                    int serial = Integer.parseInt(line.substring(first + 1, second).trim());
+                    int relay = Integer.parseInt(line.substring(second + 1).trim());
+                    Integer boardIndex = db.boardIndexBySerial.get(serial);
+                    if (boardIndex == null) {
+                        throw new IOException("Unknown board SN " + serial + " at line " + lineNumber);
+                    }
+                    if (relay < 1 || relay > PacketBuilder.MAX_MASK_RELAY) {
+                        throw new IOException("Relay number must be 1-" + PacketBuilder.MAX_MASK_RELAY + " at line " + lineNumber + ": " + line);
+                    }
+                    db.put(line.substring(0, first).trim(), boardIndex, relay);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed location at line " + lineNumber + ": " + line);
+                }
+            }
+        }
+        return db;
+    }
+
+    /**
+     * Registers a controller board.
+     *
+     * @return The board's index, as used in packed locations.
+     */
+    public int addBoard(BoardConfig board) {
+        Integer existing = boardIndexBySerial.get(board.serialNumber);
+        if (existing != null) {
+            return existing;
+        }
+        int index = boards.size();
+        boards.add(board);
+        Location[] locations = new Location[256];
+        for (int relay = 0; relay < locations.length; relay++) {
+            locations[relay] = new Location(board, relay);
+        }
+        locationsByBoard.add(locations);
+        boardIndexBySerial.put(board.serialNumber, index);
+        return index;
+    }
+
+    /**
+     * Adds or replaces the location of a QR code. Not thread-safe; see the class comment.
+     */
+    public void put(String qrCode, int boardIndex, int relayNumber) {
+        if (boardIndex < 0 || boardIndex >= boards.size()) {
+            throw new IllegalArgumentException("Unknown board index " + boardIndex);
+        }
+        if (relayNumber < 1 || relayNumber > PacketBuilder.MAX_MASK_RELAY) {
+            throw new IllegalArgumentException("Relay number must be 1-" + PacketBuilder.MAX_MASK_RELAY + ": " + relayNumber);
+        }
+        int packed = (boardIndex << 8) | relayNumber;
+        long hash = hash(qrCode);
+        int slot = findSlot(qrCode, hash);
+        if (slots.getLong(slot * SLOT_SIZE) != 0) {
+            slots.putInt(slot * SLOT_SIZE + 12, packed);
+            return;
+        }
+        if (size + 1 > (slotMask + 1) * MAX_LOAD_FACTOR) {
+            rehash();
+            slot = findSlot(qrCode, hash);
+        }
+        int base = slot * SLOT_SIZE;
+        slots.putLong(base, hash);
+        slots.putInt(base + 8, appendKey(qrCode));
+        slots.putInt(base + 12, packed);
+        size++;
+    }
+
+    /**
+     * Looks up the packed location of a QR code without allocating.
+     *
+     * @return {@code boardIndex << 8 | relayNumber}, or {@link #NOT_FOUND}.
+     */
+    public int findPackedLocation(CharSequence qrCode) {
+        int slot = findSlot(qrCode, hash(qrCode));
+        int base = slot * SLOT_SIZE;
+        return slots.getLong(base) == 0 ? NOT_FOUND : slots.getInt(base + 12);
+    }
+
+    public static int boardIndexOf(int packedLocation) {
+        return packedLocation >>> 8;
+    }
+
+    public static int relayNumberOf(int packedLocation) {
+        return packedLocation & 0xFF;
+    }
+
+    public BoardConfig boardAt(int boardIndex) {
+        return boards.get(boardIndex);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Optional<Location> findLocationByQrCode(String qrCode) {
+        int packed = findPackedLocation(qrCode);
+        if (packed == NOT_FOUND) {
+            return Optional.empty();
+        }
+        // One Location per (board, relay) is created when the board is added and shared by all lookups.
+        return Optional.of(locationsByBoard.get(boardIndexOf(packed))[relayNumberOf(packed)]);
+    }
+
+    /**
+     * @return The slot holding the key, or the empty slot where it would be inserted.
+     */
+    private int findSlot(CharSequence qrCode, long hash) {
+        int slot = (int) hash & slotMask;
+        while (true) {
+            long stored = slots.getLong(slot * SLOT_SIZE);
+            if (stored == 0 || (stored == hash && keyEquals(slots.getInt(slot * SLOT_SIZE + 8), qrCode))) {
+                return slot;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    // Keys are stored as a char count followed by the UTF-16 chars.
+    private boolean keyEquals(int offset, CharSequence qrCode) {
+        int length = keys.getInt(offset);
+        if (length != qrCode.length()) {
+            return false;
+        }
+        int chars = offset + Integer.BYTES;
+        for (int i = 0; i < length; i++) {
+            if (keys.getChar(chars + i * Character.BYTES) != qrCode.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int appendKey(String qrCode) {
+        int needed = Integer.BYTES + qrCode.length() * Character.BYTES;
+        if (keys.remaining() < needed) {
+            long grown = Math.max((long) keys.capacity() * 2, (long) keys.position() + needed);
+            if (grown > Integer.MAX_VALUE) {
+                throw new IllegalStateException("QR code arena exceeds 2 GB");
+            }
+            ByteBuffer larger = ByteBuffer.allocateDirect((int) grown);
+            keys.flip();
+            larger.put(keys);
+            keys = larger;
+        }
+        int offset = keys.position();
+        keys.putInt(qrCode.length());
+        for (int i = 0; i < qrCode.length(); i++) {
+            keys.putChar(qrCode.charAt(i));
+        }
+        return offset;
+    }
+
+    // Hashes are stored in the slots, so growing the table never touches the key arena.
+    private void rehash() {
+        ByteBuffer old = slots;
+        int oldCapacity = slotMask + 1;
+        int capacity = oldCapacity * 2;
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        slotMask = capacity - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            long hash = old.getLong(i * SLOT_SIZE);
+            if (hash == 0) {
+                continue;
+            }
+            int slot = (int) hash & slotMask;
+            while (slots.getLong(slot * SLOT_SIZE) != 0) {
+                slot = (slot + 1) & slotMask;
+            }
+            slots.putLong(slot * SLOT_SIZE, hash);
+            slots.putInt(slot * SLOT_SIZE + 8, old.getInt(i * SLOT_SIZE + 8));
+            slots.putInt(slot * SLOT_SIZE + 12, old.getInt(i * SLOT_SIZE + 12));
+        }
+    }
+
+    // FNV-1a over the chars, finished with the MurmurHash3 fmix64 mixer. Never returns 0.
+    private static long hash(CharSequence qrCode) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < qrCode.length(); i++) {
+            h ^= qrCode.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
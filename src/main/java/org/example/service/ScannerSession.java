@@ -0,0 +1,52 @@
+package org.example.service;
+
+/**
+ * The workflow state of one scanner station.
+ * Each station runs its own import/export state machine, so a pending export at one
+ * station does not block the others. A session is only ever touched while holding its
+ * own monitor (see {@link InventoryService#handleInput(String, String)}).
+ */
+public class ScannerSession {
+
+    private final String scannerId;
+
+    // Product scanned as step 1 of an import, waiting for its RFID tag.
+    String lastScannedProduct = null;
+
+    // RFID tag whose export was started and waits for 'confirm'.
+    String rfidWaitingForExportConfirmation = null;
+
+    // LED flashing for the pending export; null indicates no LED is flashing.
+    Location flashingLed = null;
+
+    // System.nanoTime() at which the line being handled was received, for the scan-to-send latency.
+    long scanReceivedNanos;
+
+    // System.nanoTime() of the station's last scan, to find idle sessions.
+    long lastUsedNanos = System.nanoTime();
+
+    // Set when the session is removed; a scan that still got hold of it must look the station up again.
+    boolean closed;
+
+    ScannerSession(String scannerId) {
+        this.scannerId = scannerId;
+    }
+
+    public String getScannerId() {
+        return scannerId;
+    }
+
+    /**
+     * @return True if a product was scanned and the next scan is taken as its RFID tag.
+     */
+    public synchronized boolean isAwaitingTag() {
+        return lastScannedProduct != null;
+    }
+
+    /**
+     * @return True if an export waits for 'confirm'.
+     */
+    public synchronized boolean hasPendingExport() {
+        return rfidWaitingForExportConfirmation != null;
+    }
+}
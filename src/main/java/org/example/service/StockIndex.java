@@ -0,0 +1,105 @@
+package org.example.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Secondary index of the RFID associations by product: the set of tags holding each product
+ * and a counter of them, so stock queries never scan all associations.
+ *
+ * {@link InventoryService} updates the index inside the per-tag lock of its RFID map, so the
+ * index sees the imports and exports of a tag in the same order as the map. A product's tag set
+ * and counter are updated one after the other; a query that reads both while a tag of that
+ * product is being imported or exported may see the tag in one and not yet in the other.
+ */
+public class StockIndex {
+
+    private static final Comparator<StockLevel> BY_UNITS =
+            Comparator.comparingInt(StockLevel::getUnits).thenComparing(StockLevel::getProductId, Comparator.reverseOrder());
+
+    private final Map<String, ProductStock> byProduct = new ConcurrentHashMap<>();
+
+    /**
+     * Records that a tag now holds a product.
+     */
+    public void added(String rfidTag, String productId) {
+        ProductStock stock = byProduct.computeIfAbsent(productId, id -> new ProductStock());
+        if (stock.tags.add(rfidTag)) {
+            stock.units.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records that a tag no longer holds a product.
+     */
+    public void removed(String rfidTag, String productId) {
+        ProductStock stock = byProduct.get(productId);
+        if (stock != null && stock.tags.remove(rfidTag)) {
+            stock.units.decrementAndGet();
+        }
+    }
+
+    /**
+     * Rebuilds the index from a full set of associations, e.g. the ones recovered from the journal.
+     *
+     * @param associations RFID tag to product ID.
+     */
+    public void addAll(Map<String, String> associations) {
+        associations.forEach(this::added);
+    }
+
+    /**
+     * @return The number of units of a product in stock; 0 for an unknown product.
+     */
+    public int count(String productId) {
+        ProductStock stock = byProduct.get(productId);
+        return stock == null ? 0 : stock.units.get();
+    }
+
+    /**
+     * @return The RFID tags holding a product, as a snapshot.
+     */
+    public List<String> tags(String productId) {
+        ProductStock stock = byProduct.get(productId);
+        return stock == null ? List.of() : List.copyOf(stock.tags);
+    }
+
+    /**
+     * @return The {@code n} products with the most units in stock, most first (ties by product ID).
+     */
+    public List<StockLevel> topProducts(int n) {
+        if (n <= 0) {
+            return List.of();
+        }
+        // Bounded min-heap: O(products * log n) instead of sorting every product.
+        PriorityQueue<StockLevel> top = new PriorityQueue<>(n + 1, BY_UNITS);
+        byProduct.forEach((productId, stock) -> {
+            int units = stock.units.get();
+            if (units == 0) {
+                return;
+            }
+            if (top.size() < n) {
+                top.add(new StockLevel(productId, units));
+            } else if (units > top.peek().getUnits()
+                    || (units == top.peek().getUnits() && productId.compareTo(top.peek().getProductId()) < 0)) {
+                top.poll();
+                top.add(new StockLevel(productId, units));
+            }
+        });
+        List<StockLevel> result = new ArrayList<>(top);
+        result.sort(Collections.reverseOrder(BY_UNITS));
+        return result;
+    }
+
+    private static final class ProductStock {
+        final Set<String> tags = ConcurrentHashMap.newKeySet();
+        final AtomicInteger units = new AtomicInteger();
+    }
+}
@@ -0,0 +1,31 @@
+package org.example.service;
+
+/**
+ * The number of units of one product in stock, as reported by {@link StockIndex#topProducts(int)}.
+ */
+public class StockLevel {
+
+    private final String productId;
+    private final int units;
+
+    StockLevel(String productId, int units) {
+        this.productId = productId;
+        this.units = units;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    /**
+     * @return The number of RFID tags associated with the product.
+     */
+    public int getUnits() {
+        return units;
+    }
+
+    @Override
+    public String toString() {
+        return productId + "=" + units;
+    }
+}